@@ -0,0 +1,208 @@
+package edu.nju.http.jfr;
+
+import edu.nju.http.utils.EventSink;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JfrEventSink - 把领域事件写入 Java Flight Recorder
+ * <p>
+ * 通过 META-INF/services 注册，由 {@link edu.nju.http.utils.Events} 加载。事件只在记录开启且该事件启用时提交，
+ * 未开启记录时每次调用只有一次 shouldCommit 检查。事件不采集调用栈，可在生产环境中常开，
+ * 在 JMC 中与 GC、线程等 JVM 事件放在同一时间轴上对照。
+ */
+public class JfrEventSink implements EventSink {
+
+    @Override
+    public void connectionAccepted(String remote) {
+        ConnectionAccepted event = new ConnectionAccepted();
+        if (event.shouldCommit()) {
+            event.remote = remote;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void connectionClosed(String remote, long lifetime, int requests) {
+        ConnectionClosed event = new ConnectionClosed();
+        if (event.shouldCommit()) {
+            event.remote = remote;
+            event.lifetime = lifetime;
+            event.requests = requests;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void requestHandled(String method, String target, String route, int status, long bytes,
+                               long duration, long queue, long handler, long write) {
+        RequestHandled event = new RequestHandled();
+        if (event.shouldCommit()) {
+            event.method = method;
+            event.target = target;
+            event.route = route;
+            event.status = status;
+            event.bytes = bytes;
+            event.elapsed = duration;
+            event.queue = queue;
+            event.handler = handler;
+            event.write = write;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void staticResource(String path, boolean notModified) {
+        StaticResource event = new StaticResource();
+        if (event.shouldCommit()) {
+            event.path = path;
+            event.notModified = notModified;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void sessionCreated(String username) {
+        SessionCreated event = new SessionCreated();
+        if (event.shouldCommit()) {
+            event.username = username;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void sessionExpired(String username) {
+        SessionExpired event = new SessionExpired();
+        if (event.shouldCommit()) {
+            event.username = username;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void cacheRevalidated(String key, boolean notModified) {
+        CacheRevalidated event = new CacheRevalidated();
+        if (event.shouldCommit()) {
+            event.key = key;
+            event.notModified = notModified;
+            event.commit();
+        }
+    }
+
+    @Name("edu.nju.http.ConnectionAccepted")
+    @Label("Connection Accepted")
+    @Category({"HTTP", "Server"})
+    @StackTrace(false)
+    static class ConnectionAccepted extends Event {
+        @Label("Remote Address")
+        String remote;
+    }
+
+    @Name("edu.nju.http.ConnectionClosed")
+    @Label("Connection Closed")
+    @Category({"HTTP", "Server"})
+    @StackTrace(false)
+    static class ConnectionClosed extends Event {
+        @Label("Remote Address")
+        String remote;
+
+        @Label("Lifetime")
+        @Timespan
+        long lifetime;
+
+        @Label("Requests")
+        @Description("Requests served on the connection")
+        int requests;
+    }
+
+    @Name("edu.nju.http.RequestHandled")
+    @Label("Request Handled")
+    @Category({"HTTP", "Server"})
+    @Description("A response fully written to the client")
+    @StackTrace(false)
+    static class RequestHandled extends Event {
+        @Label("Method")
+        String method;
+
+        @Label("Target")
+        String target;
+
+        @Label("Route")
+        String route;
+
+        @Label("Status")
+        int status;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Duration")
+        @Description("From the complete request being read to the last byte written")
+        @Timespan
+        long elapsed;
+
+        @Label("Queue Time")
+        @Description("Waiting for a worker thread, -1 if not dispatched")
+        @Timespan
+        long queue;
+
+        @Label("Handler Time")
+        @Timespan
+        long handler;
+
+        @Label("Write Time")
+        @Timespan
+        long write;
+    }
+
+    @Name("edu.nju.http.StaticResource")
+    @Label("Static Resource")
+    @Category({"HTTP", "Server"})
+    @Description("A static resource request, answered with 304 when the client cache is still valid")
+    @StackTrace(false)
+    static class StaticResource extends Event {
+        @Label("Path")
+        String path;
+
+        @Label("Not Modified")
+        boolean notModified;
+    }
+
+    @Name("edu.nju.http.SessionCreated")
+    @Label("Session Created")
+    @Category({"HTTP", "Server"})
+    @StackTrace(false)
+    static class SessionCreated extends Event {
+        @Label("Username")
+        String username;
+    }
+
+    @Name("edu.nju.http.SessionExpired")
+    @Label("Session Expired")
+    @Category({"HTTP", "Server"})
+    @StackTrace(false)
+    static class SessionExpired extends Event {
+        @Label("Username")
+        String username;
+    }
+
+    @Name("edu.nju.http.CacheRevalidated")
+    @Label("Cache Revalidated")
+    @Category({"HTTP", "Client"})
+    @Description("A cached response checked with a conditional request")
+    @StackTrace(false)
+    static class CacheRevalidated extends Event {
+        @Label("Key")
+        String key;
+
+        @Label("Not Modified")
+        boolean notModified;
+    }
+}
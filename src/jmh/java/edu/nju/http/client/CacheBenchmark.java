@@ -0,0 +1,83 @@
+package edu.nju.http.client;
+
+import edu.nju.http.message.HttpRequest;
+import edu.nju.http.message.HttpResponse;
+import edu.nju.http.message.MIME;
+import edu.nju.http.message.constant.Header;
+import edu.nju.http.message.constant.Method;
+import edu.nju.http.message.constant.Status;
+import edu.nju.http.message.constant.Version;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CacheBenchmark - 客户端内存缓存命中路径：查找、判断新鲜度并生成响应副本
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheBenchmark {
+    private static final int ENTRIES = 256;
+
+    private Cache cache;
+    private HttpRequest[] requests;
+
+    @Setup
+    public void setup() {
+        cache = new Cache(ENTRIES * 2, 64L * 1024 * 1024);
+        requests = new HttpRequest[ENTRIES];
+        byte[] body = new byte[4096];
+        Arrays.fill(body, (byte) 'a');
+        for (int i = 0; i < ENTRIES; i++) {
+            HttpRequest request = new HttpRequest(Version.HTTP_1_1, Method.GET);
+            request.setTarget("http://localhost:8080/page" + i + ".html");
+            HttpResponse response = new HttpResponse(Version.HTTP_1_1, Status.OK);
+            response.setHeader(Header.Cache_Control, "max-age=3600");
+            response.setHeader(Header.ETag, "\"" + i + "\"");
+            response.setBody(body, MIME.TEXT_HTML);
+            cache.put(request, response);
+            requests[i] = request;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        HttpRequest next(HttpRequest[] requests) {
+            return requests[next++ & (ENTRIES - 1)];
+        }
+    }
+
+    @Benchmark
+    public Cache.Entry lookup(Cursor cursor) {
+        return cache.lookup(cursor.next(requests));
+    }
+
+    @Benchmark
+    public HttpResponse hit(Cursor cursor) {
+        Cache.Entry entry = cache.lookup(cursor.next(requests));
+        return entry != null && entry.isFresh() ? entry.toResponse() : null;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public HttpResponse hitContended(Cursor cursor) {
+        return hit(cursor);
+    }
+}
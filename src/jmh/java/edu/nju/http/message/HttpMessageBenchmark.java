@@ -0,0 +1,94 @@
+package edu.nju.http.message;
+
+import edu.nju.http.message.constant.Header;
+import edu.nju.http.message.constant.Status;
+import edu.nju.http.message.constant.Version;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HttpMessageBenchmark - 报文解析与序列化
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HttpMessageBenchmark {
+    private static final String REQUEST_HEAD = "GET /index.html?lang=zh HTTP/1.1\r\n"
+            + "Host: localhost:8080\r\n"
+            + "User-Agent: Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko)\r\n"
+            + "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n"
+            + "Accept-Language: zh-CN,zh;q=0.9,en;q=0.8\r\n"
+            + "Accept-Encoding: gzip, deflate\r\n"
+            + "Connection: keep-alive\r\n"
+            + "Cookie: sessionId=0123456789abcdef0123456789abcdef\r\n"
+            + "If-None-Match: \"5f3c-1a2b3c4d\"\r\n"
+            + "\r\n";
+
+    /**
+     * 响应消息体大小（字节）
+     */
+    @Param({"128", "16384"})
+    private int bodySize;
+
+    private byte[] rawRequest;
+    private byte[] rawResponse;
+    private HttpResponse response;
+
+    @Setup
+    public void setup() {
+        rawRequest = REQUEST_HEAD.getBytes(StandardCharsets.ISO_8859_1);
+
+        byte[] body = new byte[bodySize];
+        Arrays.fill(body, (byte) 'a');
+        response = new HttpResponse(Version.HTTP_1_1, Status.OK);
+        response.setHeader(Header.Date, "Sun, 18 Oct 2026 08:00:00 GMT");
+        response.setHeader(Header.Server, "SimpleHttpServer");
+        response.setHeader(Header.Connection, "keep-alive");
+        response.setHeader(Header.Cache_Control, "max-age=3600");
+        response.setHeader(Header.ETag, "\"5f3c-1a2b3c4d\"");
+        response.setHeader(Header.Last_Modified, "Sat, 17 Oct 2026 08:00:00 GMT");
+        response.setBody(body, MIME.TEXT_HTML);
+        rawResponse = response.toBytes();
+    }
+
+    @Benchmark
+    public HttpRequest parseRequest() {
+        return new HttpRequest(rawRequest);
+    }
+
+    @Benchmark
+    public HttpResponse parseResponse() {
+        return new HttpResponse(rawResponse);
+    }
+
+    @Benchmark
+    public int findHeaderEnd() {
+        return HttpMessage.findHeaderEnd(rawResponse);
+    }
+
+    @Benchmark
+    public byte[] toBytes() {
+        return response.toBytes();
+    }
+
+    @Benchmark
+    public String getFormattedHeaders() {
+        return response.getFormattedHeaders();
+    }
+}
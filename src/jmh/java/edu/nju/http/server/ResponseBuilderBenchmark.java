@@ -0,0 +1,59 @@
+package edu.nju.http.server;
+
+import edu.nju.http.message.HttpResponse;
+import edu.nju.http.message.constant.Status;
+import edu.nju.http.message.constant.Version;
+import edu.nju.http.utils.Searcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ResponseBuilderBenchmark - 常见响应的构建
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseBuilderBenchmark {
+    private Path file;
+
+    @Setup
+    public void setup() throws Exception {
+        file = Searcher.getResource(Paths.get(Config.STATIC_RESOURCE_DIR, Config.DEFAULT_PAGE).toString());
+    }
+
+    @Benchmark
+    public HttpResponse textResponse() {
+        return ResponseBuilder.createSuccessResponse(Version.HTTP_1_1, "Login success.");
+    }
+
+    @Benchmark
+    public HttpResponse fileResponse() throws IOException {
+        return ResponseBuilder.createSuccessResponse(Version.HTTP_1_1, file);
+    }
+
+    @Benchmark
+    public HttpResponse notModifiedResponse() {
+        return ResponseBuilder.createNotModifiedResponse(Version.HTTP_1_1);
+    }
+
+    @Benchmark
+    public HttpResponse errorResponse() {
+        return ResponseBuilder.createErrorResponse(Version.HTTP_1_1, Status.NOT_FOUND);
+    }
+}
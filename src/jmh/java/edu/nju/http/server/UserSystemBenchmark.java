@@ -0,0 +1,67 @@
+package edu.nju.http.server;
+
+import edu.nju.http.message.HttpRequest;
+import edu.nju.http.message.HttpResponse;
+import edu.nju.http.message.constant.Header;
+import edu.nju.http.message.constant.Method;
+import edu.nju.http.message.constant.Version;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UserSystemBenchmark - 会话校验，每个请求访问受保护资源时都会执行
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserSystemBenchmark {
+    private final UserSystem users = UserSystem.getInstance();
+    private HttpRequest validRequest;
+    private HttpRequest invalidRequest;
+
+    @Setup
+    public void setup() {
+        String form = "username=bench" + System.nanoTime() + "&password=benchmark";
+        users.register(formRequest("/register", form)).join();
+        HttpResponse login = users.login(formRequest("/login", form));
+        String cookie = login.getHeaderVal(Header.Set_Cookie);
+        if (cookie == null) {
+            throw new IllegalStateException("Login failed: " + login.getStatusCode());
+        }
+
+        validRequest = new HttpRequest(Version.HTTP_1_1, Method.GET);
+        validRequest.setHeader(Header.Cookie, "theme=dark; " + cookie.split(";")[0]);
+        invalidRequest = new HttpRequest(Version.HTTP_1_1, Method.GET);
+        invalidRequest.setHeader(Header.Cookie, "theme=dark; sessionId=0123456789abcdef0123456789abcdef");
+    }
+
+    private static HttpRequest formRequest(String target, String form) {
+        HttpRequest request = new HttpRequest(Version.HTTP_1_1, Method.POST);
+        request.setTarget(target);
+        request.setBody(form);
+        return request;
+    }
+
+    @Benchmark
+    public String validSession() {
+        return users.validateSession(validRequest);
+    }
+
+    @Benchmark
+    public String invalidSession() {
+        return users.validateSession(invalidRequest);
+    }
+}
@@ -0,0 +1,40 @@
+package edu.nju.http.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.FileNotFoundException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SearcherBenchmark - 静态资源路径查找，包括资源不存在的情况
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearcherBenchmark {
+    @Benchmark
+    public Path existing() throws Exception {
+        return Searcher.getResource("static/index.html");
+    }
+
+    @Benchmark
+    public Path missing() throws Exception {
+        try {
+            return Searcher.getResource("static/missing.html");
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+    }
+}
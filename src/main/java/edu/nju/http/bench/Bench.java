@@ -0,0 +1,345 @@
+package edu.nju.http.bench;
+
+import edu.nju.http.utils.Histogram;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bench - 压测客户端
+ * <p>
+ * 使用 N 条连接向服务端持续发送请求，统计吞吐量与延迟分布。默认为闭环模式，每条连接收到响应后立即发送下一个请求；
+ * 指定速率（-r）时为开环模式，请求按固定间隔排定发送时刻，延迟从排定时刻算起，反映服务端变慢时请求排队的真实延迟。
+ * 结果输出到标准输出，也可写为 JSON 文件（-o）供 CI 比对。
+ */
+public class Bench {
+    static final int HISTOGRAM_PRECISION = 8;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final String host;
+    private final int port;
+    private final int connections;
+    private final long duration;
+    private final long warmup;
+    private final double rate;
+    private final boolean keepAlive;
+    private final int timeout;
+    private final RequestMix mix;
+
+    private final AtomicLong slots = new AtomicLong();
+    private long start;
+    private long measureStart;
+    private long end;
+    private long interval;
+
+    /**
+     * @param connections 连接数
+     * @param duration    计入统计的时长（毫秒）
+     * @param warmup      预热时长（毫秒），期间的请求不计入统计
+     * @param rate        开环模式的总速率（请求/秒），0 表示闭环模式
+     * @param timeout     连接与读取超时（毫秒）
+     */
+    Bench(String host, int port, int connections, long duration, long warmup, double rate,
+          boolean keepAlive, int timeout, RequestMix mix) {
+        this.host = host;
+        this.port = port;
+        this.connections = connections;
+        this.duration = duration;
+        this.warmup = warmup;
+        this.rate = rate;
+        this.keepAlive = keepAlive;
+        this.timeout = timeout;
+        this.mix = mix;
+    }
+
+    /**
+     * 执行压测，返回时所有连接均已结束
+     */
+    Result run() throws InterruptedException {
+        List<Worker> workers = new ArrayList<>(connections);
+        List<Thread> threads = new ArrayList<>(connections);
+        for (int i = 0; i < connections; i++) {
+            Worker worker = new Worker(this, mix);
+            workers.add(worker);
+            threads.add(new Thread(worker, "bench-" + i));
+        }
+
+        interval = rate > 0 ? (long) (1_000_000_000L / rate) : 0;
+        start = System.nanoTime();
+        measureStart = start + warmup * 1_000_000L;
+        end = measureStart + duration * 1_000_000L;
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = Math.max(1, System.nanoTime() - measureStart);
+
+        Result result = new Result(elapsed);
+        for (Worker worker : workers) {
+            result.latencies.add(worker.latencies);
+            result.requests += worker.requests;
+            result.errors += worker.errors;
+            result.bytes += worker.bytes;
+            result.connects += worker.connects;
+            for (int i = 0; i < result.statusClasses.length; i++) {
+                result.statusClasses[i] += worker.statusClasses[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 下一个请求的发送时刻
+     * @return System.nanoTime() 时间，压测结束时返回 -1
+     */
+    long nextSendTime() {
+        if (interval > 0) {
+            long at = start + slots.getAndIncrement() * interval;
+            return at < end ? at : -1;
+        }
+        long now = System.nanoTime();
+        return now < end ? now : -1;
+    }
+
+    long getMeasureStart() {
+        return measureStart;
+    }
+
+    String getHost() {
+        return host;
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * 压测结果，延迟单位为微秒
+     */
+    class Result {
+        final Histogram latencies = new Histogram(HISTOGRAM_PRECISION, 0);
+        final long[] statusClasses = new long[6];
+        final long elapsed;
+        long requests;
+        long errors;
+        long bytes;
+        long connects;
+
+        Result(long elapsed) {
+            this.elapsed = elapsed;
+        }
+
+        double getThroughput() {
+            return requests * 1e9 / elapsed;
+        }
+
+        JSONObject toJson() {
+            JSONObject status = new JSONObject();
+            for (int i = 1; i < statusClasses.length; i++) {
+                status.put(i + "xx", statusClasses[i]);
+            }
+            JSONObject latency = new JSONObject()
+                    .put("mean", Math.round(latencies.getMean()))
+                    .put("max", latencies.getMax());
+            for (double p : PERCENTILES) {
+                latency.put(percentileName(p), latencies.percentile(p));
+            }
+            return new JSONObject()
+                    .put("host", host)
+                    .put("port", port)
+                    .put("connections", connections)
+                    .put("keep_alive", keepAlive)
+                    .put("rate", rate)
+                    .put("duration_ms", elapsed / 1_000_000)
+                    .put("requests", requests)
+                    .put("errors", errors)
+                    .put("connects", connects)
+                    .put("bytes", bytes)
+                    .put("throughput", Math.round(getThroughput() * 100) / 100.0)
+                    .put("status", status)
+                    .put("latency_us", latency);
+        }
+
+        void print() {
+            System.out.printf("Target:      http://%s:%d (%d requests in mix)%n", host, port, mix.size());
+            System.out.printf("Mode:        %s, %d connections, keep-alive %s%n",
+                    rate > 0 ? "open loop at " + rate + " req/s" : "closed loop", connections, keepAlive ? "on" : "off");
+            System.out.printf("Duration:    %.2f s%n", elapsed / 1e9);
+            System.out.printf("Requests:    %d (%d errors, %d connects)%n", requests, errors, connects);
+            System.out.printf("Status:      2xx=%d 3xx=%d 4xx=%d 5xx=%d%n",
+                    statusClasses[2], statusClasses[3], statusClasses[4], statusClasses[5]);
+            System.out.printf("Throughput:  %.2f req/s, %.2f MB/s%n", getThroughput(), bytes * 1e9 / elapsed / (1 << 20));
+            System.out.printf("Latency:     mean %s, max %s%n", format(Math.round(latencies.getMean())), format(latencies.getMax()));
+            for (double p : PERCENTILES) {
+                System.out.printf("  %-7s    %s%n", p + "%", format(latencies.percentile(p)));
+            }
+        }
+
+        private String percentileName(double p) {
+            String digits = p == Math.floor(p) ? String.valueOf((long) p) : String.valueOf(p).replace(".", "");
+            return "p" + digits;
+        }
+
+        private String format(long micros) {
+            if (micros >= 1_000_000) {
+                return String.format("%.2f s", micros / 1e6);
+            }
+            return micros >= 1000 ? String.format("%.2f ms", micros / 1e3) : micros + " us";
+        }
+    }
+
+    public static void main(String[] args) {
+        String host = "localhost";
+        int port = 8080;
+        int connections = 16;
+        long duration = 10_000;
+        long warmup = 0;
+        double rate = 0;
+        boolean keepAlive = true;
+        int timeout = 5000;
+        String path = "/";
+        String file = null;
+        String output = null;
+        List<String> headers = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "-h":
+                    case "--host":
+                        host = value(args, ++i, arg);
+                        break;
+                    case "-p":
+                    case "--port":
+                        port = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    case "-c":
+                    case "--connections":
+                        connections = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    case "-d":
+                    case "--duration":
+                        duration = (long) (Double.parseDouble(value(args, ++i, arg)) * 1000);
+                        break;
+                    case "-w":
+                    case "--warmup":
+                        warmup = (long) (Double.parseDouble(value(args, ++i, arg)) * 1000);
+                        break;
+                    case "-r":
+                    case "--rate":
+                        rate = Double.parseDouble(value(args, ++i, arg));
+                        break;
+                    case "-t":
+                    case "--timeout":
+                        timeout = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    case "-f":
+                    case "--file":
+                        file = value(args, ++i, arg);
+                        break;
+                    case "-H":
+                    case "--header":
+                        headers.add(value(args, ++i, arg));
+                        break;
+                    case "-o":
+                    case "--output":
+                        output = value(args, ++i, arg);
+                        break;
+                    case "--path":
+                        path = value(args, ++i, arg);
+                        break;
+                    case "--no-keep-alive":
+                        keepAlive = false;
+                        break;
+                    case "--help":
+                        usage();
+                        return;
+                    default:
+                        System.err.println("Warning: Unknown option " + arg);
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Error: Invalid number: " + e.getMessage());
+            System.exit(1);
+        }
+        if (connections <= 0 || duration <= 0 || rate < 0 || warmup < 0) {
+            System.err.println("Error: Connections and duration must be positive, rate and warmup must not be negative.");
+            System.exit(1);
+        }
+
+        RequestMix mix;
+        try {
+            mix = file == null
+                    ? RequestMix.single(path, host, port, headers, keepAlive)
+                    : RequestMix.load(Paths.get(file), host, port, headers, keepAlive);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error: Failed to load request file: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        Bench bench = new Bench(host, port, connections, duration, warmup, rate, keepAlive, timeout, mix);
+        Result result;
+        try {
+            result = bench.run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        result.print();
+
+        if (output != null) {
+            try {
+                Files.write(Paths.get(output), result.toJson().toString(2).getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                System.err.println("Error: Failed to write report: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        // 没有任何成功的请求时以非零状态退出，便于 CI 发现服务端不可用
+        if (result.requests == 0) {
+            System.exit(2);
+        }
+    }
+
+    static String value(String[] args, int i, String option) {
+        if (i >= args.length) {
+            System.err.println("Error: Missing value for " + option);
+            System.exit(1);
+        }
+        return args[i];
+    }
+
+    private static void usage() {
+        System.out.println("Usage: bench [options]");
+        System.out.println("  -h, --host <host>          server host (default localhost)");
+        System.out.println("  -p, --port <port>          server port (default 8080)");
+        System.out.println("  -c, --connections <n>      concurrent connections (default 16)");
+        System.out.println("  -d, --duration <seconds>   measured duration (default 10)");
+        System.out.println("  -w, --warmup <seconds>     warmup before measuring (default 0)");
+        System.out.println("  -r, --rate <req/s>         open-loop constant rate, 0 for closed loop (default 0)");
+        System.out.println("  -t, --timeout <ms>         connect and read timeout (default 5000)");
+        System.out.println("  -f, --file <file>          request mix: <method> <path> [weight] [body] per line");
+        System.out.println("  -H, --header <name: value> extra request header, repeatable");
+        System.out.println("  -o, --output <file>        write the report as JSON");
+        System.out.println("      --path <path>          request path when no file is given (default /)");
+        System.out.println("      --no-keep-alive        open a new connection for every request");
+    }
+}
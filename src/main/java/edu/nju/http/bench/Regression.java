@@ -0,0 +1,435 @@
+package edu.nju.http.bench;
+
+import edu.nju.http.server.HttpServer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Regression - 回环压测回归套件
+ * <p>
+ * 在本进程中以系统分配的端口启动 HttpServer，分别在事件循环线程内处理（inline）与线程池处理（thread_pool）两种模式下，
+ * 对小文件、大文件、404、重定向与需要登录的 USER_DIR 资源逐一压测，输出吞吐量、延迟百分位与服务端每个请求分配的字节数。
+ * 指定基线文件时与基线比较，吞吐量下降、分配量或 p99 延迟上升超过阈值，或基线文件不存在时以退出码 1 结束；
+ * 以 --update-baseline true 运行时改为写出基线。
+ * <p>
+ * 运行前将 app.base.dir 指向一个临时目录并写入专用的配置（关闭日志、限流与持久化），因此必须在任何服务端类加载之前调用。
+ */
+public class Regression {
+    private static final String HOST = "127.0.0.1";
+    private static final String USER_FORM = "username=regression&password=regression-password";
+    private static final int LARGE_FILE_SIZE = 1 << 20;
+    // 分配量比较时容许的绝对误差（字节/请求）
+    private static final long ALLOCATION_SLACK = 64;
+
+    private static final Scenario[] SCENARIOS = {
+            new Scenario("small_file", "/index.html", 2, false),
+            new Scenario("large_file", "/large.bin", 2, false),
+            new Scenario("not_found", "/missing.html", 4, false),
+            new Scenario("redirect", "/old-index", 3, false),
+            new Scenario("session", "/user/profile.html", 2, true),
+    };
+
+    private final int connections;
+    private final long duration;
+    private final long warmup;
+
+    Regression(int connections, long duration, long warmup) {
+        this.connections = connections;
+        this.duration = duration;
+        this.warmup = warmup;
+    }
+
+    /**
+     * 准备独立的工作目录：配置文件、大文件与 USER_DIR 下的资源
+     */
+    static Path prepare() throws IOException {
+        Path base = Files.createTempDirectory("http-regression");
+        Path config = Files.createDirectories(base.resolve("config"));
+        JSONObject server = new JSONObject()
+                .put("host", HOST)
+                .put("port", 0)
+                .put("keep_alive", true)
+                .put("log_level", 0)
+                .put("rate_limit", 0)
+                .put("auth_rate_limit", 0)
+                .put("enable_persistence", false)
+                .put("user_path", "user")
+                .put("pbkdf2_iterations", 1000)
+                .put("redirects", new JSONArray().put(new JSONObject()
+                        .put("path", "/old-index")
+                        .put("target", "/index.html")
+                        .put("status", 301)));
+        Files.write(config.resolve("config.json"),
+                new JSONObject().put("server", server).toString(2).getBytes(StandardCharsets.UTF_8));
+
+        Path statics = Files.createDirectories(base.resolve("resources").resolve("static"));
+        byte[] large = new byte[LARGE_FILE_SIZE];
+        new Random(42).nextBytes(large);
+        Files.write(statics.resolve("large.bin"), large);
+        Path user = Files.createDirectories(statics.resolve("user"));
+        Files.write(user.resolve("profile.html"),
+                "<html><body><h1>Profile</h1></body></html>".getBytes(StandardCharsets.UTF_8));
+
+        System.setProperty("app.base.dir", base.toString());
+        return base;
+    }
+
+    /**
+     * 依次在两种模式下运行所有场景
+     * @return 报告
+     */
+    JSONObject run() throws IOException, InterruptedException {
+        JSONObject scenarios = new JSONObject();
+        for (boolean threadPool : new boolean[]{false, true}) {
+            String mode = threadPool ? "thread_pool" : "inline";
+            HttpServer server = new HttpServer(HOST, 0, threadPool);
+            Thread loop = new Thread(server::start, "http-server-" + mode);
+            loop.start();
+            try {
+                if (!server.awaitStarted(10, TimeUnit.SECONDS)) {
+                    throw new IOException("Server failed to start in " + mode + " mode");
+                }
+                int port = server.getPort();
+                String cookie = login(port);
+                for (Scenario scenario : SCENARIOS) {
+                    String name = mode + "/" + scenario.name;
+                    JSONObject result = runScenario(port, scenario, cookie);
+                    System.out.printf("%-24s %10.0f req/s  p50 %7d us  p99 %7d us  p99.9 %7d us  %8d B/req%s%n", name,
+                            result.getDouble("throughput"), result.getLong("p50"), result.getLong("p99"),
+                            result.getLong("p999"), result.getLong("alloc_per_request"),
+                            result.getBoolean("ok") ? "" : "  FAILED");
+                    scenarios.put(name, result);
+                }
+            } finally {
+                server.stop();
+                loop.join(5000);
+            }
+        }
+        return new JSONObject()
+                .put("java", System.getProperty("java.version"))
+                .put("cores", Runtime.getRuntime().availableProcessors())
+                .put("connections", connections)
+                .put("duration_ms", duration)
+                .put("scenarios", scenarios);
+    }
+
+    private JSONObject runScenario(int port, Scenario scenario, String cookie) throws InterruptedException {
+        List<String> headers = scenario.session
+                ? Collections.singletonList("Cookie: " + cookie) : Collections.<String>emptyList();
+        RequestMix mix = RequestMix.single(scenario.path, HOST, port, headers, true);
+        if (warmup > 0) {
+            new Bench(HOST, port, connections, warmup, 0, 0, true, 5000, mix).run();
+        }
+
+        Map<Long, Long> before = allocatedBytes();
+        Bench.Result result = new Bench(HOST, port, connections, duration, 0, 0, true, 5000, mix).run();
+        long allocated = allocationSince(before);
+
+        long unexpected = result.requests - result.statusClasses[scenario.expectedClass];
+        return new JSONObject()
+                .put("requests", result.requests)
+                .put("errors", result.errors)
+                .put("unexpected_status", unexpected)
+                .put("ok", result.requests > 0 && result.errors == 0 && unexpected == 0)
+                .put("throughput", Math.round(result.getThroughput() * 100) / 100.0)
+                .put("p50", result.latencies.percentile(50))
+                .put("p99", result.latencies.percentile(99))
+                .put("p999", result.latencies.percentile(99.9))
+                .put("alloc_per_request", allocated < 0 || result.requests == 0 ? -1 : allocated / result.requests);
+    }
+
+    /**
+     * 注册并登录测试用户
+     * @return 会话 Cookie（sessionId=...）
+     */
+    private static String login(int port) throws IOException {
+        post(port, "/register", USER_FORM);
+        String response = post(port, "/login", USER_FORM);
+        for (String line : response.split("\r\n")) {
+            if (line.toLowerCase().startsWith("set-cookie:")) {
+                return line.substring(line.indexOf(':') + 1).trim().split(";")[0];
+            }
+            if (line.isEmpty()) {
+                break;
+            }
+        }
+        throw new IOException("Login failed: " + response.split("\r\n")[0]);
+    }
+
+    private static String post(int port, String path, String form) throws IOException {
+        try (Socket socket = new Socket(HOST, port)) {
+            socket.setSoTimeout(10000);
+            byte[] body = form.getBytes(StandardCharsets.UTF_8);
+            String head = "POST " + path + " HTTP/1.1\r\n"
+                    + "Host: " + HOST + ":" + port + "\r\n"
+                    + "Connection: close\r\n"
+                    + "Content-Type: application/x-www-form-urlencoded\r\n"
+                    + "Content-Length: " + body.length + "\r\n\r\n";
+            OutputStream out = socket.getOutputStream();
+            out.write(head.getBytes(StandardCharsets.ISO_8859_1));
+            out.write(body);
+            out.flush();
+
+            // 服务端可能保持连接，只读到头部结束为止
+            InputStream in = socket.getInputStream();
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            int c;
+            int matched = 0;
+            while (matched < 4 && (c = in.read()) >= 0) {
+                response.write(c);
+                matched = c == (matched % 2 == 0 ? '\r' : '\n') ? matched + 1 : (c == '\r' ? 1 : 0);
+            }
+            return new String(response.toByteArray(), StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /**
+     * 各线程已分配的字节数，不含压测线程；JVM 不支持时返回 null
+     */
+    private static Map<Long, Long> allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+            return null;
+        }
+        long[] ids = threads.getAllThreadIds();
+        long[] bytes = threads.getThreadAllocatedBytes(ids);
+        ThreadInfo[] infos = threads.getThreadInfo(ids);
+        Map<Long, Long> snapshot = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (infos[i] != null && bytes[i] >= 0 && !infos[i].getThreadName().startsWith("bench-")) {
+                snapshot.put(ids[i], bytes[i]);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * 自 before 以来服务端各线程分配的字节数；期间新建的线程全部计入
+     * @return 字节数；不支持时返回 -1
+     */
+    private static long allocationSince(Map<Long, Long> before) {
+        Map<Long, Long> after = allocatedBytes();
+        if (before == null || after == null) {
+            return -1;
+        }
+        long total = 0;
+        for (Map.Entry<Long, Long> e : after.entrySet()) {
+            Long start = before.get(e.getKey());
+            total += e.getValue() - (start == null ? 0 : start);
+        }
+        return total;
+    }
+
+    /**
+     * 与基线比较并打印结果
+     * @return 是否没有回归
+     */
+    static boolean compare(JSONObject report, JSONObject baseline, double threshold, double latencyThreshold) {
+        JSONObject current = report.getJSONObject("scenarios");
+        JSONObject base = baseline.getJSONObject("scenarios");
+        boolean passed = true;
+        System.out.println();
+        System.out.printf("Baseline comparison (throughput/allocation threshold %.0f%%, p99 threshold %.0f%%)%n",
+                threshold * 100, latencyThreshold * 100);
+        for (String name : new TreeSet<>(current.keySet())) {
+            JSONObject now = current.getJSONObject(name);
+            StringBuilder problems = new StringBuilder();
+            if (!now.getBoolean("ok")) {
+                problems.append(" failed requests;");
+            }
+            JSONObject then = base.optJSONObject(name);
+            if (then == null) {
+                System.out.printf("  %-24s no baseline%s%n", name, problems);
+                passed &= problems.length() == 0;
+                continue;
+            }
+            double throughput = now.getDouble("throughput");
+            double baseThroughput = then.getDouble("throughput");
+            if (throughput < baseThroughput * (1 - threshold)) {
+                problems.append(String.format(" throughput %.0f < %.0f;", throughput, baseThroughput));
+            }
+            long p99 = now.getLong("p99");
+            long baseP99 = then.getLong("p99");
+            if (p99 > baseP99 * (1 + latencyThreshold)) {
+                problems.append(String.format(" p99 %d us > %d us;", p99, baseP99));
+            }
+            long alloc = now.getLong("alloc_per_request");
+            long baseAlloc = then.getLong("alloc_per_request");
+            if (alloc >= 0 && baseAlloc >= 0 && alloc > baseAlloc * (1 + threshold) + ALLOCATION_SLACK) {
+                problems.append(String.format(" allocation %d B > %d B;", alloc, baseAlloc));
+            }
+            System.out.printf("  %-24s %+6.1f%% req/s  %+6.1f%% p99  %+6.1f%% B/req  %s%n", name,
+                    change(throughput, baseThroughput), change(p99, baseP99), change(alloc, baseAlloc),
+                    problems.length() == 0 ? "ok" : "REGRESSION:" + problems);
+            passed &= problems.length() == 0;
+        }
+        return passed;
+    }
+
+    private static double change(double now, double base) {
+        return base == 0 ? 0 : (now - base) * 100 / base;
+    }
+
+    public static void main(String[] args) {
+        int connections = 8;
+        long duration = 5000;
+        long warmup = 2000;
+        double threshold = 0.2;
+        double latencyThreshold = 0.5;
+        String output = null;
+        String baseline = null;
+        boolean updateBaseline = false;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "-c":
+                    case "--connections":
+                        connections = Integer.parseInt(Bench.value(args, ++i, arg));
+                        break;
+                    case "-d":
+                    case "--duration":
+                        duration = (long) (Double.parseDouble(Bench.value(args, ++i, arg)) * 1000);
+                        break;
+                    case "-w":
+                    case "--warmup":
+                        warmup = (long) (Double.parseDouble(Bench.value(args, ++i, arg)) * 1000);
+                        break;
+                    case "-o":
+                    case "--output":
+                        output = Bench.value(args, ++i, arg);
+                        break;
+                    case "-b":
+                    case "--baseline":
+                        baseline = Bench.value(args, ++i, arg);
+                        break;
+                    case "--threshold":
+                        threshold = Double.parseDouble(Bench.value(args, ++i, arg));
+                        break;
+                    case "--latency-threshold":
+                        latencyThreshold = Double.parseDouble(Bench.value(args, ++i, arg));
+                        break;
+                    case "--update-baseline":
+                        updateBaseline = Boolean.parseBoolean(Bench.value(args, ++i, arg));
+                        break;
+                    default:
+                        System.err.println("Warning: Unknown option " + arg);
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Error: Invalid number: " + e.getMessage());
+            System.exit(1);
+        }
+        if (connections <= 0 || duration <= 0 || warmup < 0) {
+            System.err.println("Error: Connections and duration must be positive, warmup must not be negative.");
+            System.exit(1);
+        }
+
+        JSONObject report;
+        Path base = null;
+        try {
+            base = prepare();
+            report = new Regression(connections, duration, warmup).run();
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            if (base != null) {
+                deleteRecursively(base);
+            }
+        }
+
+        boolean passed = true;
+        try {
+            if (output != null) {
+                write(Paths.get(output), report);
+            }
+            if (baseline != null) {
+                Path baselinePath = Paths.get(baseline);
+                if (updateBaseline) {
+                    write(baselinePath, report);
+                    System.out.println("Baseline written to " + baselinePath);
+                } else if (!Files.exists(baselinePath)) {
+                    // 没有基线时不能判断是否回归，不应当作通过
+                    System.err.println("Error: Baseline " + baselinePath + " not found; "
+                            + "run with --update-baseline true (-Dregression.update=true) to create it.");
+                    passed = false;
+                } else {
+                    JSONObject previous = new JSONObject(new String(Files.readAllBytes(baselinePath), StandardCharsets.UTF_8));
+                    passed = compare(report, previous, threshold, latencyThreshold);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+        for (String name : report.getJSONObject("scenarios").keySet()) {
+            passed &= report.getJSONObject("scenarios").getJSONObject(name).getBoolean("ok");
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static void deleteRecursively(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            System.err.println("Warning: Failed to delete " + dir);
+        }
+    }
+
+    private static void write(Path path, JSONObject json) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.write(path, json.toString(2).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 压测场景
+     */
+    private static class Scenario {
+        private final String name;
+        private final String path;
+        private final int expectedClass;
+        private final boolean session;
+
+        Scenario(String name, String path, int expectedClass, boolean session) {
+            this.name = name;
+            this.path = path;
+            this.expectedClass = expectedClass;
+            this.session = session;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package edu.nju.http.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * RequestMix - 压测使用的请求组合
+ * <p>
+ * 请求文件每行一个请求，格式为 {@code <method> <path> [weight] [body]}，空行与 # 开头的行被忽略；
+ * weight 缺省为 1，body 为该行剩余的全部内容。每个请求的报文在载入时编码好，压测过程中按权重随机选取，不再分配内存。
+ */
+class RequestMix {
+    private final List<Request> requests;
+    private final int[] cumulative;
+    private final int totalWeight;
+
+    private RequestMix(List<Request> requests, int[] weights) {
+        this.requests = requests;
+        this.cumulative = new int[weights.length];
+        int sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i];
+            cumulative[i] = sum;
+        }
+        this.totalWeight = sum;
+    }
+
+    /**
+     * 只有一个 GET 请求的组合
+     */
+    static RequestMix single(String path, String host, int port, List<String> headers, boolean keepAlive) {
+        Request request = Request.encode("GET", path, null, host, port, headers, keepAlive);
+        return new RequestMix(Collections.singletonList(request), new int[]{1});
+    }
+
+    /**
+     * 从请求文件载入
+     * @throws IllegalArgumentException 文件格式有误
+     */
+    static RequestMix load(Path file, String host, int port, List<String> headers, boolean keepAlive) throws IOException {
+        List<Request> requests = new ArrayList<>();
+        List<Integer> weights = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\\s+", 4);
+            if (parts.length < 2 || !parts[1].startsWith("/")) {
+                throw new IllegalArgumentException("Invalid request at line " + lineNumber + ": " + line);
+            }
+            int weight = 1;
+            if (parts.length > 2) {
+                try {
+                    weight = Integer.parseInt(parts[2]);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid weight at line " + lineNumber + ": " + parts[2]);
+                }
+                if (weight <= 0) {
+                    continue;
+                }
+            }
+            String body = parts.length > 3 ? parts[3] : null;
+            requests.add(Request.encode(parts[0].toUpperCase(), parts[1], body, host, port, headers, keepAlive));
+            weights.add(weight);
+        }
+        if (requests.isEmpty()) {
+            throw new IllegalArgumentException("No requests in " + file);
+        }
+        int[] weightArray = new int[weights.size()];
+        for (int i = 0; i < weightArray.length; i++) {
+            weightArray[i] = weights.get(i);
+        }
+        return new RequestMix(requests, weightArray);
+    }
+
+    /**
+     * 按权重随机选取一个请求
+     */
+    Request next(Random random) {
+        if (requests.size() == 1) {
+            return requests.get(0);
+        }
+        int target = random.nextInt(totalWeight);
+        int low = 0;
+        int high = cumulative.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulative[mid] > target) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return requests.get(low);
+    }
+
+    int size() {
+        return requests.size();
+    }
+
+    /**
+     * 编码好的请求
+     */
+    static class Request {
+        final String method;
+        final String path;
+        final byte[] bytes;
+
+        private Request(String method, String path, byte[] bytes) {
+            this.method = method;
+            this.path = path;
+            this.bytes = bytes;
+        }
+
+        static Request encode(String method, String path, String body, String host, int port,
+                              List<String> headers, boolean keepAlive) {
+            byte[] bodyBytes = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+            StringBuilder sb = new StringBuilder();
+            sb.append(method).append(' ').append(path).append(" HTTP/1.1\r\n");
+            sb.append("Host: ").append(host).append(':').append(port).append("\r\n");
+            sb.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n");
+            boolean hasContentType = false;
+            for (String header : headers) {
+                sb.append(header).append("\r\n");
+                hasContentType |= header.toLowerCase().startsWith("content-type:");
+            }
+            if (body != null) {
+                if (!hasContentType) {
+                    sb.append("Content-Type: application/x-www-form-urlencoded\r\n");
+                }
+                sb.append("Content-Length: ").append(bodyBytes.length).append("\r\n");
+            }
+            sb.append("\r\n");
+            byte[] head = sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+            byte[] bytes = new byte[head.length + bodyBytes.length];
+            System.arraycopy(head, 0, bytes, 0, head.length);
+            System.arraycopy(bodyBytes, 0, bytes, head.length, bodyBytes.length);
+            return new Request(method, path, bytes);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package edu.nju.http.bench;
+
+import edu.nju.http.utils.Histogram;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Worker - 压测的一条连接
+ * <p>
+ * 每个 Worker 独占一个线程与一条阻塞连接，请求依次发出，收完响应后再发下一个。
+ * 固定速率模式下每个请求有预定的发送时刻，延迟从预定时刻算起：服务端变慢导致请求积压时，
+ * 排队的时间也计入延迟，不会因为发送方跟着变慢而低估延迟（coordinated omission）。
+ * 预热期内发出的请求不计入统计。
+ */
+class Worker implements Runnable {
+    private static final int MAX_LINE = 8192;
+
+    private final Bench bench;
+    private final RequestMix mix;
+    private final Random random = new Random();
+    private final byte[] skipBuffer = new byte[16 * 1024];
+    private final StringBuilder line = new StringBuilder();
+
+    final Histogram latencies = new Histogram(Bench.HISTOGRAM_PRECISION, 0);
+    long requests;
+    long errors;
+    long bytes;
+    long connects;
+    // 按状态码首位计数：1xx ~ 5xx
+    final long[] statusClasses = new long[6];
+
+    private Socket socket;
+    private InputStream in;
+    private OutputStream out;
+
+    Worker(Bench bench, RequestMix mix) {
+        this.bench = bench;
+        this.mix = mix;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                long intended = bench.nextSendTime();
+                if (intended < 0) {
+                    break;
+                }
+                long delay = intended - System.nanoTime();
+                if (delay > 0) {
+                    LockSupport.parkNanos(delay);
+                }
+                RequestMix.Request request = mix.next(random);
+                boolean measured = intended >= bench.getMeasureStart();
+                int status;
+                try {
+                    status = exchange(request);
+                } catch (IOException | NumberFormatException e) {
+                    // 连接出错或响应格式有误，丢弃连接
+                    close();
+                    if (measured) {
+                        errors++;
+                    }
+                    continue;
+                }
+                if (measured) {
+                    latencies.record((System.nanoTime() - intended) / 1000);
+                    requests++;
+                    statusClasses[Math.min(5, Math.max(0, status / 100))]++;
+                }
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * 发送请求并读完响应
+     * @return 状态码
+     */
+    private int exchange(RequestMix.Request request) throws IOException {
+        if (socket == null) {
+            connect();
+        }
+        out.write(request.bytes);
+        out.flush();
+
+        String statusLine = readLine();
+        if (statusLine == null) {
+            throw new EOFException("Connection closed");
+        }
+        int status = parseStatus(statusLine);
+        long contentLength = -1;
+        boolean chunked = false;
+        boolean close = !bench.isKeepAlive() || statusLine.startsWith("HTTP/1.0");
+        String header;
+        while ((header = readLine()) != null && !header.isEmpty()) {
+            int colon = header.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String name = header.substring(0, colon).trim();
+            String value = header.substring(colon + 1).trim();
+            if (name.equalsIgnoreCase("Content-Length")) {
+                contentLength = Long.parseLong(value);
+            } else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+                chunked = value.toLowerCase().contains("chunked");
+            } else if (name.equalsIgnoreCase("Connection")) {
+                close |= value.equalsIgnoreCase("close");
+            }
+        }
+        if (header == null) {
+            throw new EOFException("Connection closed in headers");
+        }
+
+        boolean noBody = request.method.equals("HEAD") || status / 100 == 1 || status == 204 || status == 304;
+        if (!noBody) {
+            if (chunked) {
+                readChunked();
+            } else if (contentLength >= 0) {
+                skip(contentLength);
+            } else {
+                // 没有长度的响应以关闭连接结束
+                while (skipSome(skipBuffer.length) >= 0) {
+                    // 读到连接关闭
+                }
+                close = true;
+            }
+        }
+        if (close) {
+            close();
+        }
+        return status;
+    }
+
+    private void connect() throws IOException {
+        socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(bench.getTimeout());
+            socket.connect(new InetSocketAddress(bench.getHost(), bench.getPort()), bench.getTimeout());
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        in = new BufferedInputStream(socket.getInputStream(), 16 * 1024);
+        out = socket.getOutputStream();
+        connects++;
+    }
+
+    private void close() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+            socket = null;
+            in = null;
+            out = null;
+        }
+    }
+
+    private void readChunked() throws IOException {
+        while (true) {
+            String sizeLine = readLine();
+            if (sizeLine == null) {
+                throw new EOFException("Connection closed in chunked body");
+            }
+            int semicolon = sizeLine.indexOf(';');
+            long size = Long.parseLong((semicolon >= 0 ? sizeLine.substring(0, semicolon) : sizeLine).trim(), 16);
+            if (size == 0) {
+                // 跳过尾部头部
+                String trailer;
+                while ((trailer = readLine()) != null && !trailer.isEmpty()) {
+                    // 忽略
+                }
+                return;
+            }
+            skip(size);
+            readLine();
+        }
+    }
+
+    private void skip(long n) throws IOException {
+        while (n > 0) {
+            int read = skipSome((int) Math.min(n, skipBuffer.length));
+            if (read < 0) {
+                throw new EOFException("Connection closed in body");
+            }
+            n -= read;
+        }
+    }
+
+    private int skipSome(int max) throws IOException {
+        int read = in.read(skipBuffer, 0, max);
+        if (read > 0) {
+            bytes += read;
+        }
+        return read;
+    }
+
+    /**
+     * 读一行（不含 CRLF），连接已关闭且没有数据时返回 null
+     */
+    private String readLine() throws IOException {
+        line.setLength(0);
+        int c;
+        while ((c = in.read()) >= 0) {
+            bytes++;
+            if (c == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            if (line.length() >= MAX_LINE) {
+                throw new IOException("Line too long");
+            }
+            line.append((char) c);
+        }
+        return line.length() == 0 ? null : line.toString();
+    }
+
+    private static int parseStatus(String statusLine) throws IOException {
+        int first = statusLine.indexOf(' ');
+        if (!statusLine.startsWith("HTTP/") || first < 0 || statusLine.length() < first + 4) {
+            throw new IOException("Invalid status line: " + statusLine);
+        }
+        try {
+            return Integer.parseInt(statusLine.substring(first + 1, first + 4));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid status line: " + statusLine);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package edu.nju.http.client;
+
+import edu.nju.http.message.HttpResponse;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * BodyHandler - 决定响应消息体的去向
+ * <p>
+ * 收到响应头后调用 apply 得到该响应的 Subscriber，消息体随读取逐段交给 Subscriber，不在内存中整体缓存。
+ * 常用实现见 {@link BodyHandlers}。
+ */
+@FunctionalInterface
+public interface BodyHandler {
+
+    /**
+     * 响应头已解析
+     * @param response 只含状态行与头部的响应
+     * @return 接收该响应消息体的 Subscriber
+     */
+    Subscriber apply(HttpResponse response) throws IOException;
+
+    /**
+     * 消息体接收方，所有方法都在客户端事件循环线程中调用，不应阻塞；
+     * 需要阻塞的处理（如写文件）交给其他线程，并通过 {@link #completion()} 告知何时结束
+     */
+    interface Subscriber {
+
+        /**
+         * 收到一段消息体
+         * @param data 仅在调用期间有效，需要保留时自行复制
+         */
+        void onData(ByteBuffer data) throws IOException;
+
+        /**
+         * 消息体接收完毕
+         * @param response 该响应，可在此设置消息体
+         */
+        void onComplete(HttpResponse response) throws IOException;
+
+        /**
+         * 接收失败，释放已占用的资源
+         */
+        default void onError(Throwable e) {
+        }
+
+        /**
+         * 下游处理跟不上接收速度时（如写文件慢于网络），事件循环暂停读取该连接，直到返回的 Future 完成
+         * @return 可以继续接收时完成的 Future；无需暂停时返回 null
+         */
+        default CompletableFuture<Void> pause() {
+            return null;
+        }
+
+        /**
+         * onComplete 之后在其他线程中继续进行的处理，结束后响应才交给调用方
+         * @return 处理结束时完成的 Future，处理失败时以异常完成
+         */
+        default CompletableFuture<Void> completion() {
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+}
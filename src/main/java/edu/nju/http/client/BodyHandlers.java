@@ -0,0 +1,327 @@
+package edu.nju.http.client;
+
+import edu.nju.http.message.HttpResponse;
+import edu.nju.http.message.constant.Header;
+import edu.nju.http.utils.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * BodyHandlers - 常用的 BodyHandler
+ */
+public class BodyHandlers {
+    // 所有 FileSubscriber 共用的写文件线程
+    private static final ExecutorService FILE_WRITER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "http-client-file-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 将消息体读入内存，设置为响应的消息体
+     */
+    public static BodyHandler ofByteArray() {
+        return response -> {
+            int length = contentLength(response);
+            return length >= 0 ? new FixedSubscriber(length) : new GrowingSubscriber();
+        };
+    }
+
+    /**
+     * 将消息体直接写入文件，响应本身不含消息体
+     * @param path 目标文件，已存在时覆盖
+     */
+    public static BodyHandler ofFile(Path path) {
+        return response -> new FileSubscriber(path);
+    }
+
+    /**
+     * 将消息体逐段交给回调，回调在事件循环线程中执行，传入的缓冲区仅在调用期间有效
+     */
+    public static BodyHandler ofCallback(Consumer<ByteBuffer> consumer) {
+        return response -> new BodyHandler.Subscriber() {
+            @Override
+            public void onData(ByteBuffer data) {
+                consumer.accept(data);
+            }
+
+            @Override
+            public void onComplete(HttpResponse response) {
+            }
+        };
+    }
+
+    /**
+     * 将内存中已有的消息体（如缓存命中时）交给 Subscriber
+     */
+    static void replay(byte[] body, BodyHandler.Subscriber subscriber) throws IOException {
+        if (body != null && body.length > 0) {
+            subscriber.onData(ByteBuffer.wrap(body).asReadOnlyBuffer());
+        }
+    }
+
+    private static int contentLength(HttpResponse response) {
+        String value = response.getHeaderVal(Header.Content_Length);
+        if (value == null || response.getHeaderVal(Header.Transfer_Encoding) != null) {
+            return -1;
+        }
+        try {
+            long length = Long.parseLong(value.trim());
+            return length >= 0 && length <= Integer.MAX_VALUE - 8 ? (int) length : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 长度已知：不超过 INITIAL_CAPACITY 时一次分配，否则随数据到达扩容，不超过声明的长度；
+     * 不按响应头中的 Content-Length 直接分配，错误或恶意的响应头不会一次占用大量内存
+     */
+    private static class FixedSubscriber implements BodyHandler.Subscriber {
+        private static final int INITIAL_CAPACITY = 64 * 1024;
+
+        private final int capacity;
+        private byte[] body;
+        private int length;
+
+        FixedSubscriber(int capacity) {
+            this.capacity = capacity;
+            this.body = new byte[Math.min(capacity, INITIAL_CAPACITY)];
+        }
+
+        @Override
+        public void onData(ByteBuffer data) throws IOException {
+            int n = data.remaining();
+            if (n > capacity - length) {
+                throw new IOException("Response body exceeds Content-Length");
+            }
+            if (n > body.length - length) {
+                int size = (int) Math.min(capacity, Math.max((long) body.length * 2, (long) length + n));
+                body = Arrays.copyOf(body, size);
+            }
+            data.get(body, length, n);
+            length += n;
+        }
+
+        @Override
+        public void onComplete(HttpResponse response) {
+            response.setBody(length == body.length ? body : Arrays.copyOf(body, length),
+                    response.getHeaderVal(Header.Content_Type));
+        }
+    }
+
+    /**
+     * 长度未知：按倍数扩容
+     */
+    private static class GrowingSubscriber implements BodyHandler.Subscriber {
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        @Override
+        public void onData(ByteBuffer data) {
+            if (data.hasArray()) {
+                body.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+                data.position(data.limit());
+            } else {
+                byte[] bytes = new byte[data.remaining()];
+                data.get(bytes);
+                body.write(bytes, 0, bytes.length);
+            }
+        }
+
+        @Override
+        public void onComplete(HttpResponse response) {
+            response.removeHeader(Header.Transfer_Encoding);
+            response.setBody(body.toByteArray(), response.getHeaderVal(Header.Content_Type));
+        }
+    }
+
+    /**
+     * 写文件可能阻塞，交给写文件线程按顺序写入，事件循环线程只把数据复制到缓冲区
+     * <p>
+     * 每个响应最多占用 MAX_BUFFERS 个缓冲区，写完的缓冲区回收复用；全部缓冲区都在等待写入时通过 {@link #pause()}
+     * 让事件循环暂停读取该连接，写文件跟不上网络时内存占用仍然有界。
+     */
+    private static class FileSubscriber implements BodyHandler.Subscriber {
+        private static final int BUFFER_SIZE = 64 * 1024;
+        private static final int MAX_BUFFERS = 4;
+
+        private final Path path;
+        private FileChannel channel; // 只在写文件线程中访问
+        private long written;
+        // 打开文件与已提交的写入，按提交顺序在写文件线程中执行
+        private CompletableFuture<Void> pending;
+        // 正在填充的缓冲区，只在事件循环线程中访问
+        private ByteBuffer current;
+
+        // 以下由 this 保护：事件循环线程取用缓冲区，写文件线程归还
+        private final Deque<ByteBuffer> free = new ArrayDeque<>(MAX_BUFFERS);
+        private int allocated;
+        private int overflow; // 暂停生效前超出上限临时分配的缓冲区，归还时丢弃
+        private CompletableFuture<Void> resume;
+
+        FileSubscriber(Path path) {
+            this.path = path;
+            this.pending = CompletableFuture.runAsync(this::open, FILE_WRITER);
+        }
+
+        @Override
+        public void onData(ByteBuffer data) {
+            // data 仅在调用期间有效
+            written += data.remaining();
+            while (data.hasRemaining()) {
+                if (current == null) {
+                    current = take();
+                }
+                int n = Math.min(data.remaining(), current.remaining());
+                ByteBuffer slice = data.duplicate();
+                slice.limit(slice.position() + n);
+                current.put(slice);
+                data.position(data.position() + n);
+                if (!current.hasRemaining()) {
+                    submit();
+                }
+            }
+        }
+
+        @Override
+        public synchronized CompletableFuture<Void> pause() {
+            if (!free.isEmpty() || allocated < MAX_BUFFERS) {
+                return null;
+            }
+            if (resume == null) {
+                resume = new CompletableFuture<>();
+            }
+            return resume;
+        }
+
+        @Override
+        public void onComplete(HttpResponse response) {
+            // 头部记录实际收到的长度
+            response.removeHeader(Header.Transfer_Encoding);
+            response.setHeader(Header.Content_Length, String.valueOf(written));
+            if (current != null && current.position() > 0) {
+                submit();
+            }
+            long length = written;
+            pending = pending.handleAsync((ignored, e) -> {
+                if (e != null) {
+                    cleanUp();
+                    throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+                }
+                try {
+                    channel.close();
+                } catch (IOException ex) {
+                    cleanUp();
+                    throw new CompletionException(ex);
+                }
+                Log.debug("Client", "Response body written to {} ({} bytes)", path, length);
+                return null;
+            }, FILE_WRITER);
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            pending = pending.handleAsync((ignored, ex) -> {
+                cleanUp();
+                return null;
+            }, FILE_WRITER);
+        }
+
+        @Override
+        public CompletableFuture<Void> completion() {
+            return pending;
+        }
+
+        /**
+         * 把填满（或最后一个）缓冲区交给写文件线程，写完后归还；之前的写入失败时直接归还
+         */
+        private void submit() {
+            ByteBuffer buffer = current;
+            current = null;
+            buffer.flip();
+            pending = pending.thenRunAsync(() -> write(buffer), FILE_WRITER)
+                    .whenComplete((ignored, e) -> recycle(buffer));
+        }
+
+        private synchronized ByteBuffer take() {
+            ByteBuffer buffer = free.poll();
+            if (buffer != null) {
+                return buffer;
+            }
+            if (allocated < MAX_BUFFERS) {
+                allocated++;
+            } else {
+                // 暂停读取前已读入的数据仍需接收
+                overflow++;
+            }
+            return ByteBuffer.allocate(BUFFER_SIZE);
+        }
+
+        private void recycle(ByteBuffer buffer) {
+            CompletableFuture<Void> ready;
+            synchronized (this) {
+                if (overflow > 0) {
+                    overflow--;
+                } else {
+                    buffer.clear();
+                    free.add(buffer);
+                }
+                ready = resume;
+                resume = null;
+            }
+            if (ready != null) {
+                ready.complete(null);
+            }
+        }
+
+        private void open() {
+            try {
+                Path parent = path.toAbsolutePath().getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                channel = FileChannel.open(path,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }
+
+        private void write(ByteBuffer buffer) {
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }
+
+        private void cleanUp() {
+            if (channel == null) {
+                // 文件未能打开，没有写入任何内容
+                return;
+            }
+            try {
+                channel.close();
+                Files.deleteIfExists(path);
+            } catch (IOException ex) {
+                Log.error("Client", "Failed to clean up " + path, ex);
+            }
+        }
+    }
+}
@@ -1,107 +1,479 @@
 package edu.nju.http.client;
 
+import edu.nju.http.message.CacheControl;
 import edu.nju.http.message.HttpRequest;
 import edu.nju.http.message.HttpResponse;
 import edu.nju.http.message.constant.Header;
+import edu.nju.http.utils.Events;
+import edu.nju.http.utils.Metrics;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Cache - 客户端响应缓存（私有缓存）
+ * <p>
+ * 条目按缓存键哈希到若干分片，每个分片是按访问顺序排列的 LinkedHashMap，按条目数与消息体总字节数淘汰最久未访问的条目。
+ * 条目以解压后的形式保存，命中时返回的响应与条目共享只读的头部与消息体，不再复制或解压；调用方不应修改返回响应的消息体数组。
+ * <p>
+ * 启用磁盘缓存时，内存作为一级缓存，写入同时异步写到磁盘；内存未命中时从磁盘载入并放回内存，进程重启后缓存仍然有效。
+ */
 public class Cache {
-    private final Map<String, CachedEntry> cache = new HashMap<>();
+    private static final int SHARD_COUNT = 16;
+    private static final int HEADER_OVERHEAD = 64; // 每个头部字段的估计开销（字节）
+    private static final int HOT_HITS = 2; // 提前刷新所需的最少命中次数
+
+    // 进程内所有缓存实例共用的指标
+    private static final Metrics.Counter HITS = Metrics.counter(
+            "http_client_cache_lookups_total", "Client cache lookups by result.", "result=\"hit\"");
+    private static final Metrics.Counter STALE = Metrics.counter(
+            "http_client_cache_lookups_total", "Client cache lookups by result.", "result=\"stale\"");
+    private static final Metrics.Counter MISSES = Metrics.counter(
+            "http_client_cache_lookups_total", "Client cache lookups by result.", "result=\"miss\"");
+    private static final Metrics.Counter EVICTIONS = Metrics.counter(
+            "http_client_cache_evictions_total", "Client cache entries evicted to stay within limits.");
+
+    private final Shard[] shards = new Shard[SHARD_COUNT];
+    private final DiskCache disk;
+
+    // ================== 统计 ==================
+    private final AtomicInteger entries = new AtomicInteger();
+    private final AtomicLong bytes = new AtomicLong();
+    private final LongAdder evicted = new LongAdder();
+
+    public Cache() {
+        this(Config.CACHE_MAX_ENTRIES, Config.CACHE_MAX_SIZE, Config.ENABLE_DISK_CACHE ? SharedDisk.INSTANCE : null);
+    }
+
+    /**
+     * 仅使用内存的缓存
+     * @param maxEntries 最大条目数
+     * @param maxBytes   最大总字节数
+     */
+    public Cache(int maxEntries, long maxBytes) {
+        this(maxEntries, maxBytes, null);
+    }
+
+    /**
+     * @param maxEntries 最大条目数
+     * @param maxBytes   最大总字节数
+     * @param disk       磁盘层，为 null 时不使用
+     */
+    Cache(int maxEntries, long maxBytes, DiskCache disk) {
+        this.disk = disk;
+        int entriesPerShard = Math.max(1, (maxEntries + SHARD_COUNT - 1) / SHARD_COUNT);
+        long bytesPerShard = Math.max(1, maxBytes / SHARD_COUNT);
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            shards[i] = new Shard(entriesPerShard, bytesPerShard);
+        }
+    }
 
     /**
      * 生成缓存 Key
      */
-    private String generateCacheKey(HttpRequest request) {
+    static String generateCacheKey(HttpRequest request) {
         String method = request.getMethod();
         String host = request.getHeaderVal(Header.Host);
-        String uri = request.getTarget();
+        String uri = request.getUri();
         return method + "|" + host + "|" + uri;
     }
 
     /**
-     * 获取缓存的响应
+     * 查找缓存条目
+     * @return 条目，可能已过期；不存在时返回 null
      */
-    public HttpResponse get(HttpRequest request) {
-        String key = generateCacheKey(request);
-        CachedEntry entry = cache.get(key);
-        return (entry != null) ? entry.getResponse() : null;
+    public Entry lookup(HttpRequest request) {
+        Entry entry = find(generateCacheKey(request));
+        if (entry != null) {
+            entry.recordHit();
+            (entry.isFresh() ? HITS : STALE).inc();
+        } else {
+            MISSES.inc();
+        }
+        return entry;
+    }
+
+    /**
+     * 依次在内存与磁盘中查找条目，不计入命中统计
+     */
+    private Entry find(String key) {
+        Shard shard = shardOf(key);
+        Entry entry;
+        synchronized (shard) {
+            entry = shard.get(key);
+        }
+        if (entry == null && disk != null) {
+            entry = disk.get(key);
+            if (entry != null && entry.size <= shard.maxBytes) {
+                synchronized (shard) {
+                    Entry current = shard.get(key);
+                    if (current != null) {
+                        entry = current;
+                    } else {
+                        insert(shard, key, entry);
+                    }
+                }
+            }
+        }
+        return entry;
     }
 
     /**
      * 存储缓存
+     * @return 是否已缓存；响应禁止缓存或超出单个分片容量时不缓存
      */
-    public void put(HttpRequest request, HttpResponse response) {
+    public boolean put(HttpRequest request, HttpResponse response) {
+        CacheControl cacheControl = CacheControl.parse(response.getHeaderVal(Header.Cache_Control));
+        if (cacheControl.isNoStore() || response.getBody() == null) {
+            return false;
+        }
         String key = generateCacheKey(request);
-        cache.put(key, new CachedEntry(response));
+        if (Events.ENABLED && isConditional(request)) {
+            Events.SINK.cacheRevalidated(key, false);
+        }
+        // 写入时解压一次，之后每次命中直接使用
+        HttpResponse decoded;
+        try {
+            decoded = ContentDecoder.decode(response);
+        } catch (IOException e) {
+            return false;
+        }
+        Shard shard = shardOf(key);
+        Entry entry = new Entry(decoded);
+        if (disk != null) {
+            disk.put(key, entry);
+        }
+        if (entry.size > shard.maxBytes) {
+            return disk != null;
+        }
+        synchronized (shard) {
+            insert(shard, key, entry);
+        }
+        return true;
     }
 
     /**
-     * 检查缓存是否存在
+     * 收到 304 后用其头部更新缓存条目并重新计算有效期
+     * @return 更新后的条目，不存在时返回 null
      */
-    public boolean contains(HttpRequest request) {
-        return cache.containsKey(generateCacheKey(request));
+    public Entry update(HttpRequest request, HttpResponse notModified) {
+        String key = generateCacheKey(request);
+        // 验证不是一次查找，不计入命中统计，也不增加条目的命中次数
+        Entry entry = find(key);
+        if (entry != null) {
+            if (Events.ENABLED) {
+                Events.SINK.cacheRevalidated(key, true);
+            }
+            entry.update(notModified);
+            if (disk != null) {
+                disk.update(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    private static boolean isConditional(HttpRequest request) {
+        return request.getHeaderVal(Header.If_None_Match) != null
+                || request.getHeaderVal(Header.If_Modified_Since) != null;
+    }
+
+    public int size() {
+        return entries.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public long getEvictedCount() {
+        return evicted.sum();
     }
 
     /**
-     * 检查缓存是否有效
+     * 放入分片并按容量淘汰，调用方持有分片锁
      */
-    public boolean isValid(HttpRequest request) {
-        String key = generateCacheKey(request);
-        CachedEntry entry = cache.get(key);
-        if (entry == null) return false;
-        return !entry.isExpired();
+    private void insert(Shard shard, String key, Entry entry) {
+        Entry old = shard.put(key, entry);
+        if (old != null) {
+            shard.bytes -= old.size;
+            bytes.addAndGet(-old.size);
+            entries.decrementAndGet();
+        }
+        shard.bytes += entry.size;
+        bytes.addAndGet(entry.size);
+        entries.incrementAndGet();
+        shard.trim();
+    }
+
+    private Shard shardOf(String key) {
+        int h = key.hashCode();
+        return shards[(h ^ (h >>> 16)) & (SHARD_COUNT - 1)];
     }
 
     /**
-     * 更新缓存有效期
+     * 按访问顺序排列的分片，超出条目数或字节数时淘汰最久未访问的条目
      */
-    public void update(HttpRequest request) {
-        String key = generateCacheKey(request);
-        CachedEntry entry = cache.get(key);
-        if (entry != null) {
-            entry.update();
+    // 在 LinkedHashMap 的子类中简单名 Entry 指继承来的 Map.Entry，须写成 Cache.Entry
+    private class Shard extends LinkedHashMap<String, Cache.Entry> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxEntries;
+        private final long maxBytes;
+        private long bytes;
+
+        Shard(int maxEntries, long maxBytes) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+            this.maxBytes = maxBytes;
+        }
+
+        void trim() {
+            Iterator<Cache.Entry> iterator = values().iterator();
+            while ((size() > maxEntries || bytes > maxBytes) && iterator.hasNext()) {
+                Cache.Entry eldest = iterator.next();
+                iterator.remove();
+                bytes -= eldest.size;
+                Cache.this.bytes.addAndGet(-eldest.size);
+                entries.decrementAndGet();
+                evicted.increment();
+                EVICTIONS.inc();
+            }
         }
     }
 
+    /**
+     * 进程内共享的磁盘层，首次使用时打开
+     */
+    private static class SharedDisk {
+        private static final DiskCache INSTANCE =
+                DiskCache.open(Paths.get(Config.DATA_DIR, "cache"), Config.DISK_CACHE_MAX_SIZE);
+    }
+
     /**
      * 缓存条目
      */
-    private static class CachedEntry {
-        private final HttpResponse response;
-        private long expiryTime;
+    public static class Entry {
+        private final String version;
+        private final int statusCode;
+        private final byte[] body;
+        private final long size;
+        private volatile Map<String, String> headers;
+        private volatile long storedTime;
+        private volatile long expiryTime;
 
-        public CachedEntry(HttpResponse response) {
-            this.response = response;
+        // 过期后仍可使用的时长（毫秒），must-revalidate 时为 0
+        private volatile long staleWhileRevalidate;
+        private volatile long staleIfError;
+
+        private final AtomicInteger hits = new AtomicInteger();
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        /**
+         * @param response 已解压的响应
+         */
+        Entry(HttpResponse response) {
+            this.version = response.getVersion();
+            this.statusCode = response.getStatusCode();
+            this.body = response.getBody();
+            this.headers = readOnly(copyHeaders(response, Collections.emptyMap()), body);
+            this.size = body.length + (long) headers.size() * HEADER_OVERHEAD;
             this.expiryTime = calculateNewExpiryTime();
         }
 
-        public HttpResponse getResponse() {
-            return new HttpResponse(response);
+        /**
+         * 从磁盘载入的条目，沿用记录的存入时刻与过期时刻
+         */
+        Entry(String version, int statusCode, Map<String, String> headers, byte[] body, long storedTime, long expiryTime) {
+            this.version = version;
+            this.statusCode = statusCode;
+            this.body = body;
+            this.headers = readOnly(new HashMap<>(headers), body);
+            this.size = body.length + (long) headers.size() * HEADER_OVERHEAD;
+            // 由头部重新计算过期后的可用时长，存入与过期时刻沿用记录的值
+            calculateNewExpiryTime();
+            this.storedTime = storedTime;
+            this.expiryTime = expiryTime;
         }
 
-        public void update() {
-            expiryTime = calculateNewExpiryTime();
+        /**
+         * 以缓存内容构造响应，头部与消息体都与条目共享且只读
+         */
+        public HttpResponse toResponse() {
+            return new HttpResponse(version, statusCode, headers, body);
+        }
+
+        public boolean isFresh() {
+            return System.currentTimeMillis() < expiryTime;
+        }
+
+        /**
+         * 已过期但仍在 stale-while-revalidate 时限内，可先返回再在后台验证
+         */
+        public boolean isStaleUsable() {
+            return System.currentTimeMillis() < expiryTime + staleWhileRevalidate;
+        }
+
+        /**
+         * 仍在 stale-if-error 时限内，请求失败时可返回该条目
+         */
+        public boolean isUsableOnError() {
+            return System.currentTimeMillis() < expiryTime + staleIfError;
+        }
+
+        /**
+         * 频繁访问的条目在临近过期时提前刷新
+         * @return 需要刷新且由调用方负责刷新时返回 true，刷新结束后调用 {@link #refreshed()}
+         */
+        public boolean claimRefresh() {
+            long lifetime = expiryTime - storedTime;
+            long refreshAt = expiryTime - (long) (lifetime * Config.CACHE_REFRESH_AHEAD);
+            return hits.get() >= HOT_HITS
+                    && System.currentTimeMillis() >= refreshAt
+                    && refreshing.compareAndSet(false, true);
+        }
+
+        public void refreshed() {
+            refreshing.set(false);
+        }
+
+        void recordHit() {
+            hits.incrementAndGet();
+        }
+
+        public String getETag() {
+            return headers.get(Header.ETag);
         }
 
-        public boolean isExpired() {
-            return expiryTime > 0 && System.currentTimeMillis() > expiryTime;
+        public String getLastModified() {
+            return headers.get(Header.Last_Modified);
         }
 
+        String getVersion() {
+            return version;
+        }
+
+        int getStatusCode() {
+            return statusCode;
+        }
+
+        Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        byte[] getBody() {
+            return body;
+        }
+
+        long getStoredTime() {
+            return storedTime;
+        }
+
+        long getExpiryTime() {
+            return expiryTime;
+        }
+
+        void update(HttpResponse notModified) {
+            Map<String, String> merged = copyHeaders(notModified, headers);
+            // 304 不携带消息体，保留原有的消息体相关头部；条目保存的是解压后的消息体
+            merged.remove(Header.Content_Encoding);
+            if (headers.containsKey(Header.Content_Type)) {
+                merged.put(Header.Content_Type, headers.get(Header.Content_Type));
+            }
+            headers = readOnly(merged, body);
+            expiryTime = calculateNewExpiryTime();
+            hits.set(0);
+        }
+
+        /**
+         * 计算过期时刻：no-cache 每次都需验证；其次依次使用 max-age、Expires 与默认有效期，并扣除 Age。
+         * 同时更新过期后仍可使用的时长
+         * <p>
+         * 客户端缓存是私有缓存，s-maxage 只适用于共享缓存，不参与计算。
+         */
         private long calculateNewExpiryTime() {
-            String cacheControl = response.getHeaderVal(Header.Cache_Control);
-            if (cacheControl != null && cacheControl.contains("max-age")) {
-                try {
-                    int maxAge = Integer.parseInt(cacheControl.split("=")[1]);
-                    return System.currentTimeMillis() + maxAge * 1000L;
-                } catch (NumberFormatException e) {
-                    return Config.CACHE_MAX_AGE;
-                }
-            } else {
-                return Config.CACHE_MAX_AGE;
+            long now = System.currentTimeMillis();
+            storedTime = now;
+            CacheControl cacheControl = CacheControl.parse(headers.get(Header.Cache_Control));
+            boolean mustRevalidate = cacheControl.isMustRevalidate() || cacheControl.isNoCache();
+            staleWhileRevalidate = mustRevalidate ? 0 : toMillis(cacheControl.getSeconds("stale-while-revalidate"));
+            staleIfError = mustRevalidate ? 0 : toMillis(cacheControl.getSeconds("stale-if-error"));
+            if (cacheControl.isNoCache()) {
+                return now;
             }
 
+            long lifetime = cacheControl.getMaxAge();
+            if (lifetime < 0) {
+                lifetime = expiresLifetime();
+            }
+            if (lifetime < 0) {
+                lifetime = Config.CACHE_MAX_AGE;
+            }
+            long age = Math.max(0, parseSeconds(headers.get(Header.Age)));
+            long freshSeconds = Math.max(0, Math.min(lifetime, Integer.MAX_VALUE) - age);
+            return now + freshSeconds * 1000L;
+        }
+
+        /**
+         * 由 Expires 与 Date 计算有效期（秒）
+         * @return 有效期；没有 Expires 时返回 -1，Expires 非法时视为已过期
+         */
+        private long expiresLifetime() {
+            String expires = headers.get(Header.Expires);
+            if (expires == null) {
+                return -1;
+            }
+            try {
+                long expiresAt = ZonedDateTime.parse(expires, DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond();
+                String date = headers.get(Header.Date);
+                long dateAt = date == null ? System.currentTimeMillis() / 1000
+                        : ZonedDateTime.parse(date, DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond();
+                return Math.max(0, expiresAt - dateAt);
+            } catch (DateTimeParseException e) {
+                return 0;
+            }
+        }
+
+        private static long toMillis(long seconds) {
+            return Math.max(0, Math.min(seconds, Integer.MAX_VALUE)) * 1000L;
+        }
+
+        private static long parseSeconds(String value) {
+            if (value == null) {
+                return -1;
+            }
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        /**
+         * 以消息体的实际长度写入 Content-Length 并转为只读，由条目构造的响应不会再修改头部
+         */
+        private static Map<String, String> readOnly(Map<String, String> headers, byte[] body) {
+            headers.put(Header.Content_Length, String.valueOf(body.length));
+            return Collections.unmodifiableMap(headers);
+        }
+
+        private static Map<String, String> copyHeaders(HttpResponse response, Map<String, String> base) {
+            Map<String, String> copy = new HashMap<>(base);
+            for (String key : response.getHeaderKeys()) {
+                copy.put(key, response.getHeaderVal(key));
+            }
+            return copy;
         }
     }
 }
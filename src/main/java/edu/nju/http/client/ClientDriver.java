@@ -7,10 +7,9 @@ import edu.nju.http.message.constant.Header;
 import edu.nju.http.utils.Log;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.util.Scanner;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * ClientDriver - 简单的客户端交互接口
@@ -158,25 +157,27 @@ public class ClientDriver {
         System.out.println(request);
 
         try {
-            HttpResponse response = client.send(host, port, request);
+            // 可直接显示的短文本读入内存，其余消息体边接收边写入文件
+            AtomicReference<File> savedFile = new AtomicReference<>();
+            BodyHandler handler = resp -> {
+                if (isDisplayable(resp)) {
+                    return BodyHandlers.ofByteArray().apply(resp);
+                }
+                File outFile = getFile(request, resp);
+                savedFile.set(outFile);
+                return BodyHandlers.ofFile(outFile.toPath()).apply(resp);
+            };
+            HttpResponse response = client.send(host, port, request, handler);
 
             if (response != null) {
                 System.out.println("\n--- HTTP Response ---");
                 System.out.println(response.getStartLine());
                 System.out.println(response.getFormattedHeaders());
 
-                String contentType = response.getHeaderVal("Content-Type").split(";")[0];
-                if (MIME.isTextType(contentType == null ? "" : contentType)
-                        && Integer.parseInt(response.getHeaderVal("Content-Length")) < Config.MAX_DISPLAY_SIZE) {
+                if (savedFile.get() == null) {
                     System.out.println("[Body]:\n" + response.getBodyAsString());
                 } else {
-                    String target = request.getTarget();
-                    if (target == null || target.isEmpty() || target.equals("/")) {
-                        target = "response";
-                    }
-                    String fileName = target.replace("/", "_").replace(":", "_").replace("?", "_");
-                    String tag = response.getHeaderVal(Header.Server).replace("/", "_").replace(":", "_").replace("?", "_");
-                    saveData(contentType, fileName, tag, response.getBody());
+                    System.out.println("Binary data saved to: " + savedFile.get().getAbsolutePath());
                 }
             } else {
                 System.out.println("Failed to receive a valid response.");
@@ -240,27 +241,40 @@ public class ClientDriver {
     }
 
     /**
-     * 将二进制数据存储到 Config.DATA_DIR 下
+     * 是否为可直接显示的短文本
      */
-    private static void saveData(String type, String fileName, String tag, byte[] data) {
-        if (data == null || data.length == 0) {
-            System.out.println("No binary data to save.");
-            return;
+    private static boolean isDisplayable(HttpResponse response) {
+        String contentType = response.getHeaderVal(Header.Content_Type);
+        String contentLength = response.getHeaderVal(Header.Content_Length);
+        if (contentType == null || contentLength == null
+                || !MIME.isTextType(contentType.split(";")[0].trim())) {
+            return false;
+        }
+        try {
+            return Long.parseLong(contentLength.trim()) < Config.MAX_DISPLAY_SIZE;
+        } catch (NumberFormatException e) {
+            return false;
         }
+    }
+
+    /**
+     * 在 Config.DATA_DIR 下为响应消息体选择文件名
+     */
+    private static File getFile(HttpRequest request, HttpResponse response) {
+        String target = request.getTarget();
+        if (target == null || target.isEmpty() || target.equals("/")) {
+            target = "response";
+        }
+        String fileName = target.replace("/", "_").replace(":", "_").replace("?", "_");
+        String server = response.getHeaderVal(Header.Server);
+        String tag = server == null ? "" : server.replace("/", "_").replace(":", "_").replace("?", "_");
 
+        String contentType = response.getHeaderVal(Header.Content_Type);
         if (!fileName.matches(".*\\.[a-zA-Z0-9]+$")) {
-            fileName = fileName + "." + MIME.toExtension(type);
+            fileName = fileName + "." + MIME.toExtension(contentType == null ? "" : contentType.split(";")[0].trim());
         }
         tag = tag.endsWith("_") ? tag + "_" : tag;
-        File outFile = getFile(tag + fileName);
-
-        try (FileOutputStream fos = new FileOutputStream(outFile)) {
-            fos.write(data);
-            fos.flush();
-            System.out.println("Binary data saved to: " + outFile.getAbsolutePath());
-        } catch (IOException e) {
-            System.out.println("Failed to save binary data: " + e.getMessage());
-        }
+        return getFile(tag + fileName);
     }
 
     private static File getFile(String fileName) {
@@ -22,11 +22,34 @@ public class Config {
     public static final boolean KEEP_ALIVE;
     public static final int CONNECTION_TIMEOUT;
     public static final int BUFFER_SIZE;
+    public static final int MAX_CONNECTIONS_PER_HOST;
+    public static final int MAX_IDLE_PER_HOST;
+    public static final int IDLE_TIMEOUT;
+    public static final int PIPELINE_DEPTH;
+    public static final boolean ENABLE_COMPRESSION;
+    public static final long MAX_DECODED_SIZE;
+    public static final long DNS_CACHE_TTL;
+    public static final long DNS_NEGATIVE_TTL;
+    public static final int HAPPY_EYEBALLS_DELAY;
+
+    // ================== 重试配置 ==================
+    public static final int MAX_RETRIES;
+    public static final long RETRY_BACKOFF;
+    public static final long RETRY_MAX_BACKOFF;
+    public static final double RETRY_BUDGET_RATIO;
+    public static final double RETRY_BUDGET_MIN;
+    public static final boolean HEDGE_REQUESTS;
+    public static final double HEDGE_PERCENTILE;
 
     // ================== 缓存配置 ==================
     public static final boolean ENABLE_CACHE;
     public static final int CACHE_MAX_AGE;
     public static final String CACHE_CONTROL;
+    public static final int CACHE_MAX_ENTRIES;
+    public static final long CACHE_MAX_SIZE;
+    public static final double CACHE_REFRESH_AHEAD;
+    public static final boolean ENABLE_DISK_CACHE;
+    public static final long DISK_CACHE_MAX_SIZE;
 
     // ================== 日志配置 ==================
     public static final int LOG_LEVEL;
@@ -45,7 +68,7 @@ public class Config {
         try {
             Path configPath = Searcher.pathOf(CONFIG_FILE);
             if (configPath != null && configPath.toFile().exists()) {
-                Log.debug("Config", "Loading configuration file: " + configPath);
+                Log.debug("Config", "Loading configuration file: {}", configPath);
                 FileInputStream fis = new FileInputStream(configPath.toFile());
                 configJson = new JSONObject(new JSONTokener(fis));
                 fis.close();
@@ -70,10 +93,32 @@ public class Config {
         KEEP_ALIVE = clientConfig.optBoolean("keep_alive", true);
         CONNECTION_TIMEOUT = clientConfig.optInt("connection_timeout", 5000);
         BUFFER_SIZE = clientConfig.optInt("buffer_size", 2048);
+        MAX_CONNECTIONS_PER_HOST = Math.max(1, clientConfig.optInt("max_connections_per_host", 8));
+        MAX_IDLE_PER_HOST = clientConfig.optInt("max_idle_per_host", 4);
+        IDLE_TIMEOUT = clientConfig.optInt("idle_timeout", 30000);
+        PIPELINE_DEPTH = Math.max(1, clientConfig.optInt("pipeline_depth", 8));
+        ENABLE_COMPRESSION = clientConfig.optBoolean("enable_compression", true);
+        MAX_DECODED_SIZE = clientConfig.optLong("max_decoded_size", 64L * 1024 * 1024);
+        DNS_CACHE_TTL = clientConfig.optLong("dns_cache_ttl", 60000);
+        DNS_NEGATIVE_TTL = clientConfig.optLong("dns_negative_ttl", 5000);
+        HAPPY_EYEBALLS_DELAY = clientConfig.optInt("happy_eyeballs_delay", 250);
+
+        MAX_RETRIES = clientConfig.optInt("max_retries", 2);
+        RETRY_BACKOFF = clientConfig.optLong("retry_backoff", 50);
+        RETRY_MAX_BACKOFF = clientConfig.optLong("retry_max_backoff", 2000);
+        RETRY_BUDGET_RATIO = clientConfig.optDouble("retry_budget_ratio", 0.1);
+        RETRY_BUDGET_MIN = clientConfig.optDouble("retry_budget_min", 10);
+        HEDGE_REQUESTS = clientConfig.optBoolean("hedge_requests", false);
+        HEDGE_PERCENTILE = clientConfig.optDouble("hedge_percentile", 95);
 
         ENABLE_CACHE = clientConfig.optBoolean("enable_cache", true);
         CACHE_MAX_AGE = clientConfig.optInt("cache_max_age", 3600);
         CACHE_CONTROL = clientConfig.optString("cache_control", "max-age=3600");
+        CACHE_MAX_ENTRIES = clientConfig.optInt("cache_max_entries", 1000);
+        CACHE_MAX_SIZE = clientConfig.optLong("cache_max_size", 64L * 1024 * 1024);
+        CACHE_REFRESH_AHEAD = clientConfig.optDouble("cache_refresh_ahead", 0.1);
+        ENABLE_DISK_CACHE = clientConfig.optBoolean("enable_disk_cache", false);
+        DISK_CACHE_MAX_SIZE = clientConfig.optLong("disk_cache_max_size", 256L * 1024 * 1024);
 
         LOG_LEVEL = clientConfig.optInt("log_level", 1);
         LOG_DIR = clientConfig.optString("log_dir", "logs");
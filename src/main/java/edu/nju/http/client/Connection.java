@@ -0,0 +1,103 @@
+package edu.nju.http.client;
+
+import edu.nju.http.utils.Log;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * 连接管理
+ */
+class Connection {
+    @Getter
+    private final String host;
+    @Getter
+    private final int port;
+    SocketChannel channel;
+    @Getter
+    private volatile long lastUsed;
+    ConnectionPool.HostPool pool; // 借出时所属的连接池
+
+    public Connection(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * 以非阻塞方式向已解析的地址发起连接
+     * @param address 主机的某个地址，见 {@link DnsCache}
+     * @return 是否已立即连接成功；否则需在 OP_CONNECT 就绪后调用 finishConnect
+     */
+    public boolean open(InetAddress address) throws IOException {
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            boolean connected = channel.connect(new InetSocketAddress(address, port));
+            if (connected) {
+                onConnected();
+            }
+            return connected;
+        } catch (IOException e) {
+            Log.warn("Connection", "Failed to connect to " + host + ":" + port + " via " + address.getHostAddress());
+            close();
+            throw e;
+        }
+    }
+
+    public boolean finishConnect() throws IOException {
+        try {
+            if (!channel.finishConnect()) {
+                return false;
+            }
+            onConnected();
+            return true;
+        } catch (IOException e) {
+            Log.warn("Connection", "Failed to connect to " + host + ":" + port + ": " + e.getMessage());
+            close();
+            throw e;
+        }
+    }
+
+    private void onConnected() {
+        lastUsed = System.currentTimeMillis();
+        Log.info("Connection", "Connected to {}:{}", host, port);
+    }
+
+    public void close() {
+        try {
+            if (channel != null && channel.isOpen()) {
+                channel.close();
+                Log.info("Connection", "Connection closed: {}:{}", host, port);
+            }
+        } catch (IOException e) {
+            Log.error("Connection", "Error closing connection", e);
+        }
+    }
+
+    public boolean isConnected() {
+        return channel != null && channel.isOpen() && channel.isConnected();
+    }
+
+    /**
+     * 检查空闲连接是否可用：对端已关闭（读到 EOF）或残留未读数据的连接都不可复用
+     */
+    public boolean isHealthy() {
+        if (!isConnected()) {
+            return false;
+        }
+        try {
+            return channel.read(ByteBuffer.allocate(1)) == 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public void touch() {
+        lastUsed = System.currentTimeMillis();
+    }
+
+}
@@ -0,0 +1,228 @@
+package edu.nju.http.client;
+
+import edu.nju.http.utils.Log;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConnectionPool - 按 host:port 划分的有界连接池
+ * <p>
+ * 每个主机最多 maxConnections 条连接（含正在使用的），超出时按先来先得排队等待；
+ * 归还的连接最多保留 maxIdle 条，空闲超过 idleTimeout 的连接由后台线程关闭，取出时再做一次健康检查。
+ * 新建连接所需的主机名解析由 dns 完成。
+ */
+class ConnectionPool {
+    // 所有连接池共用的清理线程
+    private static final ScheduledExecutorService REAPER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "connection-reaper");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final int maxConnections;
+    private final int maxIdle;
+    private final long idleTimeout;
+    private final Map<String, HostPool> pools = new ConcurrentHashMap<>();
+    final DnsCache dns;
+
+    ConnectionPool(int maxConnections, int maxIdle, long idleTimeout, DnsCache dns) {
+        this.dns = dns;
+        this.maxConnections = maxConnections;
+        this.maxIdle = maxIdle;
+        this.idleTimeout = idleTimeout;
+        long period = Math.max(1000, idleTimeout / 2);
+        schedule(new WeakReference<>(this), period);
+    }
+
+    /**
+     * 定时清理空闲连接；任务只弱引用连接池，连接池不再使用时随之回收，任务也随之停止
+     */
+    private static void schedule(WeakReference<ConnectionPool> ref, long period) {
+        ScheduledFuture<?>[] task = new ScheduledFuture<?>[1];
+        task[0] = REAPER.scheduleAtFixedRate(() -> {
+            ConnectionPool pool = ref.get();
+            if (pool == null) {
+                task[0].cancel(false);
+            } else {
+                pool.evictIdle();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 获取某个主机的连接池
+     */
+    HostPool get(String host, int port) {
+        return pools.computeIfAbsent(key(host, port), k -> new HostPool(host, port, maxConnections));
+    }
+
+    /**
+     * 取出一条健康的空闲连接
+     * @return 空闲连接，没有时返回 null，由调用方新建
+     */
+    Connection pollIdle(HostPool pool) {
+        Connection connection;
+        while ((connection = pool.idle.pollFirst()) != null) {
+            if (connection.isHealthy()) {
+                Log.debug("Client", "Reusing connection to {}:{}", pool.host, pool.port);
+                connection.pool = pool;
+                return connection;
+            }
+            Log.debug("Client", "Discarding stale connection to {}:{}", pool.host, pool.port);
+            connection.close();
+        }
+        return null;
+    }
+
+    /**
+     * 归还连接及其占用的名额
+     * @param reusable 连接是否可以继续复用
+     */
+    void release(Connection connection, boolean reusable) {
+        HostPool pool = connection.pool;
+        connection.pool = null;
+        if (pool == null) {
+            connection.close();
+            return;
+        }
+        // 所属主机的连接池已被关闭时不再放回
+        if (reusable && !pool.closed && connection.isConnected() && pool.idle.size() < maxIdle) {
+            connection.touch();
+            pool.idle.offerFirst(connection);
+            if (pool.closed && pool.idle.remove(connection)) {
+                connection.close();
+            }
+        } else {
+            connection.close();
+        }
+        pool.releasePermit();
+    }
+
+    /**
+     * 关闭某个主机的连接池，正在使用的连接归还时关闭
+     * @return 是否存在该主机的连接池
+     */
+    boolean close(String host, int port) {
+        HostPool pool = pools.remove(key(host, port));
+        if (pool == null) {
+            return false;
+        }
+        pool.close();
+        return true;
+    }
+
+    /**
+     * 关闭所有连接池
+     */
+    void closeAll() {
+        for (String key : pools.keySet()) {
+            HostPool pool = pools.remove(key);
+            if (pool != null) {
+                pool.close();
+            }
+        }
+    }
+
+    private void evictIdle() {
+        long deadline = System.currentTimeMillis() - idleTimeout;
+        for (HostPool pool : pools.values()) {
+            Iterator<Connection> iterator = pool.idle.descendingIterator();
+            while (iterator.hasNext()) {
+                Connection connection = iterator.next();
+                if (connection.getLastUsed() < deadline && pool.idle.removeLastOccurrence(connection)) {
+                    Log.debug("Client", "Closing idle connection to {}:{}", pool.host, pool.port);
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    private static String key(String host, int port) {
+        return host + ":" + port;
+    }
+
+    static class HostPool {
+        private final String host;
+        private final int port;
+        private final int maxConnections;
+        // 最近归还的连接在队首，优先复用
+        private final Deque<Connection> idle = new ConcurrentLinkedDeque<>();
+        // 以下两项由 this 保护
+        private final Queue<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+        private int inUse;
+        private volatile boolean closed;
+
+        HostPool(String host, int port, int maxConnections) {
+            this.host = host;
+            this.port = port;
+            this.maxConnections = maxConnections;
+        }
+
+        /**
+         * 预约一个连接名额，名额已满时排队，有连接归还时按先来先得完成
+         */
+        CompletableFuture<Void> reserve() {
+            synchronized (this) {
+                if (inUse < maxConnections) {
+                    inUse++;
+                    return CompletableFuture.completedFuture(null);
+                }
+                CompletableFuture<Void> waiter = new CompletableFuture<>();
+                waiters.add(waiter);
+                return waiter;
+            }
+        }
+
+        /**
+         * 取消排队中的预约
+         * @return 是否取消成功；false 表示名额已经分配给该预约，需要调用方归还
+         */
+        boolean cancel(CompletableFuture<Void> reservation) {
+            synchronized (this) {
+                waiters.remove(reservation);
+            }
+            return reservation.completeExceptionally(new CancellationException());
+        }
+
+        /**
+         * 归还名额：优先直接交给排队者
+         */
+        void releasePermit() {
+            while (true) {
+                CompletableFuture<Void> waiter;
+                synchronized (this) {
+                    waiter = waiters.poll();
+                    if (waiter == null) {
+                        inUse--;
+                        return;
+                    }
+                }
+                // 在锁外完成，回调不会在持锁时执行
+                if (waiter.complete(null)) {
+                    return;
+                }
+            }
+        }
+
+        void close() {
+            closed = true;
+            Connection connection;
+            while ((connection = idle.pollFirst()) != null) {
+                connection.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package edu.nju.http.client;
+
+import edu.nju.http.message.HttpResponse;
+import edu.nju.http.message.constant.Header;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * ContentDecoder - gzip / deflate 消息体的流式解压
+ * <p>
+ * 作为 Subscriber 包在调用方的 Subscriber 外层，压缩数据每到一段就解压一段交给下游，不需要先缓存完整的压缩数据。
+ * gzip 支持多成员拼接，并校验每个成员尾部的 CRC32 与长度；deflate 同时兼容带 zlib 头与不带头的原始格式。
+ * 压缩数据有误或解压后的长度超出上限（防止压缩炸弹）时抛出 ZipException，这类错误重试也无济于事。
+ */
+class ContentDecoder implements BodyHandler.Subscriber {
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private enum State { HEADER, BODY, TRAILER, DONE }
+
+    private final BodyHandler.Subscriber downstream;
+    private final boolean gzip;
+    private final long limit;
+    private final byte[] out = new byte[8192];
+    private final CRC32 crc = new CRC32();
+    // 尚未凑齐的 gzip 头部、尾部或 zlib 头部
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private Inflater inflater;
+    private State state = State.HEADER;
+    private long size; // 当前 gzip 成员解压后的长度
+    private long total; // 所有成员解压后的长度
+    private boolean received;
+
+    /**
+     * @param limit 解压后的消息体长度上限（字节）
+     */
+    ContentDecoder(BodyHandler.Subscriber downstream, boolean gzip, long limit) {
+        this.downstream = downstream;
+        this.gzip = gzip;
+        this.limit = limit;
+    }
+
+    /**
+     * 为压缩的响应包装 Subscriber，并去掉响应的 Content-Encoding 与 Content-Length 头部
+     * @return 解压用的 Subscriber；未压缩或不支持的编码时返回 null
+     */
+    static BodyHandler.Subscriber wrap(HttpResponse response, BodyHandler handler) throws IOException {
+        String encoding = normalize(response.getHeaderVal(Header.Content_Encoding));
+        if (encoding == null) {
+            return null;
+        }
+        response.removeHeader(Header.Content_Encoding);
+        response.removeHeader(Header.Content_Length);
+        return new ContentDecoder(handler.apply(response), "gzip".equals(encoding), Config.MAX_DECODED_SIZE);
+    }
+
+    /**
+     * 解压内存中的响应，返回解压后的副本；未压缩时原样返回
+     */
+    static HttpResponse decode(HttpResponse response) throws IOException {
+        String encoding = normalize(response.getHeaderVal(Header.Content_Encoding));
+        if (encoding == null || response.getBody() == null) {
+            return response;
+        }
+        int expected = (int) Math.min(Config.MAX_DECODED_SIZE, response.getBody().length * 4L);
+        ByteArrayOutputStream body = new ByteArrayOutputStream(Math.max(32, expected));
+        ContentDecoder decoder = new ContentDecoder(new BodyHandler.Subscriber() {
+            @Override
+            public void onData(ByteBuffer data) {
+                body.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            }
+
+            @Override
+            public void onComplete(HttpResponse response) {
+            }
+        }, "gzip".equals(encoding), Config.MAX_DECODED_SIZE);
+        decoder.onData(ByteBuffer.wrap(response.getBody()));
+        decoder.finish();
+
+        HttpResponse decoded = new HttpResponse(response.getVersion(), response.getStatusCode());
+        for (String key : response.getHeaderKeys()) {
+            decoded.setHeader(key, response.getHeaderVal(key));
+        }
+        decoded.removeHeader(Header.Content_Encoding);
+        decoded.setBody(body.toByteArray(), response.getHeaderVal(Header.Content_Type));
+        return decoded;
+    }
+
+    /**
+     * @return "gzip"、"deflate"，其他编码（含多重编码）返回 null
+     */
+    private static String normalize(String encoding) {
+        if (encoding == null) {
+            return null;
+        }
+        String value = encoding.trim().toLowerCase();
+        if (value.equals("gzip") || value.equals("x-gzip")) {
+            return "gzip";
+        }
+        return value.equals("deflate") ? "deflate" : null;
+    }
+
+    @Override
+    public void onData(ByteBuffer data) throws IOException {
+        if (data.hasRemaining()) {
+            received = true;
+        }
+        byte[] bytes;
+        int offset;
+        int length = data.remaining();
+        if (data.hasArray()) {
+            bytes = data.array();
+            offset = data.arrayOffset() + data.position();
+        } else {
+            bytes = new byte[length];
+            data.duplicate().get(bytes);
+            offset = 0;
+        }
+        data.position(data.limit());
+
+        int end = offset + length;
+        while (offset < end) {
+            switch (state) {
+                case HEADER:
+                    offset = readHeader(bytes, offset, end);
+                    break;
+                case BODY:
+                    offset = inflate(bytes, offset, end);
+                    break;
+                case TRAILER:
+                    offset = readTrailer(bytes, offset, end);
+                    break;
+                default:
+                    throw new ZipException("Unexpected data after deflate body");
+            }
+        }
+    }
+
+    @Override
+    public void onComplete(HttpResponse response) throws IOException {
+        finish();
+        downstream.onComplete(response);
+    }
+
+    @Override
+    public void onError(Throwable e) {
+        release();
+        downstream.onError(e);
+    }
+
+    @Override
+    public CompletableFuture<Void> pause() {
+        return downstream.pause();
+    }
+
+    @Override
+    public CompletableFuture<Void> completion() {
+        return downstream.completion();
+    }
+
+    /**
+     * 检查压缩数据是否完整
+     */
+    private void finish() throws IOException {
+        release();
+        // 没有消息体（如 HEAD、204）时视为空；gzip 的每个成员都以尾部结束，之后回到 HEADER
+        boolean complete = gzip ? state == State.HEADER && pending.size() == 0 : state == State.DONE;
+        if (received && !complete) {
+            throw new ZipException("Truncated " + (gzip ? "gzip" : "deflate") + " body");
+        }
+    }
+
+    private void release() {
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+
+    /**
+     * 凑齐头部后开始解压
+     * @return 消费到的位置
+     */
+    private int readHeader(byte[] bytes, int offset, int end) throws IOException {
+        int start = pending.size();
+        pending.write(bytes, offset, end - offset);
+        byte[] header = pending.toByteArray();
+        int headerLength = gzip ? gzipHeaderLength(header) : zlibHeaderLength(header);
+        if (headerLength < 0) {
+            return end;
+        }
+        pending.reset();
+        if (inflater == null) {
+            inflater = new Inflater(gzip || headerLength == 0);
+        } else {
+            inflater.reset();
+        }
+        crc.reset();
+        size = 0;
+        state = State.BODY;
+        if (!gzip) {
+            // zlib 头部交给 Inflater 自己解析，已凑齐的数据全部交给 Inflater
+            inflate(header, 0, header.length);
+            return end;
+        }
+        return offset + headerLength - start;
+    }
+
+    /**
+     * @return gzip 头部长度；数据还不够时返回 -1
+     */
+    private static int gzipHeaderLength(byte[] header) throws IOException {
+        if (header.length < 10) {
+            return -1;
+        }
+        if ((header[0] & 0xff | (header[1] & 0xff) << 8) != GZIP_MAGIC || header[2] != 8) {
+            throw new ZipException("Not in gzip format");
+        }
+        int flags = header[3] & 0xff;
+        int position = 10;
+        if ((flags & FEXTRA) != 0) {
+            if (header.length < position + 2) {
+                return -1;
+            }
+            position += 2 + (header[position] & 0xff | (header[position + 1] & 0xff) << 8);
+        }
+        for (int flag : new int[]{FNAME, FCOMMENT}) {
+            if ((flags & flag) != 0) {
+                while (position < header.length && header[position] != 0) {
+                    position++;
+                }
+                if (position >= header.length) {
+                    return -1;
+                }
+                position++;
+            }
+        }
+        if ((flags & FHCRC) != 0) {
+            position += 2;
+        }
+        return position <= header.length ? position : -1;
+    }
+
+    /**
+     * @return 带 zlib 头时返回 2，原始 deflate 数据返回 0；数据还不够时返回 -1
+     */
+    private static int zlibHeaderLength(byte[] header) {
+        if (header.length < 2) {
+            return -1;
+        }
+        int cmf = header[0] & 0xff;
+        int flg = header[1] & 0xff;
+        return (cmf & 0x0f) == 8 && (cmf << 8 | flg) % 31 == 0 ? 2 : 0;
+    }
+
+    /**
+     * 解压并交给下游
+     * @return 消费到的位置
+     */
+    private int inflate(byte[] bytes, int offset, int end) throws IOException {
+        inflater.setInput(bytes, offset, end - offset);
+        try {
+            while (true) {
+                int n = inflater.inflate(out);
+                if (n > 0) {
+                    total += n;
+                    if (total > limit) {
+                        throw new ZipException("Decoded body exceeds " + limit + " bytes");
+                    }
+                    crc.update(out, 0, n);
+                    size += n;
+                    downstream.onData(ByteBuffer.wrap(out, 0, n));
+                } else if (inflater.finished()) {
+                    int consumed = end - offset - inflater.getRemaining();
+                    state = gzip ? State.TRAILER : State.DONE;
+                    return offset + consumed;
+                } else if (inflater.needsDictionary()) {
+                    throw new ZipException("Deflate dictionary is not supported");
+                } else if (inflater.needsInput()) {
+                    return end;
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid compressed body: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 校验 gzip 尾部的 CRC32 与长度，之后可能是下一个成员
+     * @return 消费到的位置
+     */
+    private int readTrailer(byte[] bytes, int offset, int end) throws IOException {
+        int n = Math.min(8 - pending.size(), end - offset);
+        pending.write(bytes, offset, n);
+        if (pending.size() < 8) {
+            return end;
+        }
+        byte[] trailer = pending.toByteArray();
+        pending.reset();
+        long expectedCrc = readInt(trailer, 0);
+        long expectedSize = readInt(trailer, 4);
+        if (expectedCrc != crc.getValue() || expectedSize != (size & 0xffffffffL)) {
+            throw new ZipException("Corrupt gzip trailer");
+        }
+        state = State.HEADER;
+        return offset + n;
+    }
+
+    private static long readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xffL) | (bytes[offset + 1] & 0xffL) << 8
+                | (bytes[offset + 2] & 0xffL) << 16 | (bytes[offset + 3] & 0xffL) << 24;
+    }
+}
@@ -0,0 +1,430 @@
+package edu.nju.http.client;
+
+import edu.nju.http.message.constant.Header;
+import edu.nju.http.utils.Log;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DiskCache - 客户端缓存的磁盘层
+ * <p>
+ * 每个消息体以解压后的形式单独存为一个文件，读取时整体读入内存；头部、校验器、存入与过期时刻记录在索引文件 index.json 中，
+ * 每行一个条目，按最久未访问到最近访问的顺序排列。索引先写临时文件再原子替换，由后台线程定期写出，
+ * 进程崩溃时最多丢失最近一段时间的变更；启动时丢弃消息体文件缺失或长度不符的条目，并清理索引中没有的文件。
+ * 总大小超出上限时淘汰最久未访问的条目，文件在释放锁之后删除。
+ * <p>
+ * 同一目录只能由一个进程使用：打开时对目录下的 lock 文件加锁，已被其他进程占用时不启用磁盘缓存。
+ */
+class DiskCache {
+    private static final String INDEX_FILE = "index.json";
+    private static final String LOCK_FILE = "lock";
+    private static final String BODY_SUFFIX = ".body";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final long FLUSH_INTERVAL = 1000;
+
+    private final Path dir;
+    private final long maxBytes;
+    private final ScheduledExecutorService writer;
+    private FileChannel lockChannel;
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis());
+
+    // 缓存键 -> 条目，按访问顺序排列
+    private final LinkedHashMap<String, Meta> index = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private boolean dirty;
+
+    private DiskCache(Path dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "disk-cache-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 打开磁盘缓存并载入索引
+     * @param dir      缓存目录
+     * @param maxBytes 消息体总大小上限（字节）
+     * @return 磁盘缓存；目录不可用或已被其他进程使用时返回 null
+     */
+    static DiskCache open(Path dir, long maxBytes) {
+        DiskCache cache = new DiskCache(dir, maxBytes);
+        try {
+            Files.createDirectories(dir);
+            if (!cache.lock()) {
+                Log.warn("Client", "Disk cache disabled: {} is in use by another process", dir);
+                return null;
+            }
+            cache.load();
+        } catch (IOException e) {
+            Log.error("Client", "Disk cache unavailable at " + dir, e);
+            return null;
+        }
+        cache.writer.scheduleWithFixedDelay(cache::flush, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(cache::close, "disk-cache-shutdown"));
+        Log.info("Client", "Disk cache loaded: {} entries, {} bytes", cache.index.size(), cache.bytes);
+        return cache;
+    }
+
+    /**
+     * 读取条目；条目持有消息体数组，直接读入数组，不经过内存映射
+     * @return 条目；不存在或消息体文件已失效时返回 null
+     */
+    Cache.Entry get(String key) {
+        Meta meta;
+        synchronized (this) {
+            meta = index.get(key);
+            if (meta == null) {
+                return null;
+            }
+            dirty = true; // 访问顺序变化
+        }
+        try (FileChannel channel = FileChannel.open(dir.resolve(meta.file), StandardOpenOption.READ)) {
+            if (channel.size() != meta.size) {
+                throw new IOException("Size mismatch");
+            }
+            byte[] body = new byte[(int) meta.size];
+            ByteBuffer buffer = ByteBuffer.wrap(body);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of file");
+                }
+            }
+            return new Cache.Entry(meta.version, meta.statusCode, meta.headers, body, meta.storedTime, meta.expiryTime);
+        } catch (IOException e) {
+            // 文件已被淘汰或损坏
+            Log.debug("Client", "Disk cache entry unreadable: {}", meta.file);
+            Meta removed = null;
+            synchronized (this) {
+                if (index.get(key) == meta) {
+                    removed = remove(key);
+                }
+            }
+            if (removed != null) {
+                deleteQuietly(dir.resolve(removed.file));
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 异步写入条目，消息体在后台线程中写入文件
+     */
+    void put(String key, Cache.Entry entry) {
+        if (entry.getBody().length > maxBytes) {
+            return;
+        }
+        writer.execute(() -> store(key, entry));
+    }
+
+    /**
+     * 更新条目的头部与过期时刻（如收到 304 后）
+     */
+    synchronized void update(String key, Cache.Entry entry) {
+        Meta meta = index.get(key);
+        if (meta != null && meta.size == entry.getBody().length) {
+            meta.headers = entry.getHeaders();
+            meta.storedTime = entry.getStoredTime();
+            meta.expiryTime = entry.getExpiryTime();
+            dirty = true;
+        }
+    }
+
+    synchronized int size() {
+        return index.size();
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    private void store(String key, Cache.Entry entry) {
+        String file = fileName(key);
+        Path tmp = dir.resolve(file + TMP_SUFFIX);
+        try {
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer body = ByteBuffer.wrap(entry.getBody());
+                while (body.hasRemaining()) {
+                    out.write(body);
+                }
+                // 先落盘再替换，崩溃后索引指向的文件不会是未写完的内容
+                out.force(true);
+            }
+            Files.move(tmp, dir.resolve(file), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Log.error("Client", "Failed to write disk cache entry", e);
+            deleteQuietly(tmp);
+            return;
+        }
+
+        Meta meta = new Meta(file, entry.getVersion(), entry.getStatusCode(), entry.getHeaders(),
+                entry.getBody().length, entry.getStoredTime(), entry.getExpiryTime());
+        List<Meta> victims;
+        synchronized (this) {
+            Meta old = remove(key);
+            index.put(key, meta);
+            bytes += meta.size;
+            victims = trim();
+            if (old != null) {
+                victims.add(old);
+            }
+            dirty = true;
+        }
+        delete(victims);
+    }
+
+    /**
+     * 淘汰最久未访问的条目直到总大小不超过上限，调用方持有锁
+     * @return 被淘汰的条目，其文件由调用方在释放锁之后删除
+     */
+    private List<Meta> trim() {
+        List<Meta> victims = new ArrayList<>();
+        Iterator<Map.Entry<String, Meta>> iterator = index.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Meta eldest = iterator.next().getValue();
+            iterator.remove();
+            bytes -= eldest.size;
+            victims.add(eldest);
+            dirty = true;
+        }
+        return victims;
+    }
+
+    /**
+     * 从索引中移除条目，调用方持有锁并在释放锁之后删除其文件
+     */
+    private Meta remove(String key) {
+        Meta old = index.remove(key);
+        if (old != null) {
+            bytes -= old.size;
+            dirty = true;
+        }
+        return old;
+    }
+
+    private void delete(List<Meta> victims) {
+        for (Meta victim : victims) {
+            deleteQuietly(dir.resolve(victim.file));
+        }
+    }
+
+    /**
+     * 对目录下的 lock 文件加锁，关闭时释放
+     * @return 是否取得锁；其他进程或本进程内的另一个实例持有锁时返回 false
+     */
+    private boolean lock() throws IOException {
+        FileChannel channel = FileChannel.open(dir.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            if (channel.tryLock() != null) {
+                lockChannel = channel;
+                return true;
+            }
+        } catch (OverlappingFileLockException e) {
+            // 本进程内已打开同一目录
+        }
+        channel.close();
+        return false;
+    }
+
+    /**
+     * 有变更时写出索引：先写临时文件并 fsync，再原子替换
+     */
+    private void flush() {
+        List<String> lines;
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            lines = new ArrayList<>(index.size());
+            for (Map.Entry<String, Meta> e : index.entrySet()) {
+                lines.add(e.getValue().toJson(e.getKey()).toString());
+            }
+        }
+
+        Path tmp = dir.resolve(INDEX_FILE + TMP_SUFFIX);
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream stream = new BufferedOutputStream(Channels.newOutputStream(out), 64 * 1024);
+            for (String line : lines) {
+                stream.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            stream.flush();
+            out.force(true);
+            Files.move(tmp, dir.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Log.error("Client", "Failed to write disk cache index", e);
+            synchronized (this) {
+                dirty = true;
+            }
+        }
+    }
+
+    /**
+     * 等待未完成的写入，写出索引并释放目录锁
+     */
+    void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        synchronized (this) {
+            if (lockChannel != null) {
+                try {
+                    lockChannel.close();
+                } catch (IOException e) {
+                    Log.warn("Client", "Failed to release disk cache lock: {}", e.getMessage());
+                }
+                lockChannel = null;
+            }
+        }
+    }
+
+    /**
+     * 载入索引，丢弃失效的条目并清理多余的文件
+     */
+    private void load() throws IOException {
+        Path indexFile = dir.resolve(INDEX_FILE);
+        if (Files.exists(indexFile)) {
+            for (String line : Files.readAllLines(indexFile, StandardCharsets.UTF_8)) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    JSONObject json = new JSONObject(line);
+                    Meta meta = Meta.fromJson(json);
+                    Path body = dir.resolve(meta.file);
+                    // 旧版本以压缩形式保存的条目不再载入，其文件随后作为多余文件清理
+                    if (!meta.headers.containsKey(Header.Content_Encoding)
+                            && Files.isRegularFile(body) && Files.size(body) == meta.size) {
+                        Meta old = index.put(json.getString("key"), meta);
+                        bytes += meta.size - (old == null ? 0 : old.size);
+                    }
+                } catch (JSONException e) {
+                    Log.warn("Client", "Skipping invalid disk cache record: {}", line);
+                }
+            }
+        }
+
+        Set<String> referenced = new HashSet<>();
+        for (Meta meta : index.values()) {
+            referenced.add(meta.file);
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                boolean orphan = name.endsWith(BODY_SUFFIX) && !referenced.contains(name);
+                if (orphan || (name.endsWith(TMP_SUFFIX) && !name.equals(INDEX_FILE + TMP_SUFFIX))) {
+                    deleteQuietly(file);
+                }
+            }
+        }
+        delete(trim());
+    }
+
+    /**
+     * 消息体文件名：缓存键的摘要加序号，同一键的新旧版本使用不同的文件
+     */
+    private String fileName(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                name.append(String.format("%02x", digest[i]));
+            }
+            return name.append('-').append(Long.toHexString(sequence.incrementAndGet())).append(BODY_SUFFIX).toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            Log.warn("Client", "Failed to delete {}", path);
+        }
+    }
+
+    /**
+     * 索引条目
+     */
+    private static class Meta {
+        private final String file;
+        private final String version;
+        private final int statusCode;
+        private final long size;
+        private Map<String, String> headers;
+        private long storedTime;
+        private long expiryTime;
+
+        Meta(String file, String version, int statusCode, Map<String, String> headers, long size,
+             long storedTime, long expiryTime) {
+            this.file = file;
+            this.version = version;
+            this.statusCode = statusCode;
+            this.headers = headers;
+            this.size = size;
+            this.storedTime = storedTime;
+            this.expiryTime = expiryTime;
+        }
+
+        JSONObject toJson(String key) {
+            return new JSONObject()
+                    .put("key", key)
+                    .put("file", file)
+                    .put("version", version)
+                    .put("status", statusCode)
+                    .put("headers", new JSONObject(headers))
+                    .put("size", size)
+                    .put("stored", storedTime)
+                    .put("expiry", expiryTime);
+        }
+
+        static Meta fromJson(JSONObject json) {
+            JSONObject headersJson = json.getJSONObject("headers");
+            Map<String, String> headers = new HashMap<>();
+            for (String name : headersJson.keySet()) {
+                headers.put(name, headersJson.getString(name));
+            }
+            long expiryTime = json.getLong("expiry");
+            // 旧索引没有存入时刻，按有效期为 0 处理，不会提前刷新
+            return new Meta(json.getString("file"), json.getString("version"), json.getInt("status"),
+                    headers, json.getLong("size"), json.optLong("stored", expiryTime), expiryTime);
+        }
+    }
+}
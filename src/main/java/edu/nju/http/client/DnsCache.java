@@ -0,0 +1,166 @@
+package edu.nju.http.client;
+
+import edu.nju.http.utils.Log;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+/**
+ * DnsCache - 带有效期的主机名解析缓存
+ * <p>
+ * 解析在后台线程中执行，不阻塞事件循环；同一主机同时只有一次解析在进行。成功的结果保留 ttl，
+ * 失败的结果保留 negativeTtl，避免服务端重启等情况下大量重连反复阻塞在解析上。
+ * 返回的地址按 IPv6 / IPv4 交替排列（RFC 8305），供建立连接时依次尝试。
+ */
+class DnsCache {
+    private static final Pattern IPV4_PATTERN = Pattern.compile("^(\\d{1,3}\\.){3}\\d{1,3}$");
+    private static final int MAX_RECORDS = 1024;
+
+    // 所有客户端共用的解析线程
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(2, r -> {
+        Thread thread = new Thread(r, "dns-resolver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Resolver resolver;
+    private final long ttl;
+    private final long negativeTtl;
+    private final Map<String, Record> records = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<List<InetAddress>>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * @param resolver    实际执行解析的 Resolver
+     * @param ttl         解析结果的有效期（毫秒）
+     * @param negativeTtl 解析失败结果的有效期（毫秒）
+     */
+    DnsCache(Resolver resolver, long ttl, long negativeTtl) {
+        this.resolver = resolver;
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+    }
+
+    /**
+     * 解析主机名
+     * @return 地址列表；无法解析时以 UnknownHostException 异常完成
+     */
+    CompletableFuture<List<InetAddress>> resolve(String host) {
+        if (isIPAddress(host)) {
+            // 字面量地址不经过名字解析
+            try {
+                return CompletableFuture.completedFuture(Collections.singletonList(InetAddress.getByName(host)));
+            } catch (UnknownHostException e) {
+                return failed(e);
+            }
+        }
+
+        Record record = records.get(host);
+        if (record != null && System.currentTimeMillis() < record.expiresAt) {
+            return record.error != null ? failed(record.error) : CompletableFuture.completedFuture(record.addresses);
+        }
+
+        CompletableFuture<List<InetAddress>> future = new CompletableFuture<>();
+        CompletableFuture<List<InetAddress>> existing = pending.putIfAbsent(host, future);
+        if (existing != null) {
+            return existing;
+        }
+        EXECUTOR.execute(() -> lookup(host, future));
+        return future;
+    }
+
+    /**
+     * 丢弃某个主机的解析结果，如该主机的所有地址都无法连接时
+     */
+    void invalidate(String host) {
+        records.remove(host);
+    }
+
+    private void lookup(String host, CompletableFuture<List<InetAddress>> future) {
+        long now = System.currentTimeMillis();
+        Record record;
+        try {
+            InetAddress[] addresses = resolver.resolve(host);
+            if (addresses == null || addresses.length == 0) {
+                throw new UnknownHostException(host);
+            }
+            List<InetAddress> ordered = interleave(addresses);
+            Log.debug("Client", "Resolved host {} to {}", host, ordered);
+            record = new Record(ordered, null, now + ttl);
+        } catch (UnknownHostException e) {
+            Log.error("Client", "Failed to resolve host: " + host);
+            record = new Record(null, e, now + negativeTtl);
+        } catch (RuntimeException e) {
+            Log.error("Client", "Resolver failed for host: " + host, e);
+            UnknownHostException error = new UnknownHostException(host);
+            error.initCause(e);
+            record = new Record(null, error, now + negativeTtl);
+        }
+
+        if (records.size() >= MAX_RECORDS) {
+            records.values().removeIf(r -> now >= r.expiresAt);
+        }
+        records.put(host, record);
+        pending.remove(host, future);
+        if (record.error != null) {
+            future.completeExceptionally(record.error);
+        } else {
+            future.complete(record.addresses);
+        }
+    }
+
+    /**
+     * 按地址族交替排列，以第一个地址的地址族开头
+     */
+    static List<InetAddress> interleave(InetAddress[] addresses) {
+        boolean preferV6 = addresses[0] instanceof Inet6Address;
+        Deque<InetAddress> preferred = new ArrayDeque<>();
+        Deque<InetAddress> other = new ArrayDeque<>();
+        for (InetAddress address : addresses) {
+            ((address instanceof Inet6Address) == preferV6 ? preferred : other).add(address);
+        }
+        List<InetAddress> ordered = new ArrayList<>(addresses.length);
+        while (!preferred.isEmpty() || !other.isEmpty()) {
+            if (!preferred.isEmpty()) {
+                ordered.add(preferred.poll());
+            }
+            if (!other.isEmpty()) {
+                ordered.add(other.poll());
+            }
+        }
+        return Collections.unmodifiableList(ordered);
+    }
+
+    private static boolean isIPAddress(String host) {
+        return IPV4_PATTERN.matcher(host).matches() || host.indexOf(':') >= 0;
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    private static class Record {
+        private final List<InetAddress> addresses;
+        private final UnknownHostException error;
+        private final long expiresAt;
+
+        Record(List<InetAddress> addresses, UnknownHostException error, long expiresAt) {
+            this.addresses = addresses;
+            this.error = error;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
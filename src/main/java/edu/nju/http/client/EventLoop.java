@@ -0,0 +1,697 @@
+package edu.nju.http.client;
+
+import edu.nju.http.message.HttpResponse;
+import edu.nju.http.message.constant.Header;
+import edu.nju.http.message.constant.Method;
+import edu.nju.http.utils.Log;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * EventLoop - 客户端事件循环
+ * <p>
+ * 单个线程通过 Selector 处理所有连接的建立、请求写出与响应读取，少量调用线程即可同时发出成千上万个请求。
+ * 一批发往同一主机的请求由若干条连接（Lane）分担，每条连接上最多有 depth 个请求在途（HTTP/1.1 管线化），
+ * 响应按发送顺序解析；服务端在管线中途关闭连接时，未收到响应的请求按 {@link #abort} 的规则重新排队并退回逐个发送。
+ * <p>
+ * 新建连接时先经 DnsCache 异步解析出全部地址，再按 Happy Eyeballs（RFC 8305）依次发起连接：
+ * 前一个地址在 happy_eyeballs_delay 内未连上或连接失败时即尝试下一个地址，最先连上的连接胜出，其余关闭。
+ * <p>
+ * 除 submit 外的方法只在事件循环线程中执行；响应的回调也在该线程中执行，不应阻塞。
+ */
+class EventLoop {
+    private static final long TICK = 100; // 超时检查间隔（毫秒）
+    private static final int MAX_ATTEMPTS = 2;
+
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(Math.max(Config.BUFFER_SIZE, 8192));
+
+    // 活动中的连接，按开始顺序排列
+    private final Set<Lane> lanes = new LinkedHashSet<>();
+    // 正在建立连接、还有地址未尝试的连接
+    private final Set<Lane> connecting = new LinkedHashSet<>();
+
+    EventLoop() {
+        try {
+            selector = Selector.open();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        thread = new Thread(this::run, "http-client-loop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 提交一次请求/响应交换
+     * @param pool    连接所属的连接池
+     * @param request 已序列化的请求
+     * @param handler 响应消息体的去向
+     * @param budget  重发已写出的请求时占用的重试预算
+     */
+    CompletableFuture<HttpResponse> submit(ConnectionPool pool, String host, int port, byte[] request, BodyHandler handler,
+                                           RetryBudget budget) {
+        List<byte[]> requests = new ArrayList<>(1);
+        requests.add(request);
+        return submit(pool, host, port, requests, handler, 1, 1, budget).get(0);
+    }
+
+    /**
+     * 提交一批发往同一主机的请求
+     * @param handler  响应消息体的去向
+     * @param depth    每条连接上最多同时在途的请求数，1 表示不使用管线化
+     * @param maxLanes 最多使用的连接数
+     * @param budget   重发已写出的请求时占用的重试预算
+     * @return 与请求一一对应的响应
+     */
+    List<CompletableFuture<HttpResponse>> submit(ConnectionPool pool, String host, int port, List<byte[]> requests,
+                                                 BodyHandler handler, int depth, int maxLanes, RetryBudget budget) {
+        Batch batch = new Batch(pool, host, port, depth, maxLanes, budget);
+        List<CompletableFuture<HttpResponse>> futures = new ArrayList<>(requests.size());
+        for (byte[] request : requests) {
+            Exchange exchange = new Exchange(request, handler);
+            batch.pending.add(exchange);
+            futures.add(exchange.future);
+        }
+        execute(() -> start(batch));
+        return futures;
+    }
+
+    private void execute(Runnable task) {
+        if (Thread.currentThread() == thread) {
+            task.run();
+            return;
+        }
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    private void run() {
+        long nextCheck = System.currentTimeMillis() + TICK;
+        while (true) {
+            try {
+                selector.select(lanes.isEmpty() ? 0 : timeout());
+
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    Lane lane = (Lane) key.attachment();
+                    if (lane != null) {
+                        handle(key, lane);
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                if (!connecting.isEmpty()) {
+                    stagger(now);
+                }
+                if (now >= nextCheck) {
+                    expire(now);
+                    nextCheck = now + TICK;
+                }
+            } catch (Throwable e) {
+                Log.error("Client", "Unexpected error in event loop", e);
+            }
+        }
+    }
+
+    /**
+     * 距下一次检查的时间：超时检查间隔，或最近一次待发起的连接尝试
+     */
+    private long timeout() {
+        long timeout = TICK;
+        long now = System.currentTimeMillis();
+        for (Lane lane : connecting) {
+            timeout = Math.min(timeout, lane.nextAttemptAt - now);
+        }
+        return Math.max(1, timeout);
+    }
+
+    private void handle(SelectionKey key, Lane lane) {
+        try {
+            if (key.isConnectable()) {
+                onConnectable(lane, key.channel());
+                return;
+            }
+            if (key.isReadable()) {
+                read(lane);
+            }
+            // 读取过程中连接可能已归还或关闭
+            if (lanes.contains(lane) && key.isValid() && key.isWritable()) {
+                write(lane);
+            }
+        } catch (CancelledKeyException e) {
+            abort(lane, new IOException("Connection closed"));
+        } catch (IOException e) {
+            abort(lane, e);
+        } catch (RuntimeException e) {
+            // BodyHandler 抛出的异常
+            abort(lane, new IOException("Failed to handle response: " + e.getMessage(), e));
+        }
+    }
+
+    // ==============Batch================
+
+    private void start(Batch batch) {
+        batch.hostPool = batch.pool.get(batch.host, batch.port);
+        int needed = (batch.pending.size() + batch.depth - 1) / batch.depth;
+        for (int i = 0; i < Math.min(needed, batch.maxLanes); i++) {
+            open(batch);
+        }
+    }
+
+    /**
+     * 为批次再申请一条连接
+     */
+    private void open(Batch batch) {
+        Lane lane = new Lane(batch);
+        batch.lanes++;
+        lanes.add(lane);
+        lane.touch();
+        lane.reservation = batch.hostPool.reserve();
+        lane.reservation.thenRun(() -> execute(() -> onReserved(lane)));
+    }
+
+    private void onReserved(Lane lane) {
+        if (!lanes.contains(lane)) {
+            // 取消与分配名额同时发生
+            lane.batch.hostPool.releasePermit();
+            return;
+        }
+        lane.reserved = true;
+        if (lane.batch.pending.isEmpty()) {
+            // 其他连接已经完成了全部请求
+            finish(lane);
+            return;
+        }
+        lane.touch();
+        try {
+            Connection connection = lane.batch.pool.pollIdle(lane.batch.hostPool);
+            if (connection != null) {
+                lane.reused = true;
+                lane.connected = true;
+                lane.connection = connection;
+                fill(lane);
+            } else {
+                connect(lane);
+            }
+        } catch (IOException e) {
+            abort(lane, e);
+        }
+    }
+
+    /**
+     * 解析主机名后开始建立连接
+     */
+    private void connect(Lane lane) {
+        Batch batch = lane.batch;
+        batch.pool.dns.resolve(batch.host).whenComplete((addresses, e) -> execute(() -> {
+            if (!lanes.contains(lane)) {
+                // 解析期间已超时
+                return;
+            }
+            if (e != null) {
+                abort(lane, new IOException("Failed to resolve host: " + batch.host, e));
+                return;
+            }
+            lane.addresses = new ArrayDeque<>(addresses);
+            try {
+                attempt(lane);
+            } catch (IOException ex) {
+                abort(lane, ex);
+            }
+        }));
+    }
+
+    /**
+     * 向下一个地址发起连接
+     * @throws IOException 所有地址都已连接失败
+     */
+    private void attempt(Lane lane) throws IOException {
+        while (!lane.addresses.isEmpty()) {
+            InetAddress address = lane.addresses.poll();
+            Connection connection = new Connection(lane.batch.host, lane.batch.port);
+            lane.nextAttemptAt = System.currentTimeMillis() + Config.HAPPY_EYEBALLS_DELAY;
+            try {
+                if (connection.open(address)) {
+                    won(lane, connection);
+                    return;
+                }
+                lane.attempts.add(connection);
+                connection.channel.register(selector, SelectionKey.OP_CONNECT, lane);
+                break;
+            } catch (IOException e) {
+                lane.lastError = e;
+            }
+        }
+        if (lane.addresses.isEmpty()) {
+            connecting.remove(lane);
+        } else {
+            connecting.add(lane);
+        }
+        if (lane.attempts.isEmpty()) {
+            lastAttemptFailed(lane);
+        }
+    }
+
+    /**
+     * 前一次尝试迟迟未连上时向下一个地址并行发起连接
+     */
+    private void stagger(long now) {
+        for (Lane lane : new ArrayList<>(connecting)) {
+            if (now >= lane.nextAttemptAt) {
+                try {
+                    attempt(lane);
+                } catch (IOException e) {
+                    abort(lane, e);
+                }
+            }
+        }
+    }
+
+    private void onConnectable(Lane lane, SelectableChannel channel) throws IOException {
+        Connection connection = null;
+        for (Connection attempt : lane.attempts) {
+            if (attempt.channel == channel) {
+                connection = attempt;
+                break;
+            }
+        }
+        if (connection == null) {
+            return;
+        }
+        try {
+            if (connection.finishConnect()) {
+                lane.attempts.remove(connection);
+                won(lane, connection);
+            }
+        } catch (IOException e) {
+            lane.attempts.remove(connection);
+            lane.lastError = e;
+            // 立即尝试下一个地址
+            if (!lane.addresses.isEmpty()) {
+                attempt(lane);
+            } else if (lane.attempts.isEmpty()) {
+                lastAttemptFailed(lane);
+            }
+        }
+    }
+
+    /**
+     * 连接成功，关闭其余尝试中的连接
+     */
+    private void won(Lane lane, Connection connection) throws IOException {
+        closeAttempts(lane);
+        connecting.remove(lane);
+        connection.pool = lane.batch.hostPool;
+        lane.connection = connection;
+        lane.connected = true;
+        lane.touch();
+        fill(lane);
+    }
+
+    /**
+     * 所有地址都无法连接，丢弃解析结果，下次重新解析
+     */
+    private void lastAttemptFailed(Lane lane) throws IOException {
+        lane.batch.pool.dns.invalidate(lane.batch.host);
+        throw lane.lastError != null ? lane.lastError
+                : new IOException("Failed to connect to " + lane.batch.host + ":" + lane.batch.port);
+    }
+
+    private void closeAttempts(Lane lane) {
+        for (Connection attempt : lane.attempts) {
+            detach(attempt);
+            attempt.close();
+        }
+        lane.attempts.clear();
+    }
+
+    /**
+     * 从批次中取出请求补足管线深度并写出；没有剩余请求时归还连接
+     */
+    private void fill(Lane lane) throws IOException {
+        Batch batch = lane.batch;
+        while (lane.inflight.size() < batch.depth && !lane.closing && !batch.pending.isEmpty()) {
+            Exchange exchange = batch.pending.poll();
+            exchange.request.rewind();
+            lane.inflight.add(exchange);
+            lane.outgoing.add(exchange.request);
+        }
+        if (lane.inflight.isEmpty()) {
+            finish(lane);
+            return;
+        }
+        write(lane);
+    }
+
+    private void write(Lane lane) throws IOException {
+        if (!lane.outgoing.isEmpty()) {
+            long written = lane.connection.channel.write(lane.outgoing.toArray(new ByteBuffer[0]));
+            if (written > 0) {
+                lane.touch();
+            }
+            while (!lane.outgoing.isEmpty() && !lane.outgoing.peek().hasRemaining()) {
+                lane.outgoing.poll();
+            }
+        }
+        interest(lane, (lane.paused ? 0 : SelectionKey.OP_READ) | (lane.outgoing.isEmpty() ? 0 : SelectionKey.OP_WRITE));
+    }
+
+    private void read(Lane lane) throws IOException {
+        readBuffer.clear();
+        int bytesRead = lane.connection.channel.read(readBuffer);
+        if (bytesRead == -1) {
+            Exchange head = lane.inflight.peek();
+            if (head != null && head.parser.finish()) {
+                complete(lane, false);
+            }
+            abort(lane, new IOException("Connection closed by server"));
+            return;
+        }
+        if (bytesRead == 0) {
+            return;
+        }
+        lane.touch();
+
+        readBuffer.flip();
+        while (readBuffer.hasRemaining() && !lane.inflight.isEmpty()) {
+            if (!lane.inflight.peek().parser.feed(readBuffer)) {
+                pauseIfBehind(lane);
+                return;
+            }
+            String connectionHeader = lane.inflight.peek().parser.getResponse().getHeaderVal(Header.Connection);
+            complete(lane, "keep-alive".equalsIgnoreCase(connectionHeader));
+        }
+        if (readBuffer.hasRemaining()) {
+            // 没有在途请求却收到数据，连接状态不可信
+            abort(lane, new IOException("Unexpected data from server"));
+            return;
+        }
+        if (lane.closing) {
+            // 服务端声明关闭连接，之后的请求等连接关闭时重新排队
+            if (lane.inflight.isEmpty()) {
+                abort(lane, new IOException("Connection closed by server"));
+            }
+            return;
+        }
+        fill(lane);
+    }
+
+    /**
+     * Subscriber 处理跟不上时暂停读取，内核缓冲区填满后由 TCP 流量控制让服务端放慢发送
+     */
+    private void pauseIfBehind(Lane lane) throws IOException {
+        CompletableFuture<Void> resume = lane.inflight.peek().parser.pause();
+        if (resume == null || resume.isDone()) {
+            return;
+        }
+        lane.paused = true;
+        interest(lane, lane.outgoing.isEmpty() ? 0 : SelectionKey.OP_WRITE);
+        resume.thenRun(() -> execute(() -> resume(lane)));
+    }
+
+    /**
+     * Subscriber 已赶上，恢复读取
+     */
+    private void resume(Lane lane) {
+        if (!lanes.contains(lane) || !lane.paused) {
+            return;
+        }
+        lane.paused = false;
+        lane.touch();
+        try {
+            write(lane);
+        } catch (IOException e) {
+            abort(lane, e);
+        }
+    }
+
+    /**
+     * 队首请求的响应已解析完成
+     * @param keepAlive 服务端是否保持连接
+     */
+    private void complete(Lane lane, boolean keepAlive) {
+        Exchange exchange = lane.inflight.poll();
+        lane.completed++;
+        if (!keepAlive) {
+            lane.closing = true;
+        }
+        HttpResponse response = exchange.parser.getResponse();
+        Log.debug("Client", () -> "Response received: " + response.getStartLine());
+        CompletableFuture<Void> completion = exchange.parser.completion();
+        if (completion.isDone() && !completion.isCompletedExceptionally()) {
+            exchange.future.complete(response);
+            return;
+        }
+        // Subscriber 仍在其他线程中处理消息体（如写文件），结束后再交给调用方
+        completion.whenComplete((ignored, e) -> {
+            if (e != null) {
+                exchange.future.completeExceptionally(
+                        e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+            } else {
+                exchange.future.complete(response);
+            }
+        });
+    }
+
+    /**
+     * 批次中的请求已全部分配，归还连接
+     */
+    private void finish(Lane lane) {
+        lanes.remove(lane);
+        lane.batch.lanes--;
+        if (lane.connection != null) {
+            detach(lane.connection);
+            lane.batch.pool.release(lane.connection, !lane.closing);
+        } else if (lane.reserved) {
+            lane.batch.hostPool.releasePermit();
+        }
+    }
+
+    /**
+     * 连接出错或被关闭：可以安全重发的请求重新排队，其余请求失败
+     * <p>
+     * 一个字节都没有写出的请求服务端不可能处理过，总是重发；已写出的请求只有 GET/HEAD 且尚未开始接收响应时才重发，
+     * 新连接上的第一个请求除外（连接本身可能就是服务端拒绝的原因），并且每次重发占用重试预算，
+     * 与 HttpClient 层的重试共用同一份预算。POST 等请求写出后一律不重发，避免在服务端执行两次。
+     */
+    private void abort(Lane lane, IOException e) {
+        if (!lanes.remove(lane)) {
+            return;
+        }
+        Batch batch = lane.batch;
+        batch.lanes--;
+        connecting.remove(lane);
+        closeAttempts(lane);
+
+        if (lane.connection != null) {
+            detach(lane.connection);
+            batch.pool.release(lane.connection, false);
+        } else if (lane.reserved) {
+            batch.hostPool.releasePermit();
+        } else if (!batch.hostPool.cancel(lane.reservation)) {
+            // 名额刚刚分配，随后的 onReserved 会看到连接已结束并归还
+            Log.debug("Client", "Reservation granted while aborting, will be released");
+        }
+
+        // 管线中途被关闭时退回逐个发送
+        if (lane.inflight.size() > 1 || lane.completed > 0 && !lane.inflight.isEmpty()) {
+            if (batch.depth > 1) {
+                Log.warn("Client", "Pipeline to {}:{} broken, falling back to sequential requests", batch.host, batch.port);
+                batch.depth = 1;
+            }
+        }
+
+        boolean first = !lane.reused && lane.completed == 0;
+        Deque<Exchange> retry = new ArrayDeque<>();
+        for (Exchange exchange : lane.inflight) {
+            boolean unsent = exchange.request.position() == 0;
+            boolean retryable = unsent || (exchange.idempotent && !exchange.parser.isStarted() && !first);
+            if (retryable && ++exchange.attempts < MAX_ATTEMPTS
+                    && (unsent || batch.budget == null || batch.budget.tryWithdraw())) {
+                exchange.parser = new ResponseParser(exchange.handler, exchange.head);
+                retry.add(exchange);
+            } else {
+                Log.error("Client", "Request to " + batch.host + ":" + batch.port + " failed: " + e.getMessage());
+                exchange.parser.abort(e);
+                exchange.future.completeExceptionally(e);
+            }
+            first = false;
+        }
+        lane.inflight.clear();
+        while (!retry.isEmpty()) {
+            batch.pending.addFirst(retry.pollLast());
+        }
+
+        if (batch.pending.isEmpty()) {
+            return;
+        }
+        if (lane.connected) {
+            // 换一条新连接继续
+            open(batch);
+        } else if (batch.lanes == 0) {
+            // 连接都没有建立起来，剩余请求一并失败
+            Exchange exchange;
+            while ((exchange = batch.pending.poll()) != null) {
+                Log.error("Client", "Request to " + batch.host + ":" + batch.port + " failed: " + e.getMessage());
+                exchange.parser.abort(e);
+                exchange.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void expire(long now) {
+        List<Lane> expired = new ArrayList<>();
+        for (Lane lane : lanes) {
+            if (now - lane.lastActive > Config.CONNECTION_TIMEOUT) {
+                expired.add(lane);
+            }
+        }
+        for (Lane lane : expired) {
+            IOException e = new IOException(!lane.connected
+                    ? "Timed out waiting for a connection"
+                    : "Response timeout while waiting for data");
+            // 超时的请求可能已被服务端处理，不再重试
+            for (Exchange exchange : lane.inflight) {
+                exchange.attempts = MAX_ATTEMPTS;
+            }
+            abort(lane, e);
+        }
+    }
+
+    private void interest(Lane lane, int ops) throws ClosedChannelException {
+        SelectionKey key = lane.connection.channel.keyFor(selector);
+        if (key == null || !key.isValid()) {
+            lane.connection.channel.register(selector, ops, lane);
+        } else {
+            key.interestOps(ops);
+            key.attach(lane);
+        }
+    }
+
+    private void detach(Connection connection) {
+        SelectionKey key = connection.channel == null ? null : connection.channel.keyFor(selector);
+        if (key != null && key.isValid()) {
+            key.interestOps(0);
+            key.attach(null);
+        }
+    }
+
+    /**
+     * 发往同一主机的一批请求，只在事件循环线程中访问
+     */
+    private static class Batch {
+        private final ConnectionPool pool;
+        private final String host;
+        private final int port;
+        private final int maxLanes;
+        private final RetryBudget budget;
+        private final Deque<Exchange> pending = new ArrayDeque<>();
+        private ConnectionPool.HostPool hostPool;
+        private int depth;
+        private int lanes;
+
+        Batch(ConnectionPool pool, String host, int port, int depth, int maxLanes, RetryBudget budget) {
+            this.pool = pool;
+            this.host = host;
+            this.port = port;
+            this.depth = Math.max(1, depth);
+            this.maxLanes = Math.max(1, maxLanes);
+            this.budget = budget;
+        }
+    }
+
+    /**
+     * 批次占用的一条连接，只在事件循环线程中访问
+     */
+    private static class Lane {
+        private final Batch batch;
+        // 已分配到该连接、尚未收到完整响应的请求，按发送顺序排列
+        private final Deque<Exchange> inflight = new ArrayDeque<>();
+        // 尚未写完的请求
+        private final Deque<ByteBuffer> outgoing = new ArrayDeque<>();
+        private CompletableFuture<Void> reservation;
+        private boolean reserved;
+        // 建立连接时尚未尝试的地址与尝试中的连接
+        private Deque<InetAddress> addresses = new ArrayDeque<>();
+        private final List<Connection> attempts = new ArrayList<>(2);
+        private long nextAttemptAt;
+        private IOException lastError;
+        private Connection connection;
+        private boolean connected;
+        private boolean reused;
+        private boolean closing; // 服务端已声明关闭连接
+        private boolean paused; // 等待 Subscriber 赶上，暂停读取
+        private int completed;
+        private long lastActive;
+
+        Lane(Batch batch) {
+            this.batch = batch;
+        }
+
+        void touch() {
+            lastActive = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 一次请求/响应交换
+     */
+    private static class Exchange {
+        private final ByteBuffer request;
+        private final BodyHandler handler;
+        private final boolean head;
+        private final boolean idempotent;
+        private final CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        private ResponseParser parser;
+        private int attempts;
+
+        Exchange(byte[] request, BodyHandler handler) {
+            this.request = ByteBuffer.wrap(request);
+            this.handler = handler;
+            this.head = startsWith(request, Method.HEAD + " ");
+            this.idempotent = head || startsWith(request, Method.GET + " ");
+            this.parser = new ResponseParser(handler, head);
+        }
+
+        private static boolean startsWith(byte[] request, String prefix) {
+            if (request.length < prefix.length()) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length(); i++) {
+                if (request[i] != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
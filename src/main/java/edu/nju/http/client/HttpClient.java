@@ -4,29 +4,79 @@ import edu.nju.http.message.HttpRequest;
 import edu.nju.http.message.HttpResponse;
 import edu.nju.http.message.constant.Header;
 import edu.nju.http.message.constant.Method;
+import edu.nju.http.utils.Histogram;
 import edu.nju.http.utils.Log;
-import lombok.*;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.net.InetAddress;
-import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
-import java.nio.channels.SocketChannel;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.Arrays;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.zip.ZipException;
 
 /**
- * HttpClient
+ * HttpClient - 线程安全，可在多个线程间共享
  */
 public class HttpClient {
-    private final Map<String, Connection> connectionMap = new HashMap<>();
+    // 所有客户端共用一个事件循环线程
+    private static final EventLoop LOOP = new EventLoop();
+    private static final BodyHandler BYTE_ARRAY = BodyHandlers.ofByteArray();
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+    private static final int HEDGE_MIN_SAMPLES = 20;
+    private static final long LATENCY_DECAY = 1000;
+
+    // 重试与对冲请求的定时
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "http-client-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 缓存读写（可能访问磁盘）与内存中消息体的解压，不在事件循环线程中执行
+    private static final ExecutorService WORKER = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+                Thread thread = new Thread(r, "http-client-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final ConnectionPool pool;
     private final Cache cache = new Cache();
 
+    // host:port -> cookie
+    private final Map<String, String> cookies = new ConcurrentHashMap<>();
+
+    private final RetryBudget retryBudget = new RetryBudget(Config.RETRY_BUDGET_RATIO, Config.RETRY_BUDGET_MIN);
+    // host:port -> 近期响应延迟（毫秒）
+    private final Map<String, Histogram> latencies = new ConcurrentHashMap<>();
+
+    // 缓存 Key -> 进行中的 GET 请求
+    private final Map<String, CompletableFuture<HttpResponse>> inFlight = new ConcurrentHashMap<>();
+
+    public HttpClient() {
+        this(Resolver.SYSTEM);
+    }
+
+    /**
+     * @param resolver 主机名解析方式，解析结果按 dns_cache_ttl 缓存
+     */
+    public HttpClient(Resolver resolver) {
+        DnsCache dns = new DnsCache(resolver, Config.DNS_CACHE_TTL, Config.DNS_NEGATIVE_TTL);
+        this.pool = new ConnectionPool(Config.MAX_CONNECTIONS_PER_HOST, Config.MAX_IDLE_PER_HOST, Config.IDLE_TIMEOUT, dns);
+    }
+
     /**
      * 发送 HTTP 请求
      *
@@ -36,7 +86,114 @@ public class HttpClient {
      * @return HTTP 响应对象
      */
     public HttpResponse send(String host, int port, HttpRequest request) {
-        return send(host, port, request, 0);
+        return send(host, port, request, BYTE_ARRAY);
+    }
+
+    /**
+     * 发送 HTTP 请求，消息体交给 handler 处理（如直接写入文件）
+     *
+     * @param host    目标服务器地址
+     * @param port    目标服务器端口
+     * @param request HTTP 请求对象
+     * @param handler 响应消息体的去向，见 {@link BodyHandlers}
+     * @return HTTP 响应对象
+     */
+    public HttpResponse send(String host, int port, HttpRequest request, BodyHandler handler) {
+        try {
+            return sendAsync(host, port, request, handler).get();
+        } catch (ExecutionException e) {
+            // 失败原因已在发生处记录
+            return null;
+        } catch (InterruptedException e) {
+            Log.error("Client", "Thread interrupted while waiting for response", e);
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * 异步发送 HTTP 请求，不占用调用线程
+     * <p>
+     * 回调在客户端内部线程中执行，不应阻塞；需要阻塞的处理请使用 xxxAsync 方法切换到其他线程。
+     *
+     * @param host    目标服务器地址
+     * @param port    目标服务器端口
+     * @param request HTTP 请求对象
+     * @return HTTP 响应；请求失败时以 IOException 异常完成
+     */
+    public CompletableFuture<HttpResponse> sendAsync(String host, int port, HttpRequest request) {
+        return sendAsync(host, port, request, BYTE_ARRAY);
+    }
+
+    /**
+     * 异步发送 HTTP 请求，消息体交给 handler 处理
+     *
+     * @see #sendAsync(String, int, HttpRequest)
+     */
+    public CompletableFuture<HttpResponse> sendAsync(String host, int port, HttpRequest request, BodyHandler handler) {
+        return send(host, port, request, handler, 0);
+    }
+
+    /**
+     * 批量发送发往同一服务器的请求
+     *
+     * @see #sendBatch(String, int, List, int)
+     */
+    public List<HttpResponse> sendBatch(String host, int port, List<HttpRequest> requests) {
+        return sendBatch(host, port, requests, Config.PIPELINE_DEPTH);
+    }
+
+    /**
+     * 批量发送发往同一服务器的请求
+     * <p>
+     * 请求分摊到连接池中的多条长连接上，每条连接以管线化方式最多同时发出 depth 个请求，响应按顺序解析；
+     * 服务端在管线中途关闭连接时自动退回逐个发送。请求中含有非 GET 请求时不使用管线化。
+     * 批量请求不经过缓存与重定向处理。
+     *
+     * @param host     目标服务器地址
+     * @param port     目标服务器端口
+     * @param requests HTTP 请求列表
+     * @param depth    每条连接上的管线深度，至少为 1
+     * @return 与请求一一对应的响应，失败的请求对应 null
+     * @throws IllegalArgumentException depth 小于 1
+     */
+    public List<HttpResponse> sendBatch(String host, int port, List<HttpRequest> requests, int depth) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Pipeline depth must be at least 1: " + depth);
+        }
+        String connectionKey = host + ":" + port;
+        String cookie = cookies.get(connectionKey);
+
+        List<byte[]> rawRequests = new ArrayList<>(requests.size());
+        for (HttpRequest request : requests) {
+            if (!Method.GET.equals(request.getMethod())) {
+                depth = 1;
+            }
+            if (cookie != null) {
+                request.setHeader(Header.Cookie, cookie);
+            }
+            rawRequests.add(request.toBytes());
+            retryBudget.deposit();
+        }
+
+        int lanes = Math.min(Config.MAX_CONNECTIONS_PER_HOST, (requests.size() + depth - 1) / depth);
+        List<CompletableFuture<HttpResponse>> futures = LOOP.submit(pool, host, port, rawRequests, BYTE_ARRAY, depth, lanes, retryBudget);
+
+        List<HttpResponse> responses = new ArrayList<>(futures.size());
+        for (CompletableFuture<HttpResponse> future : futures) {
+            try {
+                HttpResponse response = future.get();
+                updateCookie(connectionKey, response);
+                responses.add(response);
+            } catch (ExecutionException e) {
+                responses.add(null);
+            } catch (InterruptedException e) {
+                Log.error("Client", "Thread interrupted while waiting for response", e);
+                Thread.currentThread().interrupt();
+                responses.add(null);
+            }
+        }
+        return responses;
     }
 
     /**
@@ -44,12 +201,11 @@ public class HttpClient {
      */
     public void disconnect(String host, int port) {
         String connectionKey = host + ":" + port;
-        Connection connection = connectionMap.remove(connectionKey);
-        if (connection != null) {
-            connection.close();
-            Log.info("Client", "Connection closed: " + connectionKey);
+        cookies.remove(connectionKey);
+        if (pool.close(host, port)) {
+            Log.info("Client", "Connection closed: {}", connectionKey);
         } else {
-            Log.info("Client", "No connection to close: " + connectionKey);
+            Log.info("Client", "No connection to close: {}", connectionKey);
         }
     }
 
@@ -60,17 +216,8 @@ public class HttpClient {
     public void stop() {
         Log.info("Client", "Closing all connections...");
 
-        for (Map.Entry<String, Connection> entry : connectionMap.entrySet()) {
-            String connectionKey = entry.getKey();
-            Connection connection = entry.getValue();
-
-            if (connection != null && connection.isConnected()) {
-                connection.close();
-                Log.info("Client", "Connection closed: " + connectionKey);
-            }
-        }
-
-        connectionMap.clear();
+        pool.closeAll();
+        cookies.clear();
         Log.info("Client", "All connections have been closed. Client stopped.");
     }
 
@@ -81,55 +228,173 @@ public class HttpClient {
      * @param host          目标服务器地址
      * @param port          目标服务器端口
      * @param request       HTTP 请求对象
+     * @param handler       响应消息体的去向
      * @param redirectCount 重定向次数
-     * @return HTTP 响应对象
+     * @return HTTP 响应
      */
-    private HttpResponse send(String host, int port, HttpRequest request, int redirectCount) {
+    private CompletableFuture<HttpResponse> send(String host, int port, HttpRequest request, BodyHandler handler, int redirectCount) {
         // 检查缓存
-        if (Method.GET.equals(request.getMethod()) && cache.contains(request)) {
-            if (cache.isValid(request)) {
-                Log.info("Client", "Cache hit: " + request.getStartLine());
-                HttpResponse cachedResponse = cache.get(request);
-                // 更新 Date
-                cachedResponse.setHeader(Header.Date, ZonedDateTime.now().format(DateTimeFormatter.RFC_1123_DATE_TIME));
-                return cachedResponse;
-            } else {
-                Log.info("Client", "Cache expired: " + request.getStartLine());
-                HttpResponse cachedResponse = cache.get(request);
-                request.setHeader(Header.If_None_Match, cachedResponse.getHeaderVal(Header.ETag));
-                request.setHeader(Header.If_Modified_Since, cachedResponse.getHeaderVal(Header.Last_Modified));
+        Cache.Entry entry = null;
+        if (Method.GET.equals(request.getMethod())) {
+            entry = cache.lookup(request);
+            if (entry != null && entry.isFresh()) {
+                Log.debug("Client", () -> "Cache hit: " + request.getStartLine());
+                // 频繁访问的条目临近过期时提前在后台刷新
+                if (entry.claimRefresh()) {
+                    revalidate(host, port, request, entry);
+                }
+                return fromCache(entry.toResponse(), handler);
+            } else if (entry != null && entry.isStaleUsable()) {
+                Log.info("Client", "Cache stale, revalidating in background: {}", request.getUri());
+                revalidate(host, port, request, entry);
+                return fromCache(entry.toResponse(), handler);
+            } else if (entry != null) {
+                Log.info("Client", "Cache expired: {}", request.getUri());
+                setValidators(request, entry);
             }
         }
 
-        HttpResponse response = sendRequest(host, port, request);
+        // 相同的 GET 请求合并为一次网络请求，消息体需读入内存才能共享
+        CompletableFuture<HttpResponse> result;
+        if (handler == BYTE_ARRAY && Method.GET.equals(request.getMethod())) {
+            result = coalesce(Cache.generateCacheKey(request), () -> fetch(host, port, request, handler, redirectCount));
+        } else {
+            result = fetch(host, port, request, handler, redirectCount);
+        }
+        return entry == null ? result : staleIfError(result, request, entry, handler);
+    }
 
-        // 304 直接返回缓存内容
-        if (response != null && response.getStatusCode() == 304) {
-            Log.info("Client", "Resource not modified, using cached version.");
-            cache.update(request);
-            return cache.get(request);
+    /**
+     * 在后台发送条件请求验证缓存条目，结果经 fetch 写回缓存；与同一 Key 的进行中请求合并
+     */
+    private void revalidate(String host, int port, HttpRequest request, Cache.Entry entry) {
+        Map<String, String> headers = new HashMap<>();
+        for (String key : request.getHeaderKeys()) {
+            headers.put(key, request.getHeaderVal(key));
         }
+        HttpRequest conditional = new HttpRequest(request.getVersion(), request.getMethod(), request.getUri(), headers, request.getBody());
+        setValidators(conditional, entry);
+        coalesce(Cache.generateCacheKey(conditional), () -> fetch(host, port, conditional, BYTE_ARRAY, 0))
+                .whenComplete((response, e) -> {
+                    entry.refreshed();
+                    if (e != null) {
+                        Log.warn("Client", "Background revalidation failed: {}", conditional.getUri());
+                    }
+                });
+    }
 
-        // 重定向
-        if (response != null && isRedirect(response)) {
-            if(redirectCount >= Config.MAX_REDIRECTS) {
-                Log.warn("Client", "Too many redirects.");
-                return null;
+    /**
+     * 请求失败或服务端出错时，若条目仍在 stale-if-error 时限内则返回缓存内容
+     * <p>
+     * 消息体已交给调用方 handler 的 5xx 响应原样返回。
+     */
+    private CompletableFuture<HttpResponse> staleIfError(CompletableFuture<HttpResponse> result, HttpRequest request,
+                                                         Cache.Entry entry, BodyHandler handler) {
+        return result.handleAsync((response, e) -> {
+            boolean error = e != null || response == null || (handler == BYTE_ARRAY && response.getStatusCode() >= 500);
+            if (error && entry.isUsableOnError()) {
+                Log.warn("Client", "Request failed, serving stale cache: {}", request.getUri());
+                return fromCache(entry.toResponse(), handler);
             }
-            return redirect(response, request, redirectCount);
+            return e == null ? CompletableFuture.completedFuture(response) : HttpClient.<HttpResponse>failed(e);
+        }, WORKER).thenCompose(future -> future);
+    }
+
+    private static void setValidators(HttpRequest request, Cache.Entry entry) {
+        if (entry.getETag() != null) {
+            request.setHeader(Header.If_None_Match, entry.getETag());
+        }
+        if (entry.getLastModified() != null) {
+            request.setHeader(Header.If_Modified_Since, entry.getLastModified());
         }
+    }
 
-        // 缓存
-        if (Config.ENABLE_CACHE
-                && Method.GET.equals(request.getMethod())
-                && response != null
-                && response.getStatusCode() == 200
-                && response.getHeaderVal(Header.Cache_Control) != null
-                && !response.getHeaderVal(Header.Cache_Control).contains("no-store")) {
-            cache.put(request, response);
+    /**
+     * 相同 Key 的请求进行中时等待其结果，否则发起请求
+     * <p>
+     * 发起请求的调用方得到原始响应，其余调用方各得到一份头部独立的副本，消息体共享。
+     */
+    private CompletableFuture<HttpResponse> coalesce(String key, Supplier<CompletableFuture<HttpResponse>> fetch) {
+        CompletableFuture<HttpResponse> leader = new CompletableFuture<>();
+        CompletableFuture<HttpResponse> existing = inFlight.putIfAbsent(key, leader);
+        if (existing != null) {
+            Log.debug("Client", "Joined in-flight request: {}", key);
+            return existing.thenApply(HttpClient::copyOf);
         }
 
-        return response;
+        CompletableFuture<HttpResponse> result;
+        try {
+            result = fetch.get();
+        } catch (RuntimeException e) {
+            result = failed(e);
+        }
+        result.whenComplete((response, e) -> {
+            inFlight.remove(key, leader);
+            if (e != null) {
+                leader.completeExceptionally(e);
+            } else {
+                leader.complete(response);
+            }
+        });
+        return result;
+    }
+
+    private static HttpResponse copyOf(HttpResponse response) {
+        if (response == null) {
+            return null;
+        }
+        Map<String, String> headers = new HashMap<>();
+        for (String key : response.getHeaderKeys()) {
+            headers.put(key, response.getHeaderVal(key));
+        }
+        return new HttpResponse(response.getVersion(), response.getStatusCode(), headers, response.getBody());
+    }
+
+    /**
+     * 经网络获取响应，处理 304、重定向并写入缓存；这些处理可能读写磁盘缓存，在工作线程中执行
+     */
+    private CompletableFuture<HttpResponse> fetch(String host, int port, HttpRequest request, BodyHandler handler, int redirectCount) {
+        return sendRequest(host, port, request, handler).thenComposeAsync(response -> {
+            // 304 直接返回缓存内容
+            if (response.getStatusCode() == 304) {
+                Log.info("Client", "Resource not modified, using cached version.");
+                Cache.Entry entry = cache.update(request, response);
+                if (entry != null) {
+                    return fromCache(entry.toResponse(), handler);
+                }
+                if (request.getHeaderVal(Header.If_None_Match) == null
+                        && request.getHeaderVal(Header.If_Modified_Since) == null) {
+                    // 未发送条件请求却收到 304，没有可用的缓存内容，原样返回
+                    return CompletableFuture.completedFuture(response);
+                }
+                // 条目在验证期间被淘汰，去掉验证头部重新获取完整响应
+                Log.info("Client", "Cached entry evicted during revalidation, fetching again: {}", request.getUri());
+                request.removeHeader(Header.If_None_Match);
+                request.removeHeader(Header.If_Modified_Since);
+                return fetch(host, port, request, handler, redirectCount);
+            }
+
+            // 重定向
+            if (isRedirect(response)) {
+                if (redirectCount >= Config.MAX_REDIRECTS) {
+                    Log.warn("Client", "Too many redirects.");
+                    return failed(new IOException("Too many redirects"));
+                }
+                return redirect(response, request, handler, redirectCount);
+            }
+
+            // 缓存，消息体未读入内存时不缓存；缓存保存解压后的消息体
+            if (Config.ENABLE_CACHE
+                    && handler == BYTE_ARRAY
+                    && Method.GET.equals(request.getMethod())
+                    && response.getStatusCode() == 200
+                    && (response.getHeaderVal(Header.Cache_Control) != null
+                        || response.getHeaderVal(Header.Expires) != null)) {
+                cache.put(request, response);
+            }
+
+            return CompletableFuture.completedFuture(response);
+        }, WORKER);
     }
 
     /**
@@ -137,23 +402,24 @@ public class HttpClient {
      *
      * @param response 原始响应
      * @param request  原始请求
+     * @param handler  响应消息体的去向
      * @param redirectCount 重定向次数
-     * @return HTTP 响应对象
+     * @return HTTP 响应
      */
-    private HttpResponse redirect(HttpResponse response, HttpRequest request, int redirectCount) {
+    private CompletableFuture<HttpResponse> redirect(HttpResponse response, HttpRequest request, BodyHandler handler, int redirectCount) {
 
         String location = response.getHeaderVal(Header.Location);
         if (location == null) {
             Log.warn("Client", "Redirect location not specified.");
-            return null;
+            return failed(new IOException("Redirect location not specified"));
         }
 
-        Log.info("Client", "Redirecting to: " + location);
+        Log.info("Client", "Redirecting to: {}", location);
 
         if (location.contains("://")) {
             if(!location.startsWith("http")) {
                 Log.error("Client", "Unsupported protocol: " + location);
-                return null;
+                return failed(new IOException("Unsupported protocol: " + location));
             }
         }
 
@@ -163,7 +429,7 @@ public class HttpClient {
         String host = hostPort[0];
         int port = hostPort.length == 2 ? Integer.parseInt(hostPort[1]) : 80;
 
-        return send(host, port, request, redirectCount + 1);
+        return send(host, port, request, handler, redirectCount + 1);
     }
 
     private boolean isRedirect(HttpResponse response) {
@@ -174,204 +440,206 @@ public class HttpClient {
     /**
      * 实际发送 HTTP 请求
      */
-    private HttpResponse sendRequest(String host, int port, HttpRequest request) {
+    private CompletableFuture<HttpResponse> sendRequest(String host, int port, HttpRequest request, BodyHandler handler) {
         String connectionKey = host + ":" + port;
-        Connection connection = connectionMap.computeIfAbsent(connectionKey, k -> {
-            Connection conn = new Connection(host, port);
-            conn.connect();
-            return conn;
-        });
 
         // 添加 Cookie
-        if (connection.getCookie() != null) {
-            request.setHeader(Header.Cookie, connection.getCookie());
+        String cookie = cookies.get(connectionKey);
+        if (cookie != null) {
+            request.setHeader(Header.Cookie, cookie);
         }
 
-        try {
-            // 发送请求
-            ByteBuffer requestBuffer = ByteBuffer.wrap(request.toBytes());
-            while (requestBuffer.hasRemaining()) {
-                connection.channel.write(requestBuffer);
-            }
-
-            // 读取响应
-            HttpResponse response = null;
-            ByteArrayOutputStream responseData = new ByteArrayOutputStream();
-            ByteBuffer responseBuffer = ByteBuffer.allocate(Config.BUFFER_SIZE);
-
-            boolean headerParsed = false;
-            int contentLength = -1;
-            int headerEndIndex = -1;
-            long timeout = System.currentTimeMillis() + Config.CONNECTION_TIMEOUT;
-
-            try {
-                while (true) {
-                    if (System.currentTimeMillis() > timeout) {
-                        Log.error("Client", "Response timeout while waiting for data.");
-                        disconnect(host, port);
-                        return null;
-                    }
-                    int bytesRead = connection.channel.read(responseBuffer);
-                    if (bytesRead == -1) {
-                        Log.warn("Client", "Connection closed by server.");
-                        break;
-                    } else if (bytesRead == 0) {
-                        Thread.sleep(10);
-                        continue;
-                    }
-
-                    responseBuffer.flip();
-                    byte[] data = new byte[responseBuffer.remaining()];
-                    responseBuffer.get(data);
-                    responseData.write(data);
-                    responseBuffer.clear();
-
-                    // 响应头，解析以获取结束位置
-                    if (!headerParsed) {
-                        headerEndIndex = HttpResponse.findHeaderEnd(responseData.toByteArray());
-                        if (headerEndIndex != -1) {
-                            headerParsed = true;
-
-                            byte[] headerBytes = Arrays.copyOfRange(responseData.toByteArray(), 0, headerEndIndex + 4);
-                            response = new HttpResponse(headerBytes);
-
-                            String contentLengthVal = response.getHeaderVal(Header.Content_Length);
-                            if (contentLengthVal != null) {
-                                contentLength = Integer.parseInt(contentLengthVal.trim());
-                            }
-
-                            byte[] remainingBody = Arrays.copyOfRange(responseData.toByteArray(), headerEndIndex + 4, responseData.size());
-                            responseData.reset();
-                            responseData.write(remainingBody);
-                        }
-                    }
+        // 声明可接受压缩的消息体
+        if (Config.ENABLE_COMPRESSION && request.getHeaderVal(Header.Accept_Encoding) == null) {
+            request.setHeader(Header.Accept_Encoding, ACCEPT_ENCODING);
+        }
 
-                    // 响应体
-                    if (headerParsed) {
-                        if (contentLength >= 0) {
-                            if (responseData.size() >= contentLength) {
-                                byte[] body = Arrays.copyOfRange(responseData.toByteArray(), 0, contentLength);
-                                response.setBody(body, response.getHeaderVal(Header.Content_Type));
-                                break;
-                            }
-                        }
-                    }
-                }
-            } catch (IOException e) {
-                Log.error("Client", "Request/Response failed");
-                disconnect(host, port);
-            } catch (InterruptedException e) {
-                Log.error("Client", "Thread interrupted during sleep", e);
-                Thread.currentThread().interrupt();
-                disconnect(host, port);
-                return null;
+        // 重定向与 304 的消息体不交给调用方的 handler；压缩的消息体边接收边解压，内存中不保留压缩数据
+        BodyHandler effective = response -> {
+            if (isRedirect(response) || response.getStatusCode() == 304) {
+                return BYTE_ARRAY.apply(response);
             }
-
-            if(response == null) {
-                Log.error("Client", "Unexpected error occurred while parsing response.");
-                return null;
+            BodyHandler.Subscriber decoder = ContentDecoder.wrap(response, handler);
+            return decoder != null ? decoder : handler.apply(response);
+        };
+
+        Call call = new Call(host, port, request.toBytes(), effective, isIdempotent(request), handler == BYTE_ARRAY);
+        retryBudget.deposit();
+        attempt(call);
+        // 对冲请求：超过该主机近期 P95 延迟仍未收到响应时再发一份，先到者为准
+        if (Config.HEDGE_REQUESTS && call.inMemory && isIdempotent(request)) {
+            Histogram latency = latencies.get(connectionKey);
+            if (latency != null && latency.getCount() >= HEDGE_MIN_SAMPLES) {
+                long delay = Math.max(1, latency.percentile(Config.HEDGE_PERCENTILE));
+                SCHEDULER.schedule(() -> hedge(call), delay, TimeUnit.MILLISECONDS);
             }
+        }
+        return call.result.thenApply(response -> {
+            updateCookie(connectionKey, response);
+            return response;
+        });
+    }
 
-            Log.info("Client", "Response received: " + response.getStartLine());
-
-            // 处理 Cookie
-            String setCookie = response.getHeaderVal(Header.Set_Cookie);
-            if (setCookie != null) {
-                connection.setCookie(setCookie);
+    /**
+     * 发出一次尝试；幂等请求遇到暂时性错误时在重试预算内按指数退避重试
+     */
+    private void attempt(Call call) {
+        call.outstanding.incrementAndGet();
+        long start = System.nanoTime();
+        LOOP.submit(pool, call.host, call.port, call.request, call.handler, retryBudget).whenComplete((response, e) -> {
+            int outstanding = call.outstanding.decrementAndGet();
+            if (call.result.isDone()) {
+                return;
             }
-
-            // 长连接
-            String connectionHeader = response.getHeaderVal(Header.Connection);
-            if (!"keep-alive".equalsIgnoreCase(connectionHeader)) {
-                disconnect(host, port);
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            long retryAfter = cause == null ? retryAfter(call, response) : -1;
+            boolean retryable = cause != null ? isTransient(cause) : retryAfter >= 0;
+            if (!retryable) {
+                if (cause == null) {
+                    latencies.computeIfAbsent(call.host + ":" + call.port, k -> new Histogram(LATENCY_DECAY))
+                            .record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    call.result.complete(response);
+                } else if (outstanding == 0) {
+                    call.result.completeExceptionally(cause);
+                }
+                return;
             }
 
-            return response;
+            if (call.idempotent && call.retries < Config.MAX_RETRIES && retryBudget.tryWithdraw()) {
+                long delay = Math.max(backoff(call.retries), retryAfter);
+                call.retries++;
+                if (Log.isInfoEnabled()) {
+                    Log.warn("Client", "Request to " + call.host + ":" + call.port + " failed ("
+                            + (cause != null ? cause.getMessage() : "status " + response.getStatusCode())
+                            + "), retrying in " + delay + " ms");
+                }
+                SCHEDULER.schedule(() -> attempt(call), delay, TimeUnit.MILLISECONDS);
+            } else if (cause == null) {
+                call.result.complete(response);
+            } else if (outstanding == 0) {
+                call.result.completeExceptionally(cause);
+            }
+        });
+    }
 
-        } catch (IOException e) {
-            Log.error("Client", "Request/Response failed");
-            disconnect(host, port);
-            return null;
+    private void hedge(Call call) {
+        if (call.result.isDone() || !retryBudget.tryWithdraw()) {
+            return;
         }
+        Log.debug("Client", "Hedging request to {}:{}", call.host, call.port);
+        attempt(call);
     }
 
     /**
-     * 连接管理
+     * 连接被关闭、重置、超时等网络错误可以重试；主机名无法解析、压缩数据有误、BodyHandler 出错等不重试
      */
-    private static class Connection {
-        private static final Pattern IPV4_PATTERN = Pattern.compile("^(\\d{1,3}\\.){3}\\d{1,3}$");
-
-        private final String host;
-        private final String resolvedHost;
-        private final int port;
-        private SocketChannel channel;
-        @Getter @Setter
-        private String cookie;
-
-        public Connection(String host, int port) {
-            this.host = host;
-            this.port = port;
-            this.resolvedHost = resolveHost(host);
+    private static boolean isTransient(Throwable e) {
+        if (!(e instanceof IOException) || e instanceof ZipException) {
+            return false;
         }
-
-        public void connect() {
-            try {
-                channel = SocketChannel.open();
-                channel.configureBlocking(false);
-                channel.connect(new InetSocketAddress(resolvedHost, port));
-                long timeout = System.currentTimeMillis() + Config.CONNECTION_TIMEOUT;
-
-                while (!channel.finishConnect()) {
-                    if (System.currentTimeMillis() > timeout) {
-                        Log.error("Connection", "Connection timeout while connecting to " + host + ":" + port);
-                        close();
-                        return;
-                    }
-                    Thread.sleep(50);
-                }
-                Log.info("Connection", "Connected to " + host + ":" + port);
-            } catch (IOException e) {
-                Log.error("Connection", "Failed to connect to " + host + ":" + port);
-            } catch (InterruptedException e) {
-                Log.error("Connection", "Thread interrupted while connecting to " + host + ":" + port, e);
-                Thread.currentThread().interrupt();
+        for (Throwable t = e.getCause(); t != null; t = t.getCause()) {
+            if (t instanceof UnknownHostException || t instanceof RuntimeException) {
+                return false;
             }
         }
+        return true;
+    }
 
-        public void close() {
-            try {
-                if (channel != null && channel.isOpen()) {
-                    channel.close();
-                    Log.info("Connection", "Connection closed: " + host + ":" + port);
-                }
-            } catch (IOException e) {
-                Log.error("Connection", "Error closing connection", e);
-            }
+    /**
+     * 可重试的响应（429、502、503、504）需等待的时间
+     * @return 等待的毫秒数，优先采用 Retry-After；不可重试时返回 -1
+     */
+    private static long retryAfter(Call call, HttpResponse response) {
+        int status = response.getStatusCode();
+        if (!call.inMemory || (status != 429 && status != 502 && status != 503 && status != 504)) {
+            return -1;
+        }
+        String value = response.getHeaderVal(Header.Retry_After);
+        if (value == null) {
+            return 0;
         }
+        try {
+            long millis = Long.parseLong(value.trim()) * 1000;
+            // 要求等待太久时不重试
+            return millis <= Config.RETRY_MAX_BACKOFF ? millis : -1;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 带全抖动的指数退避：[0, min(max, base * 2^retries)) 内随机
+     */
+    private static long backoff(int retries) {
+        long ceiling = Math.min(Config.RETRY_MAX_BACKOFF, Config.RETRY_BACKOFF << Math.min(retries, 20));
+        return ThreadLocalRandom.current().nextLong(Math.max(1, ceiling));
+    }
+
+    private static boolean isIdempotent(HttpRequest request) {
+        return Method.GET.equals(request.getMethod()) || Method.HEAD.equals(request.getMethod());
+    }
 
-        public boolean isConnected() {
-            return channel != null && channel.isOpen();
+    /**
+     * 处理 Cookie
+     */
+    private void updateCookie(String connectionKey, HttpResponse response) {
+        String setCookie = response.getHeaderVal(Header.Set_Cookie);
+        if (setCookie != null) {
+            cookies.put(connectionKey, setCookie);
         }
+    }
 
-        private String resolveHost(String host) {
-            if (isIPAddress(host)) {
-                Log.debug("Connection", "Using provided IP address directly: " + host);
-                return host;
-            }
-            try {
-                InetAddress address = InetAddress.getByName(host);
-                Log.debug("Connection", "Resolved host " + host + " to IP " + address.getHostAddress());
-                return address.getHostAddress();
-            } catch (IOException e) {
-                Log.error("Connection", "Failed to resolve host: " + host);
-                throw new IllegalArgumentException("Invalid host: " + host);
+    /**
+     * 将缓存的响应交给 handler；缓存响应的头部只读，handler 可能修改头部，交给它的是头部的副本
+     */
+    private CompletableFuture<HttpResponse> fromCache(HttpResponse cached, BodyHandler handler) {
+        if (handler == BYTE_ARRAY) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        HttpResponse cachedResponse = copyOf(cached);
+        BodyHandler.Subscriber subscriber = null;
+        try {
+            subscriber = handler.apply(cachedResponse);
+            BodyHandlers.replay(cachedResponse.getBody(), subscriber);
+            subscriber.onComplete(cachedResponse);
+            return subscriber.completion().thenApply(ignored -> cachedResponse);
+        } catch (IOException | RuntimeException e) {
+            Log.error("Client", "Failed to handle cached response: " + e.getMessage());
+            if (subscriber != null) {
+                subscriber.onError(e);
             }
+            return failed(e);
         }
+    }
 
-        private boolean isIPAddress(String host) {
-            return IPV4_PATTERN.matcher(host).matches();
-        }
+    private static <T> CompletableFuture<T> failed(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
 
+    /**
+     * 一次逻辑请求，可能包含多次尝试（重试与对冲）
+     */
+    private static class Call {
+        private final String host;
+        private final int port;
+        private final byte[] request;
+        private final BodyHandler handler;
+        private final boolean idempotent;
+        private final boolean inMemory; // 消息体读入内存，重复的响应可以直接丢弃
+        private final CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private volatile int retries;
+
+        Call(String host, int port, byte[] request, BodyHandler handler, boolean idempotent, boolean inMemory) {
+            this.host = host;
+            this.port = port;
+            this.request = request;
+            this.handler = handler;
+            this.idempotent = idempotent;
+            this.inMemory = inMemory;
+        }
     }
 
 }
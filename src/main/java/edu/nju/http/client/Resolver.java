@@ -0,0 +1,23 @@
+package edu.nju.http.client;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Resolver - 主机名解析
+ * <p>
+ * 默认使用系统解析；测试或特殊网络环境下可通过 {@link HttpClient#HttpClient(Resolver)} 替换。
+ * 解析在后台线程中执行，结果由客户端按 dns_cache_ttl 缓存。
+ */
+@FunctionalInterface
+public interface Resolver {
+
+    Resolver SYSTEM = InetAddress::getAllByName;
+
+    /**
+     * 解析主机名
+     * @return 主机的全部地址，按优先顺序排列
+     * @throws UnknownHostException 无法解析时抛出
+     */
+    InetAddress[] resolve(String host) throws UnknownHostException;
+}
@@ -0,0 +1,269 @@
+package edu.nju.http.client;
+
+import edu.nju.http.message.HttpResponse;
+import edu.nju.http.message.constant.Header;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * ResponseParser - 增量式 HTTP 响应解析器
+ * <p>
+ * 每次读到数据后调用 feed，解析器只消费属于当前响应的字节，多余的字节留在缓冲区中。
+ * 支持 Content-Length、chunked 以及以连接关闭为结束的消息体；消息体逐段交给 BodyHandler 产生的 Subscriber，
+ * 解析器本身不缓存消息体。
+ */
+class ResponseParser {
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+
+    private enum State { HEADER, BODY, CHUNK_SIZE, CHUNK_DATA, CHUNK_END, TRAILER, UNTIL_CLOSE, DONE }
+
+    private final BodyHandler handler;
+    private final boolean head; // HEAD 请求的响应没有消息体
+    private State state = State.HEADER;
+    private final ByteArrayOutputStream header = new ByteArrayOutputStream();
+    private int matched; // 已匹配的 \r\n\r\n 字节数
+    private final StringBuilder line = new StringBuilder();
+
+    private HttpResponse response;
+    private BodyHandler.Subscriber subscriber;
+    private long remaining;
+    private boolean started;
+
+    ResponseParser(BodyHandler handler, boolean head) {
+        this.handler = handler;
+        this.head = head;
+    }
+
+    /**
+     * 消费缓冲区中的数据
+     * @return 响应是否已完整解析
+     */
+    public boolean feed(ByteBuffer buffer) throws IOException {
+        if (buffer.hasRemaining()) {
+            started = true;
+        }
+        while (buffer.hasRemaining() && state != State.DONE) {
+            switch (state) {
+                case HEADER:
+                    readHeader(buffer);
+                    break;
+                case BODY:
+                    remaining -= deliver(buffer, remaining);
+                    if (remaining == 0) {
+                        complete();
+                    }
+                    break;
+                case CHUNK_SIZE:
+                    if (readLine(buffer)) {
+                        readChunkSize();
+                    }
+                    break;
+                case CHUNK_DATA:
+                    remaining -= deliver(buffer, remaining);
+                    if (remaining == 0) {
+                        state = State.CHUNK_END;
+                    }
+                    break;
+                case CHUNK_END:
+                    if (readLine(buffer)) {
+                        line.setLength(0);
+                        state = State.CHUNK_SIZE;
+                    }
+                    break;
+                case TRAILER:
+                    if (readLine(buffer)) {
+                        boolean end = line.length() == 0;
+                        line.setLength(0);
+                        if (end) {
+                            complete();
+                        }
+                    }
+                    break;
+                case UNTIL_CLOSE:
+                    deliver(buffer, buffer.remaining());
+                    break;
+                default:
+                    break;
+            }
+        }
+        return state == State.DONE;
+    }
+
+    /**
+     * 连接被对端关闭时调用
+     * @return 响应是否以连接关闭为结束并已完整解析
+     */
+    public boolean finish() throws IOException {
+        if (state == State.UNTIL_CLOSE) {
+            complete();
+        }
+        return state == State.DONE;
+    }
+
+    /**
+     * 请求失败，通知 Subscriber 释放资源
+     */
+    public void abort(Throwable e) {
+        if (subscriber != null && state != State.DONE) {
+            subscriber.onError(e);
+        }
+    }
+
+    /**
+     * @return Subscriber 处理跟不上时可以继续读取时完成的 Future；无需暂停时返回 null
+     */
+    public CompletableFuture<Void> pause() {
+        return subscriber != null && state != State.DONE ? subscriber.pause() : null;
+    }
+
+    /**
+     * 响应解析完成后 Subscriber 仍在其他线程中进行的处理
+     */
+    public CompletableFuture<Void> completion() {
+        return subscriber != null ? subscriber.completion() : CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * 是否已经收到属于该响应的数据
+     */
+    public boolean isStarted() {
+        return started;
+    }
+
+    public HttpResponse getResponse() {
+        return state == State.DONE ? response : null;
+    }
+
+    private void readHeader(ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
+        int end = start;
+        while (end < buffer.limit() && matched < 4) {
+            byte b = buffer.get(end++);
+            if (b == (matched % 2 == 0 ? '\r' : '\n')) {
+                matched++;
+            } else {
+                matched = b == '\r' ? 1 : 0;
+            }
+        }
+        header.write(buffer.array(), buffer.arrayOffset() + start, end - start);
+        buffer.position(end);
+        if (header.size() > MAX_HEADER_SIZE) {
+            throw new IOException("Response header too large");
+        }
+        if (matched == 4) {
+            onHeader();
+        }
+    }
+
+    private void onHeader() throws IOException {
+        response = new HttpResponse(header.toByteArray());
+        header.reset();
+        matched = 0;
+
+        int status = response.getStatusCode();
+        // 1xx 为中间响应，继续解析下一个响应头
+        if (status < 200) {
+            response = null;
+            return;
+        }
+
+        // 响应头中没有 Content-Length 时，构造函数会补上值为 0 的 Content-Length，这里去掉，由 Subscriber 完成时设置
+        String contentLength = null;
+        if (response.getBody() == null) {
+            contentLength = response.getHeaderVal(Header.Content_Length);
+        } else {
+            response.removeHeader(Header.Content_Length);
+        }
+        String transferEncoding = response.getHeaderVal(Header.Transfer_Encoding);
+
+        // HEAD 请求的响应没有消息体，Content-Length 只是声明的长度
+        if (head) {
+            state = State.DONE;
+            return;
+        }
+
+        subscriber = handler.apply(response);
+
+        if (status == 204 || status == 304) {
+            complete();
+        } else if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+            state = State.CHUNK_SIZE;
+        } else if (contentLength != null) {
+            try {
+                remaining = Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid Content-Length: " + contentLength);
+            }
+            if (remaining < 0) {
+                throw new IOException("Invalid Content-Length: " + contentLength);
+            }
+            if (remaining == 0) {
+                complete();
+            } else {
+                state = State.BODY;
+            }
+        } else {
+            state = State.UNTIL_CLOSE;
+        }
+    }
+
+    private void readChunkSize() throws IOException {
+        String size = line.toString();
+        line.setLength(0);
+        int semicolon = size.indexOf(';');
+        if (semicolon >= 0) {
+            size = size.substring(0, semicolon);
+        }
+        try {
+            remaining = Long.parseLong(size.trim(), 16);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid chunk size: " + size);
+        }
+        if (remaining < 0) {
+            throw new IOException("Invalid chunk size: " + size);
+        }
+        state = remaining == 0 ? State.TRAILER : State.CHUNK_DATA;
+    }
+
+    /**
+     * 读取一行，不含行尾的 \r\n
+     * @return 是否已读到完整的一行
+     */
+    private boolean readLine(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            char c = (char) (buffer.get() & 0xFF);
+            if (c == '\n') {
+                return true;
+            }
+            if (c != '\r') {
+                if (line.length() >= MAX_HEADER_SIZE) {
+                    throw new IOException("Response line too long");
+                }
+                line.append(c);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 将缓冲区中最多 max 字节交给 Subscriber
+     * @return 交出的字节数
+     */
+    private int deliver(ByteBuffer buffer, long max) throws IOException {
+        int n = (int) Math.min(max, buffer.remaining());
+        int end = buffer.position() + n;
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(end);
+        subscriber.onData(slice);
+        buffer.position(end);
+        return n;
+    }
+
+    private void complete() throws IOException {
+        subscriber.onComplete(response);
+        state = State.DONE;
+    }
+}
@@ -0,0 +1,58 @@
+package edu.nju.http.client;
+
+/**
+ * RetryBudget - 重试预算
+ * <p>
+ * 每个请求存入 ratio 个令牌，每次重试或对冲请求取出一个令牌，另外每秒固定补充 minPerSecond 个，
+ * 保证请求量很小时也能重试。令牌数有上限，服务端持续出错时重试最多占请求量的 ratio 左右，不会放大成重试风暴。
+ */
+class RetryBudget {
+    // 多次累加小数时的舍入误差，如 10 次 0.1 之和略小于 1
+    private static final double EPSILON = 1e-9;
+
+    private final double ratio;
+    private final double minPerSecond;
+    private final double capacity;
+
+    private double balance;
+    private long lastRefill = System.nanoTime();
+
+    /**
+     * @param ratio        每个请求存入的令牌数
+     * @param minPerSecond 每秒固定补充的令牌数
+     */
+    RetryBudget(double ratio, double minPerSecond) {
+        this.ratio = Math.max(0, ratio);
+        this.minPerSecond = Math.max(0, minPerSecond);
+        // 最多攒下约 10 秒的固定补充量与 100 个请求的存入量
+        this.capacity = Math.max(1, this.minPerSecond * 10 + this.ratio * 100);
+        this.balance = this.capacity;
+    }
+
+    /**
+     * 发出一个新请求
+     */
+    synchronized void deposit() {
+        refill();
+        balance = Math.min(capacity, balance + ratio);
+    }
+
+    /**
+     * 尝试取出一个令牌用于重试
+     * @return 预算是否允许
+     */
+    synchronized boolean tryWithdraw() {
+        refill();
+        if (balance < 1 - EPSILON) {
+            return false;
+        }
+        balance = Math.max(0, balance - 1);
+        return true;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        balance = Math.min(capacity, balance + (now - lastRefill) / 1e9 * minPerSecond);
+        lastRefill = now;
+    }
+}
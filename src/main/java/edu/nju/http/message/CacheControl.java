@@ -0,0 +1,135 @@
+package edu.nju.http.message;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * CacheControl - Cache-Control 头部解析
+ * <p>
+ * 指令名不区分大小写，以逗号分隔，值可以带引号，如 {@code public, max-age=3600, no-cache="Set-Cookie"}。
+ * 无法识别的指令保留在 directives 中，可通过 {@link #getSeconds(String)} 等方法读取。
+ */
+public class CacheControl {
+    private static final CacheControl EMPTY = new CacheControl(Collections.emptyMap());
+
+    // 指令名（小写） -> 值，无值时为空字符串
+    private final Map<String, String> directives;
+
+    private CacheControl(Map<String, String> directives) {
+        this.directives = directives;
+    }
+
+    /**
+     * 解析 Cache-Control 头部值
+     * @param value 头部值，为 null 时返回不含任何指令的结果
+     */
+    public static CacheControl parse(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return EMPTY;
+        }
+        Map<String, String> directives = new HashMap<>();
+        int i = 0;
+        int n = value.length();
+        while (i < n) {
+            // 指令名
+            int start = i;
+            while (i < n && value.charAt(i) != ',' && value.charAt(i) != '=') {
+                i++;
+            }
+            String name = value.substring(start, i).trim().toLowerCase();
+            String arg = "";
+
+            // 指令值，可能带引号
+            if (i < n && value.charAt(i) == '=') {
+                i++;
+                while (i < n && value.charAt(i) == ' ') {
+                    i++;
+                }
+                if (i < n && value.charAt(i) == '"') {
+                    StringBuilder quoted = new StringBuilder();
+                    i++;
+                    while (i < n && value.charAt(i) != '"') {
+                        if (value.charAt(i) == '\\' && i + 1 < n) {
+                            i++;
+                        }
+                        quoted.append(value.charAt(i++));
+                    }
+                    i++;
+                    arg = quoted.toString();
+                    while (i < n && value.charAt(i) != ',') {
+                        i++;
+                    }
+                } else {
+                    start = i;
+                    while (i < n && value.charAt(i) != ',') {
+                        i++;
+                    }
+                    arg = value.substring(start, i).trim();
+                }
+            }
+            i++; // 跳过逗号
+
+            if (!name.isEmpty()) {
+                // 重复的指令以第一次出现为准
+                directives.putIfAbsent(name, arg);
+            }
+        }
+        return new CacheControl(directives);
+    }
+
+    public boolean has(String directive) {
+        return directives.containsKey(directive);
+    }
+
+    /**
+     * 读取以秒为单位的指令值
+     * @return 秒数；指令不存在或值非法时返回 -1
+     */
+    public long getSeconds(String directive) {
+        String value = directives.get(directive);
+        if (value == null || value.isEmpty()) {
+            return -1;
+        }
+        try {
+            long seconds = Long.parseLong(value);
+            return seconds < 0 ? -1 : seconds;
+        } catch (NumberFormatException e) {
+            // 超出范围的值按无限大处理
+            return value.chars().allMatch(Character::isDigit) ? Long.MAX_VALUE / 1000 : -1;
+        }
+    }
+
+    public long getMaxAge() {
+        return getSeconds("max-age");
+    }
+
+    public long getSMaxAge() {
+        return getSeconds("s-maxage");
+    }
+
+    public boolean isNoCache() {
+        return has("no-cache");
+    }
+
+    public boolean isNoStore() {
+        return has("no-store");
+    }
+
+    public boolean isMustRevalidate() {
+        return has("must-revalidate");
+    }
+
+    public boolean isPrivate() {
+        return has("private");
+    }
+
+    public boolean isPublic() {
+        return has("public");
+    }
+
+    @Override
+    public String toString() {
+        return directives.toString();
+    }
+}
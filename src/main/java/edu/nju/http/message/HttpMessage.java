@@ -101,7 +101,11 @@ public abstract class HttpMessage {
         this.body = body;
         if(body == null)
             return;
-        setHeader(Header.Content_Length, String.valueOf(body.length));
+        // 头部可能是只读的共享副本（如缓存的响应），长度相同时不再写入
+        String length = String.valueOf(body.length);
+        if (!length.equals(headers.get(Header.Content_Length))) {
+            setHeader(Header.Content_Length, length);
+        }
     }
 
     public void setBody(byte[] body, String type) {
@@ -9,11 +9,14 @@ import java.util.HashMap;
 import java.util.Map;
 
 import edu.nju.http.message.constant.*;
+import edu.nju.http.utils.Timeline;
 
 @Getter @Setter
 public class HttpRequest extends HttpMessage {
     private String method;
     private String uri;
+    private String remoteAddress; // 服务端收到请求时记录的客户端地址
+    private Timeline timeline; // 服务端处理请求的各阶段时间，未记录时为 null
 
     /**
      * 构造默认 HTTP 请求
@@ -64,6 +67,8 @@ public class HttpRequest extends HttpMessage {
         super(request);
         this.method = request.method;
         this.uri = request.uri;
+        this.remoteAddress = request.remoteAddress;
+        this.timeline = request.timeline;
     }
 
     public String getStartLine() {
@@ -72,6 +77,9 @@ public class HttpRequest extends HttpMessage {
 
     public void setStartLine(String startLine) {
         String[] parts = startLine.split(" ");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Invalid request line: " + startLine);
+        }
         method = parts[0];
         uri = parts[1];
         version = parts[2];
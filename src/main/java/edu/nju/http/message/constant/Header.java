@@ -9,13 +9,19 @@ public class Header {
     public static final String Date = "Date";
     public static final String Server = "Server";
     public static final String User_Agent = "User-Agent";
+    public static final String Referer = "Referer";
     public static final String If_Modified_Since = "If-Modified-Since";
     public static final String If_None_Match = "If-None-Match";
     public static final String Last_Modified = "Last-Modified";
     public static final String ETag = "ETag";
     public static final String Cache_Control = "Cache-Control";
+    public static final String Expires = "Expires";
+    public static final String Age = "Age";
     public static final String Set_Cookie = "Set-Cookie";
     public static final String Cookie = "Cookie";
     public static final String Transfer_Encoding = "Transfer-Encoding";
+    public static final String Accept_Encoding = "Accept-Encoding";
+    public static final String Content_Encoding = "Content-Encoding";
+    public static final String Retry_After = "Retry-After";
 
 }
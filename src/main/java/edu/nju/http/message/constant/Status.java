@@ -18,7 +18,9 @@ public class Status {
     public static int NOT_FOUND = 404;
     public static int METHOD_NOT_ALLOWED = 405;
     public static int CONFLICT = 409;
+    public static int TOO_MANY_REQUESTS = 429;
     public static int INTERNAL_SERVER_ERROR = 500;
+    public static int SERVICE_UNAVAILABLE = 503;
 
     private static final Map<Integer, String> STATUS_PHRASES = new HashMap<>();
     private static final Map<Integer, Path> DEFAULT_ERROR_PAGES = new HashMap<>();
@@ -34,7 +36,9 @@ public class Status {
         STATUS_PHRASES.put(Status.NOT_FOUND, "Not Found");
         STATUS_PHRASES.put(Status.METHOD_NOT_ALLOWED, "Method Not Allowed");
         STATUS_PHRASES.put(Status.CONFLICT, "Conflict");
+        STATUS_PHRASES.put(Status.TOO_MANY_REQUESTS, "Too Many Requests");
         STATUS_PHRASES.put(Status.INTERNAL_SERVER_ERROR, "Internal Server Error");
+        STATUS_PHRASES.put(Status.SERVICE_UNAVAILABLE, "Service Unavailable");
 
         DEFAULT_ERROR_PAGES.put(Status.BAD_REQUEST, Paths.get(Config.STATIC_RESOURCE_DIR, "400.html"));
         DEFAULT_ERROR_PAGES.put(Status.UNAUTHORIZED, Paths.get(Config.STATIC_RESOURCE_DIR, "401.html"));
@@ -42,7 +46,9 @@ public class Status {
         DEFAULT_ERROR_PAGES.put(Status.NOT_FOUND, Paths.get(Config.STATIC_RESOURCE_DIR, "404.html"));
         DEFAULT_ERROR_PAGES.put(Status.METHOD_NOT_ALLOWED, Paths.get(Config.STATIC_RESOURCE_DIR, "405.html"));
         DEFAULT_ERROR_PAGES.put(Status.CONFLICT, Paths.get(Config.STATIC_RESOURCE_DIR, "409.html"));
+        DEFAULT_ERROR_PAGES.put(Status.TOO_MANY_REQUESTS, Paths.get(Config.STATIC_RESOURCE_DIR, "429.html"));
         DEFAULT_ERROR_PAGES.put(Status.INTERNAL_SERVER_ERROR, Paths.get(Config.STATIC_RESOURCE_DIR, "500.html"));
+        DEFAULT_ERROR_PAGES.put(Status.SERVICE_UNAVAILABLE, Paths.get(Config.STATIC_RESOURCE_DIR, "503.html"));
 
     }
 
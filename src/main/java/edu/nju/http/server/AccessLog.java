@@ -0,0 +1,168 @@
+package edu.nju.http.server;
+
+import edu.nju.http.message.HttpRequest;
+import edu.nju.http.message.HttpResponse;
+import edu.nju.http.message.constant.Header;
+import edu.nju.http.utils.AsyncLogWriter;
+import edu.nju.http.utils.Log;
+import edu.nju.http.utils.Searcher;
+import edu.nju.http.utils.Timeline;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * AccessLog - 访问日志
+ * <p>
+ * 每个响应写回后记录一条：客户端地址、请求行、状态码、写出字节数、耗时（从读到完整请求到写完响应，微秒）与该连接上的请求序号。
+ * 写回路径上只把这些字段填入预分配的记录对象，格式化与写文件由后台线程按刷新间隔批量完成。
+ * 支持两种格式：combined（Apache combined 格式，末尾追加耗时与请求序号）与 json（每行一个 JSON 对象）。
+ */
+final class AccessLog extends AsyncLogWriter<AccessLog.Entry> {
+    static final AccessLog INSTANCE = Config.ACCESS_LOG ? open() : null;
+
+    private static final DateTimeFormatter COMBINED_TIME =
+            DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH).withZone(ZoneId.systemDefault());
+
+    private final boolean json;
+    // 同一秒内的记录共用格式化好的时间
+    private long cachedSecond = -1;
+    private String cachedTime;
+
+    private AccessLog(boolean json) throws IOException {
+        super(Paths.get(Searcher.BASE_DIR, Config.LOG_DIR), "access", Config.ACCESS_LOG_MAX_FILE_SIZE,
+                Config.ACCESS_LOG_ROLL_INTERVAL * 1000L, Config.LOG_MAX_FILES, Config.ACCESS_LOG_BUFFER_SIZE,
+                Config.ACCESS_LOG_FLUSH_INTERVAL, Entry::new);
+        this.json = json;
+    }
+
+    private static AccessLog open() {
+        try {
+            AccessLog log = new AccessLog("json".equalsIgnoreCase(Config.ACCESS_LOG_FORMAT));
+            Runtime.getRuntime().addShutdownHook(new Thread(log::close, "access-log-shutdown"));
+            return log;
+        } catch (IOException e) {
+            Log.error("Server", "Failed to open access log, access logging disabled", e);
+            return null;
+        }
+    }
+
+    /**
+     * 记录一次响应
+     * @param bytes 写出的字节数（含状态行与头部）
+     */
+    void log(ConnectionContext context, HttpResponse response, long bytes) {
+        HttpRequest request = context.getRequest();
+        if (request == null) {
+            return;
+        }
+        long position = claim();
+        if (position < 0) {
+            return;
+        }
+        Entry entry = get(position);
+        entry.time = System.currentTimeMillis();
+        entry.micros = context.getTimeline().between(Timeline.Phase.READ, Timeline.Phase.LAST_BYTE) / 1000;
+        entry.remote = request.getRemoteAddress();
+        entry.method = request.getMethod();
+        entry.target = request.getUri();
+        entry.version = request.getVersion();
+        entry.referer = request.getHeaderVal(Header.Referer);
+        entry.userAgent = request.getHeaderVal(Header.User_Agent);
+        entry.status = response.getStatusCode();
+        entry.bytes = bytes;
+        entry.requests = context.getRequests();
+        publish(position);
+    }
+
+    @Override
+    protected void format(Entry entry, StringBuilder out) {
+        if (json) {
+            out.append("{\"time\":\"").append(Instant.ofEpochMilli(entry.time)).append('"')
+                    .append(",\"remote\":").append(quote(entry.remote))
+                    .append(",\"method\":").append(quote(entry.method))
+                    .append(",\"target\":").append(quote(entry.target))
+                    .append(",\"version\":").append(quote(entry.version))
+                    .append(",\"status\":").append(entry.status)
+                    .append(",\"bytes\":").append(entry.bytes)
+                    .append(",\"duration_us\":").append(entry.micros)
+                    .append(",\"requests\":").append(entry.requests)
+                    .append(",\"referer\":").append(quote(entry.referer))
+                    .append(",\"user_agent\":").append(quote(entry.userAgent))
+                    .append("}\n");
+            return;
+        }
+        long second = entry.time / 1000;
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedTime = COMBINED_TIME.format(Instant.ofEpochSecond(second));
+        }
+        out.append(entry.remote == null ? "-" : entry.remote).append(" - - [").append(cachedTime).append("] \"");
+        escape(out, entry.method);
+        out.append(' ');
+        escape(out, entry.target);
+        out.append(' ');
+        escape(out, entry.version);
+        out.append("\" ").append(entry.status).append(' ').append(entry.bytes).append(" \"");
+        escape(out, entry.referer);
+        out.append("\" \"");
+        escape(out, entry.userAgent);
+        out.append("\" ").append(entry.micros).append(' ').append(entry.requests).append('\n');
+    }
+
+    private static String quote(String value) {
+        return value == null ? "null" : JSONObject.quote(value);
+    }
+
+    /**
+     * 写入 combined 格式引号内的字段，转义引号、反斜杠与控制字符
+     */
+    private static void escape(StringBuilder out, String value) {
+        if (value == null) {
+            out.append('-');
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20 || c == 0x7f) {
+                out.append(String.format("\\x%02x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+    @Override
+    protected void clear(Entry entry) {
+        entry.remote = null;
+        entry.method = null;
+        entry.target = null;
+        entry.version = null;
+        entry.referer = null;
+        entry.userAgent = null;
+    }
+
+    /**
+     * 缓冲区中的一条访问记录，循环使用
+     */
+    static final class Entry {
+        long time;
+        long micros;
+        String remote;
+        String method;
+        String target;
+        String version;
+        String referer;
+        String userAgent;
+        int status;
+        long bytes;
+        int requests;
+    }
+}
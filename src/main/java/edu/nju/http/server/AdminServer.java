@@ -0,0 +1,141 @@
+package edu.nju.http.server;
+
+import edu.nju.http.message.HttpRequest;
+import edu.nju.http.message.HttpResponse;
+import edu.nju.http.message.constant.Header;
+import edu.nju.http.message.constant.Method;
+import edu.nju.http.message.constant.Status;
+import edu.nju.http.message.constant.Version;
+import edu.nju.http.utils.Log;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * AdminServer - 管理端点
+ * <p>
+ * 在单独的端口上以 JSON 返回服务器的运行状态：连接数与空闲长连接数、线程池队列深度、会话数等，用于诊断服务器是否饱和。
+ * 使用独立的线程与阻塞 IO，不经过事件循环与线程池，服务器饱和时仍能响应。
+ * 所有数值都直接读取计数器，不遍历连接或会话，频繁查询也不影响服务器。
+ */
+final class AdminServer {
+    private static final int READ_TIMEOUT = 5000;
+
+    private final HttpServer server;
+    private final String host;
+    private final int port;
+    private final long started = System.currentTimeMillis();
+
+    AdminServer(HttpServer server, String host, int port) {
+        this.server = server;
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * 在后台线程中开始监听
+     */
+    void start() {
+        Thread thread = new Thread(this::run, "admin-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        try (ServerSocket socket = new ServerSocket()) {
+            socket.bind(new InetSocketAddress(host, port));
+            Log.info("Admin", "Admin endpoint started on {}:{}", host, port);
+            while (true) {
+                try (Socket client = socket.accept()) {
+                    client.setSoTimeout(READ_TIMEOUT);
+                    serve(client);
+                } catch (IOException | IllegalArgumentException e) {
+                    Log.warn("Admin", "Failed to serve admin request: {}", e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            Log.error("Admin", "Failed to start admin endpoint on " + host + ":" + port, e);
+        }
+    }
+
+    /**
+     * 读取一个请求并写回响应，之后关闭连接
+     */
+    private void serve(Socket client) throws IOException {
+        HttpRequest request = readRequest(client);
+        if (request == null) {
+            return;
+        }
+        HttpResponse response;
+        if (!Method.GET.equals(request.getMethod())) {
+            response = ResponseBuilder.createErrorResponse(Version.HTTP_1_1, Status.METHOD_NOT_ALLOWED);
+        } else if ("/".equals(request.getTarget()) || "/status".equals(request.getTarget())) {
+            response = ResponseBuilder.createJsonResponse(Version.HTTP_1_1, status().toString(2));
+        } else {
+            response = ResponseBuilder.createErrorResponse(Version.HTTP_1_1, Status.NOT_FOUND);
+        }
+        response.setHeader(Header.Connection, "close");
+        client.getOutputStream().write(response.toBytes());
+    }
+
+    /**
+     * @return 请求，客户端在发送完整请求前关闭连接时返回 null
+     */
+    private static HttpRequest readRequest(Socket client) throws IOException {
+        ConnectionContext context = new ConnectionContext(client.getRemoteSocketAddress());
+        InputStream in = client.getInputStream();
+        byte[] buffer = new byte[1024];
+        HttpRequest request = null;
+        int n;
+        while (request == null && (n = in.read(buffer)) != -1) {
+            context.append(ByteBuffer.wrap(buffer, 0, n));
+            request = context.nextRequest();
+        }
+        return request;
+    }
+
+    /**
+     * 当前运行状态
+     */
+    JSONObject status() {
+        int connections = server.getConnections();
+        int active = server.getActiveConnections();
+        // 只有一个事件循环，按数组返回便于以后扩展为多个 Selector
+        JSONArray selectors = new JSONArray().put(new JSONObject()
+                .put("id", 0)
+                .put("connections", connections)
+                .put("active", active)
+                .put("idle", Math.max(0, connections - active)));
+
+        SessionStore sessions = UserSystem.getInstance().getSessions();
+        return new JSONObject()
+                .put("uptime", (System.currentTimeMillis() - started) / 1000)
+                .put("selectors", selectors)
+                .put("worker_pool", pool(server.getThreadPool()))
+                .put("auth_pool", pool(UserSystem.getInstance().getAuthExecutor()))
+                .put("sessions", new JSONObject()
+                        .put("count", sessions.size())
+                        .put("expired", sessions.getExpiredCount())
+                        .put("evicted", sessions.getEvictedCount()))
+                .put("log_dropped", Log.getDropped());
+    }
+
+    private static Object pool(ThreadPoolExecutor pool) {
+        if (pool == null) {
+            return JSONObject.NULL;
+        }
+        return new JSONObject()
+                .put("threads", pool.getPoolSize())
+                .put("max_threads", pool.getMaximumPoolSize())
+                .put("active", pool.getActiveCount())
+                .put("queued", pool.getQueue().size())
+                .put("remaining_capacity", pool.getQueue().remainingCapacity());
+    }
+}
@@ -35,6 +35,22 @@ public class Config {
 
     // ================== 会话配置 ==================
     public static final int SESSION_EXPIRY_TIME;
+    public static final int SESSION_MAX_COUNT;
+    public static final boolean SESSION_SLIDING;
+    public static final boolean TOKEN_SESSION;
+    public static final String SESSION_SECRET;
+
+    // ================== 认证配置 ==================
+    public static final int PBKDF2_ITERATIONS;
+    public static final int AUTH_THREADS;
+    public static final int AUTH_QUEUE_SIZE;
+
+    // ================== 限流配置 ==================
+    public static final double RATE_LIMIT; // <= 0 不启用；默认关闭，避免限制压测与同一 NAT 后的客户端
+    public static final int RATE_LIMIT_BURST;
+    public static final double AUTH_RATE_LIMIT;
+    public static final int AUTH_RATE_LIMIT_BURST;
+    public static final int RATE_LIMIT_MAX_CLIENTS;
 
     // ================== 缓存配置 ==================
     public static final boolean ENABLE_CACHE;
@@ -54,6 +70,11 @@ public class Config {
     // ================== 数据存储路径 ==================
     public static final String DATA_DIR;
 
+    // ================== 持久化配置 ==================
+    public static final boolean ENABLE_PERSISTENCE;
+    public static final int SNAPSHOT_THRESHOLD;
+    public static final int SNAPSHOT_INTERVAL;
+
     // ================== 重定向规则 ==================
     public static class RedirectRule {
         public final String target;
@@ -67,9 +88,29 @@ public class Config {
 
     public static final Map<String, RedirectRule> REDIRECT_RULES = new HashMap<>();
 
+    // ================== 指标 ==================
+    public static final String METRICS_PATH; // 为空时不提供指标端点
+    public static final int SLOW_REQUEST_THRESHOLD; // 毫秒，超过时记录请求各阶段耗时，<= 0 不记录
+
+    // ================== 管理端点 ==================
+    public static final String ADMIN_HOST; // 默认只监听本机
+    public static final int ADMIN_PORT; // <= 0 不启用
+
     // ================== 日志设置 ==================
     public static final String LOG_DIR;
     public static final int LOG_LEVEL; // 0: none, 1: info, 2: debug
+    public static final boolean LOG_TO_FILE; // 异步写入 LOG_DIR 下的滚动文件，否则同步输出到控制台
+    public static final long LOG_MAX_FILE_SIZE;
+    public static final int LOG_MAX_FILES;
+    public static final int LOG_BUFFER_SIZE;
+
+    // ================== 访问日志 ==================
+    public static final boolean ACCESS_LOG;
+    public static final String ACCESS_LOG_FORMAT; // combined 或 json
+    public static final long ACCESS_LOG_MAX_FILE_SIZE;
+    public static final int ACCESS_LOG_ROLL_INTERVAL; // 秒，0 表示不按时间滚动
+    public static final int ACCESS_LOG_FLUSH_INTERVAL; // 毫秒
+    public static final int ACCESS_LOG_BUFFER_SIZE;
 
     static {
         JSONObject configJson = null;
@@ -111,6 +152,21 @@ public class Config {
         BUFFER_SIZE = serverConfig.optInt("buffer_size", 2048);
 
         SESSION_EXPIRY_TIME = serverConfig.optInt("session_expiry_time", 3600);
+        SESSION_MAX_COUNT = serverConfig.optInt("session_max_count", 100000);
+        SESSION_SLIDING = serverConfig.optBoolean("session_sliding", true);
+        TOKEN_SESSION = "token".equalsIgnoreCase(serverConfig.optString("session_mode", "server"));
+        SESSION_SECRET = serverConfig.optString("session_secret", "");
+
+        PBKDF2_ITERATIONS = serverConfig.optInt("pbkdf2_iterations", 100000);
+        int authThreads = serverConfig.optInt("auth_threads", 2);
+        AUTH_THREADS = Math.max(1, Math.min(authThreads, cores));
+        AUTH_QUEUE_SIZE = Math.max(1, serverConfig.optInt("auth_queue_size", 64));
+
+        RATE_LIMIT = serverConfig.optDouble("rate_limit", 0);
+        RATE_LIMIT_BURST = serverConfig.optInt("rate_limit_burst", 400);
+        AUTH_RATE_LIMIT = serverConfig.optDouble("auth_rate_limit", 5);
+        AUTH_RATE_LIMIT_BURST = serverConfig.optInt("auth_rate_limit_burst", 10);
+        RATE_LIMIT_MAX_CLIENTS = serverConfig.optInt("rate_limit_max_clients", 10000);
 
         ENABLE_CACHE = serverConfig.optBoolean("enable_cache", false);
         CACHE_CONTROL = serverConfig.optString("cache_control", "public,max-age=3600");
@@ -121,8 +177,25 @@ public class Config {
         STATIC_RESOURCE_DIR = serverConfig.optString("static_resource_dir", "static");
         USER_DIR = serverConfig.optString("user_path", "user");
         DATA_DIR = serverConfig.optString("data_dir", "data");
+        ENABLE_PERSISTENCE = serverConfig.optBoolean("enable_persistence", true);
+        SNAPSHOT_THRESHOLD = serverConfig.optInt("snapshot_threshold", 10000);
+        SNAPSHOT_INTERVAL = serverConfig.optInt("snapshot_interval", 300);
+        METRICS_PATH = serverConfig.optString("metrics_path", "/metrics");
+        SLOW_REQUEST_THRESHOLD = serverConfig.optInt("slow_request_threshold", 1000);
+        ADMIN_HOST = serverConfig.optString("admin_host", "127.0.0.1");
+        ADMIN_PORT = serverConfig.optInt("admin_port", 0);
         LOG_DIR = DATA_DIR + "/log";
         LOG_LEVEL = serverConfig.optInt("log_level", 1);
+        LOG_TO_FILE = serverConfig.optBoolean("log_to_file", true);
+        LOG_MAX_FILE_SIZE = serverConfig.optLong("log_max_file_size", 10L * 1024 * 1024);
+        LOG_MAX_FILES = serverConfig.optInt("log_max_files", 5);
+        LOG_BUFFER_SIZE = serverConfig.optInt("log_buffer_size", 8192);
+        ACCESS_LOG = serverConfig.optBoolean("access_log", true);
+        ACCESS_LOG_FORMAT = serverConfig.optString("access_log_format", "combined");
+        ACCESS_LOG_MAX_FILE_SIZE = serverConfig.optLong("access_log_max_file_size", 50L * 1024 * 1024);
+        ACCESS_LOG_ROLL_INTERVAL = serverConfig.optInt("access_log_roll_interval", 86400);
+        ACCESS_LOG_FLUSH_INTERVAL = serverConfig.optInt("access_log_flush_interval", 1000);
+        ACCESS_LOG_BUFFER_SIZE = serverConfig.optInt("access_log_buffer_size", 16384);
 
         JSONArray redirects = serverConfig.optJSONArray("redirects");
         if (redirects != null) {
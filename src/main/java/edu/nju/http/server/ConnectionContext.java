@@ -0,0 +1,180 @@
+package edu.nju.http.server;
+
+import edu.nju.http.message.HttpRequest;
+import edu.nju.http.message.HttpResponse;
+import edu.nju.http.utils.Timeline;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * ConnectionContext - 单个客户端连接的状态
+ * <p>
+ * 缓存已读取但尚未处理的字节，按请求头与 Content-Length 切分出完整的请求：
+ * 一次读取中只有半个请求时等待后续数据，客户端以管线化方式连续发送的多个请求按顺序逐个处理。
+ */
+public class ConnectionContext {
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+
+    private byte[] buffer = new byte[1024];
+    private int length;
+    private int scanned; // 已确认不含请求头结束标记的前缀长度
+    private int headerEnd = -1;
+    private int messageLength = -1;
+
+    // 等待写回的响应
+    private volatile HttpResponse response;
+
+    // 正在处理的请求及其各阶段时间，写回响应时记录访问日志；同一连接上的请求依次处理，时间线循环使用
+    private HttpRequest request;
+    private final Timeline timeline = new Timeline();
+    private int requests; // 该连接上已处理的请求数
+    private boolean active; // 正在处理请求，尚未写完响应
+
+    private final SocketAddress remote;
+    private final long opened = System.nanoTime();
+
+    public ConnectionContext(SocketAddress remote) {
+        this.remote = remote;
+    }
+
+    /**
+     * 追加读取到的数据
+     */
+    public void append(ByteBuffer data) {
+        int n = data.remaining();
+        if (length + n > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + n));
+        }
+        data.get(buffer, length, n);
+        length += n;
+    }
+
+    /**
+     * 切分出下一个完整的请求
+     * @return 请求，数据还不完整时返回 null
+     * @throws IOException 请求头过大或 Content-Length 非法
+     */
+    public HttpRequest nextRequest() throws IOException {
+        if (messageLength < 0 && !parseHeader()) {
+            return null;
+        }
+        if (length < messageLength) {
+            return null;
+        }
+
+        byte[] message = Arrays.copyOf(buffer, messageLength);
+        System.arraycopy(buffer, messageLength, buffer, 0, length - messageLength);
+        length -= messageLength;
+        scanned = 0;
+        headerEnd = -1;
+        messageLength = -1;
+        return new HttpRequest(message);
+    }
+
+    /**
+     * 是否还有已读取但尚未处理的数据
+     */
+    public boolean hasBuffered() {
+        return length > 0;
+    }
+
+    /**
+     * 开始处理一个请求
+     * @param readAt 读到完整请求的时间（System.nanoTime()）
+     */
+    public void begin(HttpRequest request, long readAt) {
+        this.request = request;
+        this.requests++;
+        this.active = true;
+        timeline.reset();
+        timeline.mark(Timeline.Phase.READ, readAt);
+        timeline.mark(Timeline.Phase.PARSED);
+        request.setTimeline(timeline);
+    }
+
+    /**
+     * 响应写完，连接回到空闲状态
+     */
+    public void end() {
+        active = false;
+    }
+
+    /**
+     * 是否有请求正在处理；否则连接空闲，等待下一个请求
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    public SocketAddress getRemote() {
+        return remote;
+    }
+
+    /**
+     * 连接建立的时间（System.nanoTime()）
+     */
+    public long getOpened() {
+        return opened;
+    }
+
+    public HttpRequest getRequest() {
+        return request;
+    }
+
+    public Timeline getTimeline() {
+        return timeline;
+    }
+
+    /**
+     * 该连接上已处理的请求数，包括当前请求；大于 1 表示长连接被复用
+     */
+    public int getRequests() {
+        return requests;
+    }
+
+    public HttpResponse getResponse() {
+        return response;
+    }
+
+    public void setResponse(HttpResponse response) {
+        this.response = response;
+    }
+
+    private boolean parseHeader() throws IOException {
+        for (int i = Math.max(0, scanned - 3); i + 3 < length; i++) {
+            if (buffer[i] == '\r' && buffer[i + 1] == '\n' && buffer[i + 2] == '\r' && buffer[i + 3] == '\n') {
+                headerEnd = i;
+                break;
+            }
+        }
+        if (headerEnd < 0) {
+            scanned = length;
+            if (length > MAX_HEADER_SIZE) {
+                throw new IOException("Request header too large");
+            }
+            return false;
+        }
+
+        long contentLength = 0;
+        String header = new String(buffer, 0, headerEnd, StandardCharsets.ISO_8859_1);
+        for (String line : header.split("\r\n")) {
+            int colon = line.indexOf(':');
+            if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Content-Length")) {
+                try {
+                    contentLength = Long.parseLong(line.substring(colon + 1).trim());
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid Content-Length: " + line);
+                }
+            }
+        }
+        if (contentLength < 0 || contentLength > Integer.MAX_VALUE - headerEnd - 4) {
+            throw new IOException("Invalid Content-Length: " + contentLength);
+        }
+        messageLength = headerEnd + 4 + (int) contentLength;
+        return true;
+    }
+}
@@ -0,0 +1,307 @@
+package edu.nju.http.server;
+
+import edu.nju.http.utils.Log;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * DataStore - 追加写日志 + 快照的持久化存储
+ * <p>
+ * 每条变更以一行 JSON 追加到预写日志 wal.log，由后台线程批量写入并统一 fsync（组提交），
+ * 同一批内的所有调用者共享一次 fsync。日志记录数超过阈值或距上次快照超过一定时间时，
+ * 将当前状态写成压缩快照 snapshot.json 并截断日志。启动时先重放快照再重放日志。
+ */
+public class DataStore {
+    private static final String WAL_FILE = "wal.log";
+    private static final String SNAPSHOT_FILE = "snapshot.json";
+    private static final int MAX_BATCH = 1024;
+    // 停止写线程的标记记录；不能中断写线程，FileChannel 在中断时会关闭，未写完的记录随之丢失
+    private static final Pending STOP = new Pending(new byte[0], null);
+
+    private final Path dir;
+    private final int snapshotThreshold;
+    private final long snapshotIntervalMillis;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private FileChannel wal;
+    private Consumer<Consumer<JSONObject>> snapshotSource;
+    // running 的检查与入队在同一把锁下进行，close() 放入 STOP 之后不会再有记录入队
+    private final Object lock = new Object();
+    private volatile boolean running = true;
+
+    private int walRecords;
+    private int replayed;
+    private long lastSnapshot;
+
+    /**
+     * @param dir                    存储目录
+     * @param snapshotThreshold      触发快照的日志记录数
+     * @param snapshotIntervalMillis 触发快照的最长间隔（毫秒）
+     */
+    public DataStore(Path dir, int snapshotThreshold, long snapshotIntervalMillis) {
+        this.dir = dir;
+        this.snapshotThreshold = snapshotThreshold;
+        this.snapshotIntervalMillis = snapshotIntervalMillis;
+        this.writer = new Thread(this::writeLoop, "data-store-writer");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * 从快照与日志恢复状态，并截掉日志末尾写了一半的记录
+     * @param apply 逐条应用记录
+     */
+    public void recover(Consumer<JSONObject> apply) throws IOException {
+        Files.createDirectories(dir);
+
+        Path snapshot = dir.resolve(SNAPSHOT_FILE);
+        int snapshotRecords = 0;
+        if (Files.exists(snapshot)) {
+            replay(Files.readAllBytes(snapshot), apply);
+            snapshotRecords = replayed;
+        }
+
+        Path walPath = dir.resolve(WAL_FILE);
+        byte[] walData = Files.exists(walPath) ? Files.readAllBytes(walPath) : new byte[0];
+        int end = replay(walData, apply);
+        walRecords = replayed;
+
+        wal = FileChannel.open(walPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (end < walData.length) {
+            Log.warn("DataStore", "Truncating torn tail of " + WAL_FILE + " at offset " + end);
+            wal.truncate(end);
+            wal.force(false);
+        }
+        wal.position(end);
+
+        Log.info("DataStore", "Recovered " + snapshotRecords + " snapshot records and " + walRecords + " log records from " + dir);
+    }
+
+    /**
+     * 启动后台写线程
+     * @param snapshotSource 快照时输出当前全部状态
+     */
+    public void start(Consumer<Consumer<JSONObject>> snapshotSource) {
+        this.snapshotSource = snapshotSource;
+        this.lastSnapshot = System.currentTimeMillis();
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "data-store-shutdown"));
+    }
+
+    /**
+     * 追加一条记录
+     * @return 记录落盘后完成的 Future
+     */
+    public CompletableFuture<Void> append(JSONObject record) {
+        return append(record, null);
+    }
+
+    /**
+     * 追加一条记录
+     * @param onCommit 落盘后、Future 完成前在写线程中执行，早于之后的任何快照；可为 null
+     * @return 记录落盘后完成的 Future
+     */
+    public CompletableFuture<Void> append(JSONObject record, Runnable onCommit) {
+        Pending pending = new Pending((record.toString() + "\n").getBytes(StandardCharsets.UTF_8), onCommit);
+        synchronized (lock) {
+            if (running) {
+                queue.add(pending);
+                return pending.done;
+            }
+        }
+        pending.done.completeExceptionally(new IOException("Data store is closed"));
+        return pending.done;
+    }
+
+    /**
+     * 停止写线程，写完队列中剩余的记录
+     */
+    public void close() {
+        synchronized (lock) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            queue.add(STOP);
+        }
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 写线程未启动或已退出时，队列中剩下的记录不会再写入
+        if (!writer.isAlive()) {
+            List<Pending> left = new ArrayList<>();
+            queue.drainTo(left);
+            for (Pending pending : left) {
+                pending.done.completeExceptionally(new IOException("Data store is closed"));
+            }
+        }
+    }
+
+    // ================== 内部实现 ==================
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = running ? queue.poll(1, TimeUnit.SECONDS) : queue.poll();
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                    batch.remove(STOP);
+                    if (!batch.isEmpty()) {
+                        commit(batch);
+                    }
+                    batch.clear();
+                }
+                if (walRecords >= snapshotThreshold
+                        || (walRecords > 0 && System.currentTimeMillis() - lastSnapshot >= snapshotIntervalMillis)) {
+                    compact();
+                }
+            } catch (InterruptedException e) {
+                // 不响应中断，由 close() 放入的 STOP 结束循环
+            }
+        }
+        try {
+            wal.close();
+        } catch (IOException e) {
+            Log.error("DataStore", "Failed to close " + WAL_FILE, e);
+        }
+    }
+
+    /**
+     * 组提交：整批写入后统一 fsync 一次
+     */
+    private void commit(List<Pending> batch) {
+        try {
+            for (Pending pending : batch) {
+                ByteBuffer buffer = ByteBuffer.wrap(pending.line);
+                while (buffer.hasRemaining()) {
+                    wal.write(buffer);
+                }
+            }
+            wal.force(false);
+            walRecords += batch.size();
+            for (Pending pending : batch) {
+                if (pending.onCommit != null) {
+                    try {
+                        pending.onCommit.run();
+                    } catch (RuntimeException e) {
+                        Log.error("DataStore", "Commit callback failed", e);
+                    }
+                }
+                pending.done.complete(null);
+            }
+            Log.debug("DataStore", "Committed " + batch.size() + " records");
+        } catch (IOException e) {
+            Log.error("DataStore", "Failed to write " + WAL_FILE, e);
+            for (Pending pending : batch) {
+                pending.done.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * 写出快照并截断日志；快照先写临时文件再原子替换，中途崩溃时旧快照与日志仍然完整
+     */
+    private void compact() {
+        Path tmp = dir.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream stream = new BufferedOutputStream(Channels.newOutputStream(out), 64 * 1024);
+            int[] count = {0};
+            snapshotSource.accept(record -> {
+                try {
+                    stream.write((record.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                count[0]++;
+            });
+            stream.flush();
+            out.force(true);
+            Files.move(tmp, dir.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            wal.truncate(0);
+            wal.position(0);
+            wal.force(true);
+            Log.info("DataStore", "Snapshot written with " + count[0] + " records, compacted " + walRecords + " log records");
+            walRecords = 0;
+        } catch (IOException | UncheckedIOException e) {
+            Log.error("DataStore", "Failed to write snapshot", e);
+        }
+        lastSnapshot = System.currentTimeMillis();
+    }
+
+    /**
+     * 逐行重放记录。只有最后一行可能是崩溃时写了一半的记录：没有换行或无法解析时停在它之前，由调用方截断；
+     * 中间无法解析的行跳过并记录日志，不影响之后的记录
+     * @return 最后一条完整记录之后的偏移量
+     */
+    private int replay(byte[] data, Consumer<JSONObject> apply) {
+        int offset = 0;
+        replayed = 0;
+        while (offset < data.length) {
+            int newline = offset;
+            while (newline < data.length && data[newline] != '\n') {
+                newline++;
+            }
+            if (newline == data.length) {
+                break;
+            }
+            String line = new String(data, offset, newline - offset, StandardCharsets.UTF_8);
+            if (!line.isEmpty()) {
+                JSONObject record;
+                try {
+                    record = new JSONObject(line);
+                } catch (JSONException e) {
+                    if (newline + 1 == data.length) {
+                        break;
+                    }
+                    Log.warn("DataStore", "Skipping corrupt record at offset " + offset + ": " + line);
+                    offset = newline + 1;
+                    continue;
+                }
+                try {
+                    apply.accept(record);
+                    replayed++;
+                } catch (RuntimeException e) {
+                    Log.warn("DataStore", "Skipping invalid record: " + line);
+                }
+            }
+            offset = newline + 1;
+        }
+        return offset;
+    }
+
+    private static class Pending {
+        private final byte[] line;
+        private final Runnable onCommit;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Pending(byte[] line, Runnable onCommit) {
+            this.line = line;
+            this.onCommit = onCommit;
+        }
+    }
+}
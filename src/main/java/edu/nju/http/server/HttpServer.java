@@ -2,18 +2,28 @@ package edu.nju.http.server;
 
 import edu.nju.http.message.HttpRequest;
 import edu.nju.http.message.HttpResponse;
+import edu.nju.http.utils.Events;
 import edu.nju.http.utils.Log;
+import edu.nju.http.utils.Searcher;
+import edu.nju.http.utils.Timeline;
 import edu.nju.http.message.constant.Header;
+import edu.nju.http.message.constant.Status;
+import edu.nju.http.message.constant.Version;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.*;
+import java.nio.file.Paths;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * HttpServer
@@ -21,21 +31,40 @@ import java.util.concurrent.Executors;
 public class HttpServer {
     private final String HOST;
     private final int PORT;
-    private final ExecutorService threadPool;
+    private final ThreadPoolExecutor threadPool;
+    private final RateLimiter rateLimiter;
+    private final CountDownLatch started = new CountDownLatch(1);
     private Selector selector;
     private ServerSocketChannel serverChannel;
-    private boolean running = true;
+    private volatile boolean running = true;
+    private volatile Thread loopThread;
+    private volatile int boundPort = -1;
+
+    // 打开的连接数与其中正在处理请求的连接数，只在事件循环线程中修改，供管理端点读取
+    private volatile int connections;
+    private volatile int activeConnections;
 
     public HttpServer() {
         this(Config.HOST, Config.PORT);
     }
 
     public HttpServer(String host, int port) {
-        if(Config.THREAD_POOL) {
-            threadPool = Executors.newFixedThreadPool(Config.MAX_THREADS);
+        this(host, port, Config.THREAD_POOL);
+    }
+
+    /**
+     * @param port       监听端口，0 表示由系统分配空闲端口，启动后通过 getPort() 获取
+     * @param threadPool 是否在线程池中处理请求，否则在事件循环线程中处理
+     */
+    public HttpServer(String host, int port, boolean threadPool) {
+        if(threadPool) {
+            this.threadPool = new ThreadPoolExecutor(Config.MAX_THREADS, Config.MAX_THREADS,
+                    0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
         } else {
-            threadPool = null;
+            this.threadPool = null;
         }
+        rateLimiter = Config.RATE_LIMIT > 0
+                ? new RateLimiter(Config.RATE_LIMIT, Config.RATE_LIMIT_BURST, Config.RATE_LIMIT_MAX_CLIENTS) : null;
         this.HOST = host;
         this.PORT = port;
     }
@@ -52,7 +81,10 @@ public class HttpServer {
             serverChannel.configureBlocking(false);
             serverChannel.register(selector, SelectionKey.OP_ACCEPT);
 
-            Log.info("Server", "Server started on " + HOST + ":" + PORT);
+            loopThread = Thread.currentThread();
+            boundPort = serverChannel.socket().getLocalPort();
+            started.countDown();
+            Log.info("Server", "Server started on " + HOST + ":" + boundPort);
 
             while (running) {
                 selector.select(Config.TIMEOUT);
@@ -74,27 +106,92 @@ public class HttpServer {
                         }
                     } catch (Exception e) {
                         Log.error("Server", "Error handling key: " + key, e);
-                        key.cancel();
+                        if (key.channel() instanceof SocketChannel) {
+                            // 经 closeClient 关闭，连接计数与事件保持一致
+                            closeClient(key, "Connection closed after error");
+                        } else {
+                            key.cancel();
+                        }
                     }
                 }
             }
         } catch (IOException e) {
             Log.error("Server", "Server encountered an error", e);
         } finally {
-            stop();
+            close();
         }
     }
 
     /**
-     * 停止服务器
+     * 等待服务器开始监听
+     * @return 是否已在超时前开始监听
+     */
+    public boolean awaitStarted(long timeout, TimeUnit unit) throws InterruptedException {
+        return started.await(timeout, unit) && boundPort > 0;
+    }
+
+    /**
+     * 实际监听的端口，尚未开始监听时返回 -1
+     */
+    public int getPort() {
+        return boundPort;
+    }
+
+    /**
+     * 打开的客户端连接数
+     */
+    int getConnections() {
+        return connections;
+    }
+
+    /**
+     * 正在处理请求（含等待写回）的连接数；其余连接空闲，等待长连接上的下一个请求
+     */
+    int getActiveConnections() {
+        return activeConnections;
+    }
+
+    /**
+     * 处理请求的线程池，未使用线程池时返回 null
+     */
+    ThreadPoolExecutor getThreadPool() {
+        return threadPool;
+    }
+
+    /**
+     * 停止服务器；在其他线程中调用时唤醒事件循环，由事件循环线程关闭
      */
     public void stop() {
+        running = false;
+        Thread loop = loopThread;
+        if (loop != null && loop != Thread.currentThread() && loop.isAlive() && selector != null) {
+            selector.wakeup();
+            return;
+        }
+        close();
+    }
+
+    /**
+     * 关闭所有连接、Selector 与监听端口
+     */
+    private void close() {
         try {
             running = false;
-            if (selector != null) selector.close();
+            if (selector != null && selector.isOpen()) {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.channel() instanceof SocketChannel && key.channel().isOpen()) {
+                        key.channel().close();
+                        connections--;
+                        ServerMetrics.CONNECTIONS_CLOSED.inc();
+                    }
+                }
+                selector.close();
+            }
             if (serverChannel != null) serverChannel.close();
             if (threadPool != null) threadPool.shutdown();
             Log.info("Server", "Server stopped");
+            // 启动失败时也不让等待者一直阻塞
+            started.countDown();
         } catch (IOException e) {
             Log.error("Server", "Error stopping server", e);
         }
@@ -108,8 +205,14 @@ public class HttpServer {
             ServerSocketChannel server = (ServerSocketChannel) key.channel();
             SocketChannel client = server.accept();
             client.configureBlocking(false);
-            client.register(selector, SelectionKey.OP_READ);
-            Log.info("Server", "Accepted connection from " + client.getRemoteAddress());
+            SocketAddress remote = client.getRemoteAddress();
+            client.register(selector, SelectionKey.OP_READ, new ConnectionContext(remote));
+            connections++;
+            ServerMetrics.CONNECTIONS_ACCEPTED.inc();
+            Log.info("Server", "Accepted connection from {}", remote);
+            if (Events.ENABLED) {
+                Events.SINK.connectionAccepted(String.valueOf(remote));
+            }
         } catch (IOException e) {
             Log.error("Server", "Failed to accept connection", e);
         }
@@ -120,43 +223,92 @@ public class HttpServer {
      */
     private void read(SelectionKey key) {
         SocketChannel client = (SocketChannel) key.channel();
+        ConnectionContext context = (ConnectionContext) key.attachment();
         ByteBuffer buffer = ByteBuffer.allocate(Config.BUFFER_SIZE);
-        ByteArrayOutputStream requestData = new ByteArrayOutputStream();
 
         try {
             int bytesRead;
             while ((bytesRead = client.read(buffer)) > 0) {
+                ServerMetrics.BYTES_READ.add(bytesRead);
                 buffer.flip();
-                byte[] data = new byte[buffer.remaining()];
-                buffer.get(data);
-                requestData.write(data);
+                context.append(buffer);
                 buffer.clear();
             }
 
             if (bytesRead == -1) {
-                client.close();
-                Log.info("Server", "Connection closed by client");
+                closeClient(key, "Connection closed by client");
                 return;
             }
 
-            HttpRequest request = new HttpRequest(requestData.toByteArray());
-
-            Log.debug("Server", "Request received: \n" + request);
-
-            if(threadPool != null) {
-                threadPool.execute(() -> processRequest(key, request));
-            } else {
-                processRequest(key, request);
-            }
+            dispatch(key, context);
         } catch (IOException e) {
             Log.error("Server", "Error reading request", e);
-            try {
-                client.close();
-                Log.info("Server", "Connection closed by server");
-            } catch (IOException ex) {
-                Log.error("Server", "Failed to close client connection", ex);
+            closeClient(key, "Connection closed by server");
+        }
+    }
+
+    /**
+     * 处理连接上缓存的下一个完整请求；请求还不完整时继续读取
+     */
+    private void dispatch(SelectionKey key, ConnectionContext context) throws IOException {
+        long readAt = System.nanoTime();
+        HttpRequest request;
+        try {
+            request = context.nextRequest();
+        } catch (IllegalArgumentException e) {
+            // 请求行或头部无法解析，返回 400 后关闭连接
+            Log.warn("Server", "Malformed request: {}", e.getMessage());
+            badRequest(key, context, readAt);
+            return;
+        }
+        if (request == null) {
+            key.interestOps(SelectionKey.OP_READ);
+            return;
+        }
+        SocketChannel client = (SocketChannel) key.channel();
+        InetSocketAddress remote = (InetSocketAddress) client.getRemoteAddress();
+        request.setRemoteAddress(remote.getAddress().getHostAddress());
+        context.begin(request, readAt);
+        activeConnections++;
+
+        Log.debug("Server", "Request received: \n{}", request);
+
+        // 处理完成前不再读取该连接，管线化的后续请求在响应写回后处理
+        key.interestOps(0);
+
+        // 按客户端地址限流，超出时直接返回 429
+        if (rateLimiter != null) {
+            long wait = rateLimiter.acquire(request.getRemoteAddress());
+            if (wait > 0) {
+                Log.warn("Server", "Rate limited {}", request.getRemoteAddress());
+                ServerMetrics.RATE_LIMITED.inc();
+                context.setResponse(ResponseBuilder.createTooManyRequestsResponse(request.getVersion(), wait));
+                key.interestOps(SelectionKey.OP_WRITE);
+                return;
             }
         }
+        context.getTimeline().mark(Timeline.Phase.DISPATCHED);
+        if(threadPool != null) {
+            threadPool.execute(() -> processRequest(key, request));
+        } else {
+            processRequest(key, request);
+        }
+    }
+
+    /**
+     * 对无法解析的请求返回 400，写回后关闭连接
+     */
+    private void badRequest(SelectionKey key, ConnectionContext context, long readAt) throws IOException {
+        // 访问日志与时间线需要一个请求，以 "-" 表示无法解析的方法与目标
+        HttpRequest placeholder = new HttpRequest(Version.HTTP_1_1, "-", "-", new HashMap<>(), null);
+        InetSocketAddress remote = (InetSocketAddress) ((SocketChannel) key.channel()).getRemoteAddress();
+        placeholder.setRemoteAddress(remote.getAddress().getHostAddress());
+        context.begin(placeholder, readAt);
+        activeConnections++;
+        HttpResponse response = ResponseBuilder.createErrorResponse(Version.HTTP_1_1, Status.BAD_REQUEST);
+        response.setHeader(Header.Connection, "close");
+        context.setResponse(response);
+        key.interestOps(SelectionKey.OP_WRITE);
     }
 
     /**
@@ -164,38 +316,130 @@ public class HttpServer {
      */
     private void write(SelectionKey key) {
         SocketChannel client = (SocketChannel) key.channel();
-        HttpResponse response = (HttpResponse) key.attachment();
+        ConnectionContext context = (ConnectionContext) key.attachment();
+        HttpResponse response = context.getResponse();
+        context.setResponse(null);
 
         try {
+            Timeline timeline = context.getTimeline();
             ByteBuffer buffer = ByteBuffer.wrap(response.toBytes());
             while (buffer.hasRemaining()) {
-                client.write(buffer);
+                int written = client.write(buffer);
+                if (written > 0 && !timeline.has(Timeline.Phase.FIRST_BYTE)) {
+                    timeline.mark(Timeline.Phase.FIRST_BYTE);
+                }
+                ServerMetrics.BYTES_WRITTEN.add(written);
+            }
+            timeline.mark(Timeline.Phase.LAST_BYTE);
+            context.end();
+            activeConnections--;
+            checkSlow(context, response);
+            if (Events.ENABLED) {
+                requestEvent(context, response, buffer.limit());
+            }
+            if (AccessLog.INSTANCE != null) {
+                AccessLog.INSTANCE.log(context, response, buffer.limit());
             }
 
+            Log.info("Server", "Response sent to client");
+            Log.debug("Server", "Response: \n{}", response);
+
             if (!Config.KEEP_ALIVE || !"keep-alive".equalsIgnoreCase(response.getHeaderVal(Header.Connection))) {
-                client.close();
-                Log.info("Server", "Connection closed by server");
+                closeClient(key, "Connection closed by server");
             } else {
-                key.interestOps(SelectionKey.OP_READ);
+                dispatch(key, context);
             }
-
-            Log.info("Server", "Response sent to client");
-            Log.debug("Server", "Response: \n" + response);
         } catch (IOException e) {
             Log.error("Server", "Error sending response", e);
-            try {
-                client.close();
-                Log.info("Server", "Connection closed by server");
-            } catch (IOException ex) {
-                Log.error("Server", "Failed to close client connection", ex);
-            }
+            closeClient(key, "Connection closed by server");
+        }
+    }
+
+    /**
+     * 处理耗时超过阈值时记录请求的各阶段耗时
+     */
+    private void checkSlow(ConnectionContext context, HttpResponse response) {
+        long elapsed = context.getTimeline().between(Timeline.Phase.READ, Timeline.Phase.LAST_BYTE);
+        if (Config.SLOW_REQUEST_THRESHOLD <= 0 || elapsed < Config.SLOW_REQUEST_THRESHOLD * 1_000_000L) {
+            return;
+        }
+        ServerMetrics.SLOW_REQUESTS.inc();
+        HttpRequest request = context.getRequest();
+        Log.warn("Server", "Slow request: {} {}",
+                request.getMethod() + " " + request.getUri() + " -> " + response.getStatusCode(),
+                context.getTimeline().toString());
+    }
+
+    private void requestEvent(ConnectionContext context, HttpResponse response, long bytes) {
+        HttpRequest request = context.getRequest();
+        Timeline timeline = context.getTimeline();
+        Events.SINK.requestHandled(request.getMethod(), request.getUri(), ServerMetrics.Route.of(request).label(),
+                response.getStatusCode(), bytes,
+                timeline.between(Timeline.Phase.READ, Timeline.Phase.LAST_BYTE),
+                timeline.between(Timeline.Phase.DISPATCHED, Timeline.Phase.HANDLER_START),
+                timeline.between(Timeline.Phase.HANDLER_START, Timeline.Phase.HANDLER_END),
+                timeline.between(Timeline.Phase.FIRST_BYTE, Timeline.Phase.LAST_BYTE));
+    }
+
+    /**
+     * 关闭客户端连接
+     */
+    private void closeClient(SelectionKey key, String message) {
+        SocketChannel client = (SocketChannel) key.channel();
+        if (!client.isOpen()) {
+            return;
+        }
+        try {
+            client.close();
+            Log.info("Server", message);
+        } catch (IOException e) {
+            Log.error("Server", "Failed to close client connection", e);
+        }
+        ServerMetrics.CONNECTIONS_CLOSED.inc();
+        connections--;
+        ConnectionContext context = (ConnectionContext) key.attachment();
+        if (context.isActive()) {
+            context.end();
+            activeConnections--;
+        }
+        if (Events.ENABLED) {
+            Events.SINK.connectionClosed(String.valueOf(context.getRemote()),
+                    System.nanoTime() - context.getOpened(), context.getRequests());
         }
     }
 
     private void processRequest (SelectionKey key, HttpRequest request) {
-        HttpResponse response = ServerHandler.handle(request);
-        key.attach(response);
-        key.interestOps(SelectionKey.OP_WRITE);
+        CompletableFuture<HttpResponse> future;
+        try {
+            future = ServerHandler.handleAsync(request);
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        // 处理失败时同样要写回响应，否则连接停在 interestOps 0 上，活跃连接数也不会减少
+        future.handle((result, e) -> {
+            HttpResponse response = result;
+            if (e != null) {
+                Log.error("Server", "Request handling failed", e);
+            }
+            if (response == null) {
+                response = ResponseBuilder.createErrorResponse(request.getVersion(), Status.INTERNAL_SERVER_ERROR);
+            }
+            if (!key.isValid()) {
+                return null;
+            }
+            try {
+                ((ConnectionContext) key.attachment()).setResponse(response);
+                key.interestOps(SelectionKey.OP_WRITE);
+            } catch (CancelledKeyException ignored) {
+                return null;
+            }
+            // 在其他线程完成时唤醒事件循环，否则要等到 select 超时才会写回
+            if (Thread.currentThread() != loopThread) {
+                selector.wakeup();
+            }
+            return null;
+        });
     }
 
 
@@ -234,9 +478,17 @@ public class HttpServer {
             }
         }
 
-        Log.init(Config.LOG_LEVEL);
+        if (Config.LOG_TO_FILE) {
+            Log.initFile(Config.LOG_LEVEL, Paths.get(Searcher.BASE_DIR, Config.LOG_DIR), "server",
+                    Config.LOG_MAX_FILE_SIZE, Config.LOG_MAX_FILES, Config.LOG_BUFFER_SIZE);
+        } else {
+            Log.init(Config.LOG_LEVEL);
+        }
 
         HttpServer server = new HttpServer(host, port);
+        if (Config.ADMIN_PORT > 0) {
+            new AdminServer(server, Config.ADMIN_HOST, Config.ADMIN_PORT).start();
+        }
         server.start();
     }
 }
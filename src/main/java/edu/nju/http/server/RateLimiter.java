@@ -0,0 +1,81 @@
+package edu.nju.http.server;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RateLimiter - 按键限流的令牌桶
+ * <p>
+ * 每个键只保存一个"理论到达时间"（GCRA 算法，与令牌桶等价），通过 CAS 无锁更新。
+ * 键的数量有上限，超出时优先清除已经回满的桶（与不存在等价），仍超出时任意清除一部分。
+ */
+public class RateLimiter {
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final int maxKeys;
+
+    // key -> theoretical arrival time (nanoTime)
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * @param ratePerSecond 每秒补充的令牌数
+     * @param burst         桶容量
+     * @param maxKeys       最多跟踪的键数
+     */
+    public RateLimiter(double ratePerSecond, int burst, int maxKeys) {
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        this.toleranceNanos = intervalNanos * Math.max(1, burst);
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * 尝试取一个令牌
+     * @param key 限流键
+     * @return 0 表示放行；否则为需要等待的纳秒数
+     */
+    public long acquire(String key) {
+        AtomicLong tat = buckets.get(key);
+        if (tat == null) {
+            tat = buckets.computeIfAbsent(key, k -> new AtomicLong(System.nanoTime()));
+            if (buckets.size() > maxKeys) {
+                evict();
+            }
+        }
+
+        long now = System.nanoTime();
+        while (true) {
+            long current = tat.get();
+            long next = (current - now > 0 ? current : now) + intervalNanos;
+            long wait = next - now - toleranceNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (tat.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    /**
+     * 清除已回满的桶，仍接近上限时再清除任意的桶
+     */
+    private void evict() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(tat -> tat.get() - now <= 0);
+
+        // 多清出一些余量，避免每个新键都触发一次全表扫描
+        int overflow = buckets.size() - (maxKeys - maxKeys / 8);
+        Iterator<String> iterator = buckets.keySet().iterator();
+        while (overflow-- > 0 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+}
@@ -7,12 +7,14 @@ import edu.nju.http.utils.Log;
 import edu.nju.http.utils.Searcher;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileTime;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
 
 public class ResponseBuilder {
     /**
@@ -36,6 +38,28 @@ public class ResponseBuilder {
         return response;
     }
 
+    /**
+     * 创建指标响应：Prometheus 文本格式，不允许缓存
+     */
+    protected static HttpResponse createMetricsResponse(String version, String metrics) {
+        HttpResponse response = new HttpResponse(version, Status.OK);
+        response.setBody(metrics.getBytes(StandardCharsets.UTF_8), "text/plain; version=0.0.4; charset=utf-8");
+        response.setHeader(Header.Cache_Control, "no-store");
+        setCommonHeaders(response);
+        return response;
+    }
+
+    /**
+     * 创建 JSON 响应，不允许缓存
+     */
+    protected static HttpResponse createJsonResponse(String version, String json) {
+        HttpResponse response = new HttpResponse(version, Status.OK);
+        response.setBody(json.getBytes(StandardCharsets.UTF_8), "application/json; charset=utf-8");
+        response.setHeader(Header.Cache_Control, "no-store");
+        setCommonHeaders(response);
+        return response;
+    }
+
     /**
      * 创建 304 Not Modified 响应
      */
@@ -71,6 +95,17 @@ public class ResponseBuilder {
         return response;
     }
 
+    /**
+     * 创建 429 Too Many Requests 响应
+     * @param retryAfterNanos 建议的等待时间（纳秒）
+     */
+    protected static HttpResponse createTooManyRequestsResponse(String version, long retryAfterNanos) {
+        HttpResponse response = createErrorResponse(version, Status.TOO_MANY_REQUESTS);
+        long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(retryAfterNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+        response.setHeader(Header.Retry_After, String.valueOf(seconds));
+        return response;
+    }
+
     private static void setCommonHeaders(HttpResponse response) {
         response.setHeader(Header.Server, Config.SERVER_SIGNATURE);
         response.setHeader(Header.Connection, Config.KEEP_ALIVE ? "keep-alive" : "close");
@@ -91,7 +126,7 @@ public class ResponseBuilder {
 
             response.setHeader(Header.ETag, eTag);
             response.setHeader(Header.Last_Modified, lastModifiedTime.toInstant().atZone(ZoneOffset.UTC).format(DateTimeFormatter.RFC_1123_DATE_TIME));
-            Log.debug("ServerHandler", "Set resource headers: ETag=" + eTag);
+            Log.debug("ServerHandler", "Set resource headers: ETag={}", eTag);
         } catch (IOException e) {
             Log.error("ServerHandler", "Failed to set resource headers", e);
         }
@@ -3,8 +3,11 @@ package edu.nju.http.server;
 import edu.nju.http.message.HttpRequest;
 import edu.nju.http.message.HttpResponse;
 import edu.nju.http.message.constant.*;
+import edu.nju.http.utils.Events;
 import edu.nju.http.utils.Log;
+import edu.nju.http.utils.Metrics;
 import edu.nju.http.utils.Searcher;
+import edu.nju.http.utils.Timeline;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -15,15 +18,45 @@ import java.nio.file.attribute.FileTime;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * ServerHandler - 处理 HTTP 请求
  */
 public class ServerHandler {
+    // 登录、注册按客户端地址限流，登录另按用户名限流；限流值 <= 0 时不启用
+    private static final RateLimiter AUTH_CLIENT_LIMITER = Config.AUTH_RATE_LIMIT > 0
+            ? new RateLimiter(Config.AUTH_RATE_LIMIT, Config.AUTH_RATE_LIMIT_BURST, Config.RATE_LIMIT_MAX_CLIENTS) : null;
+    private static final RateLimiter LOGIN_USER_LIMITER = Config.AUTH_RATE_LIMIT > 0
+            ? new RateLimiter(Config.AUTH_RATE_LIMIT, Config.AUTH_RATE_LIMIT_BURST, Config.RATE_LIMIT_MAX_CLIENTS) : null;
+
+    /**
+     * 异步处理请求：登录、注册交给认证线程池，其余请求直接在当前线程处理；
+     * 注册在认证线程中完成口令哈希后即释放线程，响应在注册记录落盘后完成
+     */
+    public static CompletableFuture<HttpResponse> handleAsync(HttpRequest request) {
+        if (Method.POST.equals(request.getMethod())
+                && ("/login".equals(request.getTarget()) || "/register".equals(request.getTarget()))) {
+            long wait = checkAuthRate(request);
+            if (wait > 0) {
+                Log.warn("Server", "Rate limited {} from {}", request.getTarget(), request.getRemoteAddress());
+                ServerMetrics.RATE_LIMITED.inc();
+                return CompletableFuture.completedFuture(
+                        ResponseBuilder.createTooManyRequestsResponse(request.getVersion(), wait));
+            }
+            if ("/register".equals(request.getTarget())) {
+                return UserSystem.getInstance().submitAsync(request, ServerHandler::handleRegister);
+            }
+            return UserSystem.getInstance().submit(request, ServerHandler::handle);
+        }
+        return CompletableFuture.completedFuture(handle(request));
+    }
 
     public static HttpResponse handle(HttpRequest request) {
+        long start = System.nanoTime();
+        mark(request, Timeline.Phase.HANDLER_START);
         HttpResponse response;
-        Log.debug("ServerHandler", "Handling request: " + request.getMethod() + " " + request.getTarget());
+        Log.debug("ServerHandler", "Handling request: {} {}", request.getMethod(), request.getTarget());
 
         try {
             Version.validateVersion(request.getVersion());
@@ -35,23 +68,59 @@ public class ServerHandler {
                     response = handlePost(request);
                     break;
                 default:
-                    Log.warn("Server", "Unsupported method: " + request.getMethod());
+                    Log.warn("Server", "Unsupported method: {}", request.getMethod());
                     response = ResponseBuilder.createErrorResponse(request.getVersion(), Status.METHOD_NOT_ALLOWED);
             }
         } catch (IllegalArgumentException e) {
-            Log.warn("Server", "Bad request: " + e.getMessage());
+            Log.warn("Server", "Bad request: {}", e.getMessage());
             response = ResponseBuilder.createErrorResponse(request.getVersion(), Status.BAD_REQUEST);
         } catch (Exception e) {
             Log.error("Server", "Internal server error", e);
             response = ResponseBuilder.createErrorResponse(request.getVersion(), Status.INTERNAL_SERVER_ERROR);
         }
 
+        return finish(request, response, start);
+    }
+
+    /**
+     * 处理注册请求：与 {@link #handle} 相同地校验与记录，但不等待注册记录落盘
+     */
+    private static CompletableFuture<HttpResponse> handleRegister(HttpRequest request) {
+        long start = System.nanoTime();
+        mark(request, Timeline.Phase.HANDLER_START);
+        CompletableFuture<HttpResponse> future;
+        try {
+            Version.validateVersion(request.getVersion());
+            future = UserSystem.getInstance().register(request);
+        } catch (IllegalArgumentException e) {
+            Log.warn("Server", "Bad request: {}", e.getMessage());
+            future = CompletableFuture.completedFuture(
+                    ResponseBuilder.createErrorResponse(request.getVersion(), Status.BAD_REQUEST));
+        } catch (Exception e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        return future.handle((response, e) -> {
+            if (e != null) {
+                Log.error("Server", "Internal server error", e);
+                response = ResponseBuilder.createErrorResponse(request.getVersion(), Status.INTERNAL_SERVER_ERROR);
+            }
+            return finish(request, response, start);
+        });
+    }
+
+    /**
+     * 补全空响应并记录处理耗时
+     */
+    private static HttpResponse finish(HttpRequest request, HttpResponse response, long start) {
         if (response == null) {
             Log.warn("Server", "Response was null, returning 500 Internal Server Error");
             response = ResponseBuilder.createErrorResponse(request.getVersion(), Status.INTERNAL_SERVER_ERROR);
         }
 
-        Log.info("Server", "Response status: " + response.getStatusCode());
+        Log.info("Server", "Response status: {}", response.getStatusCode());
+        ServerMetrics.recordRequest(ServerMetrics.Route.of(request), response.getStatusCode(), start);
+        mark(request, Timeline.Phase.HANDLER_END);
         return response;
     }
 
@@ -60,23 +129,38 @@ public class ServerHandler {
      */
     private static HttpResponse handleGet(HttpRequest request) {
         String target = request.getTarget();
-        Log.debug("ServerHandler", "Handling GET request for target: " + target);
+        Log.debug("ServerHandler", "Handling GET request for target: {}", target);
+
+        if (!Config.METRICS_PATH.isEmpty() && Config.METRICS_PATH.equals(target)) {
+            return ResponseBuilder.createMetricsResponse(request.getVersion(), Metrics.scrape());
+        }
 
         // 检查重定向规则
         if (Config.REDIRECT_RULES.containsKey(target)) {
             Config.RedirectRule rule = Config.REDIRECT_RULES.get(target);
-            Log.info("Server", "Redirecting to: " + rule.target + " with status: " + rule.statusCode);
+            Log.info("Server", "Redirecting to: {} with status: {}", rule.target, rule.statusCode);
             return ResponseBuilder.createRedirectResponse(request.getVersion(), rule.statusCode, rule.target);
         }
 
         // USER_DIR 下的资源需要验证登陆
         if (target.startsWith("/" + Config.USER_DIR)){
             String username = UserSystem.getInstance().validateSession(request);
+            mark(request, Timeline.Phase.SESSION_CHECKED);
             if (username == null) {
                 return ResponseBuilder.createErrorResponse(request.getVersion(), Status.UNAUTHORIZED);
             }
+            HttpResponse response = serveResource(request, target);
+            UserSystem.getInstance().renewCookie(request, response);
+            return response;
         }
 
+        return serveResource(request, target);
+    }
+
+    /**
+     * 返回静态资源，客户端缓存仍有效时返回 304
+     */
+    private static HttpResponse serveResource(HttpRequest request, String target) {
         target = target.equals("/") ? Config.DEFAULT_PAGE : target;
         target = Paths.get(Config.STATIC_RESOURCE_DIR, target).toString();
         // 查找资源路径
@@ -84,10 +168,10 @@ public class ServerHandler {
         try {
             filePath = Searcher.getResource(target);
         } catch (IllegalAccessException e) {
-            Log.warn("Server", "Access denied: " + target);
+            Log.warn("Server", "Access denied: {}", target);
             return ResponseBuilder.createErrorResponse(request.getVersion(), Status.FORBIDDEN);
         } catch (FileNotFoundException e) {
-            Log.warn("Server", "Resource not found: " + target);
+            Log.warn("Server", "Resource not found: {}", target);
             return ResponseBuilder.createErrorResponse(request.getVersion(), Status.NOT_FOUND);
         }
 
@@ -95,12 +179,19 @@ public class ServerHandler {
             // 客户端缓存校验
             if (checkClientCache(request, filePath)) {
                 Log.info("Server", "Client cache valid, returning 304 Not Modified");
+                if (Events.ENABLED) {
+                    Events.SINK.staticResource(target, true);
+                }
                 return ResponseBuilder.createNotModifiedResponse(request.getVersion());
             }
 
             HttpResponse response = ResponseBuilder.createSuccessResponse(request.getVersion(), filePath);
+            mark(request, Timeline.Phase.RESOURCE_LOADED);
+            if (Events.ENABLED) {
+                Events.SINK.staticResource(target, false);
+            }
 
-            Log.info("Server", "Serving file: " + filePath + " with type: " + response.getHeaderVal(Header.Content_Type));
+            Log.info("Server", "Serving file: {} with type: {}", filePath, response.getHeaderVal(Header.Content_Type));
 
             return response;
         } catch (IOException e) {
@@ -118,7 +209,8 @@ public class ServerHandler {
             case "/login":
                 return UserSystem.getInstance().login(request);
             case "/register":
-                return UserSystem.getInstance().register(request);
+                // 同步调用方（不经过 handleAsync）在此等待落盘
+                return UserSystem.getInstance().register(request).join();
             case "/logout":
                 return UserSystem.getInstance().logout(request);
             default:
@@ -128,6 +220,39 @@ public class ServerHandler {
     }
 
 
+    /**
+     * 在请求的时间线上记录阶段；不经过 HttpServer 的请求没有时间线
+     */
+    private static void mark(HttpRequest request, Timeline.Phase phase) {
+        Timeline timeline = request.getTimeline();
+        if (timeline != null) {
+            timeline.mark(phase);
+        }
+    }
+
+    /**
+     * 登录、注册限流检查
+     * @return 0 表示放行；否则为需要等待的纳秒数
+     */
+    private static long checkAuthRate(HttpRequest request) {
+        if (AUTH_CLIENT_LIMITER == null) {
+            return 0;
+        }
+        if (request.getRemoteAddress() != null) {
+            long wait = AUTH_CLIENT_LIMITER.acquire(request.getRemoteAddress());
+            if (wait > 0) {
+                return wait;
+            }
+        }
+        if ("/login".equals(request.getTarget())) {
+            String username = UserSystem.getInstance().getUsername(request);
+            if (username != null) {
+                return LOGIN_USER_LIMITER.acquire(username);
+            }
+        }
+        return 0;
+    }
+
     /**
      * 检查客户端缓存头部
      */
@@ -0,0 +1,109 @@
+package edu.nju.http.server;
+
+import edu.nju.http.message.HttpRequest;
+import edu.nju.http.message.constant.Method;
+import edu.nju.http.utils.Metrics;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * ServerMetrics - 服务端指标
+ * <p>
+ * 请求耗时按路由与状态码分别记录。路由只有固定的几类，避免按路径打标签造成指标数量无限增长；
+ * 每个路由下按状态码建立数组，首次出现某个状态码时注册，之后的记录只是数组访问，不分配内存。
+ */
+final class ServerMetrics {
+    static final Metrics.Counter CONNECTIONS_ACCEPTED = Metrics.counter(
+            "http_server_connections_accepted_total", "Connections accepted by the server.");
+    static final Metrics.Counter CONNECTIONS_CLOSED = Metrics.counter(
+            "http_server_connections_closed_total", "Connections closed by either side.");
+    static final Metrics.Counter BYTES_READ = Metrics.counter(
+            "http_server_read_bytes_total", "Bytes read from client connections.");
+    static final Metrics.Counter BYTES_WRITTEN = Metrics.counter(
+            "http_server_written_bytes_total", "Bytes written to client connections.");
+    static final Metrics.Counter RATE_LIMITED = Metrics.counter(
+            "http_server_rate_limited_total", "Requests rejected with 429 by the rate limiters.");
+    static final Metrics.Counter SLOW_REQUESTS = Metrics.counter(
+            "http_server_slow_requests_total", "Requests slower than slow_request_threshold.");
+    static final Metrics.Counter LOGIN_SUCCESS = Metrics.counter(
+            "http_server_logins_total", "Login attempts by result.", "result=\"success\"");
+    static final Metrics.Counter LOGIN_FAILURE = Metrics.counter(
+            "http_server_logins_total", "Login attempts by result.", "result=\"failure\"");
+    static final Metrics.Counter SESSION_VALID = Metrics.counter(
+            "http_server_session_checks_total", "Session validations by result.", "result=\"valid\"");
+    static final Metrics.Counter SESSION_INVALID = Metrics.counter(
+            "http_server_session_checks_total", "Session validations by result.", "result=\"invalid\"");
+
+    private static final String REQUEST_DURATION = "http_server_request_duration_seconds";
+    private static final String REQUEST_DURATION_HELP = "Time spent in ServerHandler.handle by route and status.";
+    private static final int MAX_STATUS = 600;
+    private static final String USER_PREFIX = "/" + Config.USER_DIR;
+
+    static {
+        Metrics.gauge("http_server_connections_open", "Client connections currently open.", "",
+                () -> CONNECTIONS_ACCEPTED.get() - CONNECTIONS_CLOSED.get());
+    }
+
+    /**
+     * 请求的路由分类
+     */
+    enum Route {
+        STATIC, USER, REDIRECT, LOGIN, REGISTER, LOGOUT, METRICS, OTHER;
+
+        private final String label = name().toLowerCase();
+        private final AtomicReferenceArray<Metrics.Timer> timers = new AtomicReferenceArray<>(MAX_STATUS);
+
+        String label() {
+            return label;
+        }
+
+        /**
+         * 对请求分类
+         */
+        static Route of(HttpRequest request) {
+            String target = request.getTarget();
+            if (Method.POST.equals(request.getMethod())) {
+                switch (target) {
+                    case "/login":
+                        return LOGIN;
+                    case "/register":
+                        return REGISTER;
+                    case "/logout":
+                        return LOGOUT;
+                    default:
+                        return OTHER;
+                }
+            }
+            if (!Method.GET.equals(request.getMethod())) {
+                return OTHER;
+            }
+            if (!Config.METRICS_PATH.isEmpty() && Config.METRICS_PATH.equals(target)) {
+                return METRICS;
+            }
+            if (Config.REDIRECT_RULES.containsKey(target)) {
+                return REDIRECT;
+            }
+            return target.startsWith(USER_PREFIX) ? USER : STATIC;
+        }
+    }
+
+    private ServerMetrics() {
+    }
+
+    /**
+     * 记录一次请求的处理耗时
+     * @param startNanos 开始处理时的 System.nanoTime()
+     */
+    static void recordRequest(Route route, int statusCode, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        int index = statusCode > 0 && statusCode < MAX_STATUS ? statusCode : 0;
+        Metrics.Timer timer = route.timers.get(index);
+        if (timer == null) {
+            String status = index == 0 ? "other" : String.valueOf(index);
+            timer = Metrics.timer(REQUEST_DURATION, REQUEST_DURATION_HELP,
+                    "route=\"" + route.label + "\",status=\"" + status + "\"");
+            route.timers.set(index, timer);
+        }
+        timer.record(elapsed);
+    }
+}
@@ -0,0 +1,361 @@
+package edu.nju.http.server;
+
+import edu.nju.http.utils.Events;
+import edu.nju.http.utils.Log;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * SessionStore - 分片会话存储
+ * <p>
+ * 会话按 sessionId 哈希到若干分片，每个分片是按访问顺序排列的 LinkedHashMap，超出容量时淘汰最久未访问的会话；
+ * 会话同时挂在一个以秒为刻度的时间轮上，由后台线程逐格清理过期会话。
+ * <p>
+ * 有效期的顺延与容量淘汰通过 {@link Listener} 通知调用方持久化；过期不通知，重放时按有效期丢弃即可。
+ */
+public class SessionStore {
+    private static final int SHARD_COUNT = 16;
+    private static final int WHEEL_SIZE = 512;
+    private static final long TICK_MILLIS = 1000L;
+    // 有效期比上次通知时顺延超过 ttl / RENEW_FRACTION 才通知，避免每次访问都写一条日志；
+    // 重放得到的有效期因此最多比实际早 ttl / RENEW_FRACTION
+    private static final int RENEW_FRACTION = 8;
+
+    private final long ttlMillis;
+    private final long renewStep;
+    private final boolean sliding;
+    private final Listener listener;
+    private final Shard[] shards = new Shard[SHARD_COUNT];
+    private final List<Set<Session>> wheel = new ArrayList<>(WHEEL_SIZE);
+    private final ScheduledExecutorService sweeper;
+    private volatile long lastTick;
+
+    // ================== 统计 ==================
+    private final AtomicInteger live = new AtomicInteger();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    /**
+     * @param ttlMillis   会话有效期（毫秒）
+     * @param maxSessions 最大会话数，超出后按 LRU 淘汰
+     * @param sliding     是否在每次访问时顺延有效期
+     */
+    public SessionStore(long ttlMillis, int maxSessions, boolean sliding) {
+        this(ttlMillis, maxSessions, sliding, null);
+    }
+
+    /**
+     * @param ttlMillis   会话有效期（毫秒）
+     * @param maxSessions 最大会话数，超出后按 LRU 淘汰
+     * @param sliding     是否在每次访问时顺延有效期
+     * @param listener    顺延与淘汰的回调，可为 null
+     */
+    public SessionStore(long ttlMillis, int maxSessions, boolean sliding, Listener listener) {
+        this.ttlMillis = ttlMillis;
+        this.renewStep = Math.max(TICK_MILLIS, ttlMillis / RENEW_FRACTION);
+        this.sliding = sliding;
+        this.listener = listener;
+
+        int perShard = Math.max(1, (maxSessions + SHARD_COUNT - 1) / SHARD_COUNT);
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            shards[i] = new Shard(perShard);
+        }
+
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(ConcurrentHashMap.newKeySet());
+        }
+
+        lastTick = System.currentTimeMillis() / TICK_MILLIS;
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleAtFixedRate(this::sweep, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 创建新会话
+     * @param username 用户名
+     * @return 新会话
+     */
+    public Session create(String username) {
+        Session session = new Session(UUID.randomUUID().toString(), username, System.currentTimeMillis() + ttlMillis);
+        put(session);
+        return session;
+    }
+
+    /**
+     * 恢复已持久化的会话或其有效期顺延：会话已存在时只顺延有效期，否则丢弃已过期的会话
+     */
+    public void restore(String sessionId, String username, long expiryTime) {
+        Shard shard = shardOf(sessionId);
+        Session session;
+        synchronized (shard) {
+            session = shard.get(sessionId);
+        }
+        if (session != null) {
+            if (expiryTime > session.expiryTime) {
+                session.expiryTime = expiryTime;
+                session.notifiedExpiry = expiryTime;
+            }
+        } else if (expiryTime > System.currentTimeMillis()) {
+            put(new Session(sessionId, username, expiryTime));
+        }
+    }
+
+    /**
+     * 遍历所有未过期的会话，逐个分片加锁复制后再回调
+     */
+    public void forEach(Consumer<Session> action) {
+        long now = System.currentTimeMillis();
+        for (Shard shard : shards) {
+            List<Session> copy;
+            synchronized (shard) {
+                copy = new ArrayList<>(shard.values());
+            }
+            for (Session session : copy) {
+                if (now <= session.expiryTime) {
+                    action.accept(session);
+                }
+            }
+        }
+    }
+
+    /**
+     * 查找会话，启用滑动过期时顺延有效期
+     * @param sessionId 会话ID
+     * @return 用户名，如果会话有效；否则，null
+     */
+    public String get(String sessionId) {
+        Shard shard = shardOf(sessionId);
+        Session session;
+        synchronized (shard) {
+            session = shard.get(sessionId);
+        }
+        if (session == null) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        if (now > session.expiryTime) {
+            if (unlink(session)) {
+                expired.increment();
+                Log.info("UserSystem", "Session expired: " + sessionId);
+                if (Events.ENABLED) {
+                    Events.SINK.sessionExpired(session.username);
+                }
+            }
+            return null;
+        }
+
+        if (sliding) {
+            long expiryTime = now + ttlMillis;
+            session.expiryTime = expiryTime;
+            if (listener != null && expiryTime - session.notifiedExpiry >= renewStep) {
+                session.notifiedExpiry = expiryTime;
+                listener.renewed(session);
+            }
+        }
+        return session.username;
+    }
+
+    /**
+     * 移除会话
+     * @param sessionId 会话ID
+     * @return 是否存在该会话
+     */
+    public boolean remove(String sessionId) {
+        Shard shard = shardOf(sessionId);
+        Session session;
+        synchronized (shard) {
+            session = shard.get(sessionId);
+        }
+        return session != null && unlink(session);
+    }
+
+    public int size() {
+        return live.get();
+    }
+
+    public long getExpiredCount() {
+        return expired.sum();
+    }
+
+    public long getEvictedCount() {
+        return evicted.sum();
+    }
+
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    // ================== 内部实现 ==================
+
+    private void put(Session session) {
+        Shard shard = shardOf(session.id);
+        Session eldest;
+        synchronized (shard) {
+            Session old = shard.put(session.id, session);
+            if (old != null) {
+                old.removed = true;
+            } else {
+                live.incrementAndGet();
+            }
+            eldest = shard.evicted;
+            shard.evicted = null;
+        }
+        schedule(session);
+        if (eldest != null && listener != null) {
+            listener.evicted(eldest);
+        }
+    }
+
+    /**
+     * 从分片中摘除会话，仅第一次调用返回 true
+     */
+    private boolean unlink(Session session) {
+        Shard shard = shardOf(session.id);
+        synchronized (shard) {
+            if (session.removed) {
+                return false;
+            }
+            session.removed = true;
+            shard.remove(session.id, session);
+        }
+        live.decrementAndGet();
+        return true;
+    }
+
+    private Shard shardOf(String sessionId) {
+        int h = sessionId.hashCode();
+        return shards[(h ^ (h >>> 16)) & (SHARD_COUNT - 1)];
+    }
+
+    /**
+     * 将会话挂到其过期时刻所在的时间轮格子上
+     */
+    private void schedule(Session session) {
+        long tick = Math.max(session.expiryTime / TICK_MILLIS + 1, lastTick + 1);
+        wheel.get((int) (tick % WHEEL_SIZE)).add(session);
+    }
+
+    /**
+     * 推进时间轮，处理自上次推进以来经过的所有格子
+     */
+    private void sweep() {
+        try {
+            long now = System.currentTimeMillis();
+            long currentTick = now / TICK_MILLIS;
+            long from = Math.max(lastTick + 1, currentTick - WHEEL_SIZE + 1);
+            int count = 0;
+            for (long tick = from; tick <= currentTick; tick++) {
+                lastTick = tick;
+                Set<Session> slot = wheel.get((int) (tick % WHEEL_SIZE));
+                for (Session session : slot) {
+                    if (session.removed) {
+                        slot.remove(session);
+                    } else if (now > session.expiryTime) {
+                        slot.remove(session);
+                        if (unlink(session)) {
+                            expired.increment();
+                            count++;
+                            if (Events.ENABLED) {
+                                Events.SINK.sessionExpired(session.username);
+                            }
+                        }
+                    } else {
+                        // 有效期已顺延，移到新的格子；仍落在本格的会话等待下一圈
+                        int target = (int) ((session.expiryTime / TICK_MILLIS + 1) % WHEEL_SIZE);
+                        if (target != (int) (tick % WHEEL_SIZE)) {
+                            slot.remove(session);
+                            wheel.get(target).add(session);
+                        }
+                    }
+                }
+            }
+            if (count > 0) {
+                Log.debug("UserSystem", "Swept " + count + " expired sessions, " + live.get() + " live");
+            }
+        } catch (Exception e) {
+            Log.error("UserSystem", "Session sweep failed", e);
+        }
+    }
+
+    /**
+     * 按访问顺序排列的分片，超出容量时淘汰最久未访问的会话
+     */
+    private class Shard extends LinkedHashMap<String, Session> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        // 本次 put 淘汰的会话，由 put 在释放锁后通知
+        private Session evicted;
+
+        Shard(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Session> eldest) {
+            if (size() <= capacity) {
+                return false;
+            }
+            eldest.getValue().removed = true;
+            live.decrementAndGet();
+            SessionStore.this.evicted.increment();
+            evicted = eldest.getValue();
+            return true;
+        }
+    }
+
+    /**
+     * 会话变更回调，在触发变更的线程中执行，不持有分片锁
+     */
+    public interface Listener {
+        /**
+         * 滑动过期使有效期比上次通知时顺延了超过 ttl / 8
+         */
+        void renewed(Session session);
+
+        /**
+         * 会话因超出容量被淘汰
+         */
+        void evicted(Session session);
+    }
+
+    /**
+     * Session
+     */
+    @Getter
+    public static class Session {
+        private final String id;
+        private final String username;
+        private volatile long expiryTime;
+        private volatile boolean removed;
+        @Getter(AccessLevel.NONE)
+        private volatile long notifiedExpiry; // 上次通知 renewed 时的有效期
+
+        Session(String id, String username, long expiryTime) {
+            this.id = id;
+            this.username = username;
+            this.expiryTime = expiryTime;
+            this.notifiedExpiry = expiryTime;
+        }
+    }
+}
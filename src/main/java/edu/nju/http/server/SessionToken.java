@@ -0,0 +1,140 @@
+package edu.nju.http.server;
+
+import edu.nju.http.utils.Log;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SessionToken - 无状态签名会话令牌
+ * <p>
+ * 令牌格式：Base64URL(用户名).过期时间戳.Base64URL(HMAC-SHA256)。持有相同密钥的任意节点都能独立校验，
+ * 不需要共享会话表；登出的令牌记入本地撤销集合，直到其自然过期。
+ */
+public class SessionToken {
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int PRUNE_THRESHOLD = 1024;
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> mac;
+
+    // signature -> expiryTime
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+
+    /**
+     * @param secret Base64 编码的密钥，为空或不是合法的 Base64 时生成仅本进程可用的随机密钥
+     */
+    public SessionToken(String secret) {
+        key = new SecretKeySpec(keyBytes(secret), ALGORITHM);
+        mac = ThreadLocal.withInitial(() -> {
+            try {
+                Mac m = Mac.getInstance(ALGORITHM);
+                m.init(key);
+                return m;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(ALGORITHM + " is not available", e);
+            }
+        });
+    }
+
+    private static byte[] keyBytes(String secret) {
+        if (secret == null || secret.isEmpty()) {
+            Log.warn("UserSystem", "session_secret not set, tokens will only be valid on this node until restart");
+            return randomKey();
+        }
+        byte[] keyBytes;
+        try {
+            keyBytes = Base64.getDecoder().decode(secret.trim());
+        } catch (IllegalArgumentException e) {
+            Log.warn("UserSystem", "session_secret is not valid Base64 ({}), tokens will only be valid on this node until restart",
+                    e.getMessage());
+            return randomKey();
+        }
+        if (keyBytes.length == 0) {
+            Log.warn("UserSystem", "session_secret decodes to an empty key, tokens will only be valid on this node until restart");
+            return randomKey();
+        }
+        return keyBytes;
+    }
+
+    private static byte[] randomKey() {
+        byte[] keyBytes = new byte[32];
+        new SecureRandom().nextBytes(keyBytes);
+        return keyBytes;
+    }
+
+    /**
+     * 签发令牌
+     * @param username   用户名
+     * @param expiryTime 过期时间戳（毫秒）
+     */
+    public String issue(String username, long expiryTime) {
+        String payload = Base64.getUrlEncoder().withoutPadding().encodeToString(username.getBytes(StandardCharsets.UTF_8))
+                + "." + expiryTime;
+        return payload + "." + sign(payload);
+    }
+
+    /**
+     * 校验令牌
+     * @return 用户名，如果令牌有效；否则，null
+     */
+    public String verify(String token) {
+        int first = token.indexOf('.');
+        int last = token.lastIndexOf('.');
+        if (first <= 0 || last == first) {
+            return null;
+        }
+
+        String payload = token.substring(0, last);
+        String signature = token.substring(last + 1);
+        byte[] expected = sign(payload).getBytes(StandardCharsets.US_ASCII);
+        if (!MessageDigest.isEqual(expected, signature.getBytes(StandardCharsets.US_ASCII))) {
+            return null;
+        }
+
+        long expiryTime;
+        try {
+            expiryTime = Long.parseLong(payload.substring(first + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (System.currentTimeMillis() > expiryTime || revoked.containsKey(signature)) {
+            return null;
+        }
+        return new String(Base64.getUrlDecoder().decode(payload.substring(0, first)), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 撤销令牌
+     * @return 令牌是否有效
+     */
+    public boolean revoke(String token) {
+        if (verify(token) == null) {
+            return false;
+        }
+        int last = token.lastIndexOf('.');
+        long expiryTime = Long.parseLong(token.substring(token.indexOf('.') + 1, last));
+        revoked.put(token.substring(last + 1), expiryTime);
+        if (revoked.size() > PRUNE_THRESHOLD) {
+            long now = System.currentTimeMillis();
+            revoked.values().removeIf(expiry -> expiry < now);
+        }
+        return true;
+    }
+
+    public int getRevokedCount() {
+        return revoked.size();
+    }
+
+    private String sign(String payload) {
+        byte[] digest = mac.get().doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+    }
+}
@@ -4,12 +4,24 @@ import edu.nju.http.message.HttpRequest;
 import edu.nju.http.message.HttpResponse;
 import edu.nju.http.message.constant.Header;
 import edu.nju.http.message.constant.Status;
+import edu.nju.http.utils.Events;
 import edu.nju.http.utils.Log;
-import lombok.Getter;
+import edu.nju.http.utils.Metrics;
+import edu.nju.http.utils.Searcher;
+import org.json.JSONObject;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Map;
-import java.util.UUID;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * UserSystem - 处理用户注册、登录和会话管理
@@ -17,24 +29,102 @@ import java.util.concurrent.ConcurrentHashMap;
 public class UserSystem {
     public static final UserSystem INSTANCE = new UserSystem();
 
-    private UserSystem() {}
+    private UserSystem() {
+        store = Config.ENABLE_PERSISTENCE ? openStore() : null;
+        Metrics.gauge("http_server_sessions", "Server-side sessions currently stored.", "", sessions::size);
+    }
 
     public static UserSystem getInstance() {
         return INSTANCE;
     }
 
-    // username -> password
+    // username -> password hash
     private final Map<String, String> users = new ConcurrentHashMap<>();
 
+    // 注册记录尚未落盘的用户名，落盘后才写入 users，此前不能登录，也不会进入快照
+    private final Set<String> pendingUsers = ConcurrentHashMap.newKeySet();
+
     // sessionId -> session
-    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SessionStore sessions = new SessionStore(
+            Config.SESSION_EXPIRY_TIME * 1000L, Config.SESSION_MAX_COUNT, Config.SESSION_SLIDING,
+            new SessionStore.Listener() {
+                @Override
+                public void renewed(SessionStore.Session session) {
+                    persist(loginRecord(session).put("op", "renew"));
+                }
+
+                @Override
+                public void evicted(SessionStore.Session session) {
+                    persist(new JSONObject().put("op", "logout").put("session", session.getId()));
+                }
+            });
+
+    // 无状态签名令牌，仅在 session_mode 为 token 时启用
+    private final SessionToken tokens = Config.TOKEN_SESSION ? new SessionToken(Config.SESSION_SECRET) : null;
+
+    // 持久化存储，未启用时为 null
+    private final DataStore store;
+
+    // 口令哈希线程池，有界队列
+    private final ThreadPoolExecutor authExecutor = new ThreadPoolExecutor(
+            Config.AUTH_THREADS, Config.AUTH_THREADS, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Config.AUTH_QUEUE_SIZE),
+            r -> {
+                Thread t = new Thread(r, "auth-worker");
+                t.setDaemon(true);
+                return t;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
 
     /**
-     * 处理用户注册请求
+     * 在认证线程池中执行口令哈希相关的请求，避免阻塞事件循环；队列已满时直接返回 503
      * @param request HTTP请求
+     * @param handler 请求处理逻辑
      * @return HTTP响应
      */
-    public HttpResponse register(HttpRequest request) {
+    public CompletableFuture<HttpResponse> submit(HttpRequest request, Function<HttpRequest, HttpResponse> handler) {
+        return submitAsync(request, r -> CompletableFuture.completedFuture(handler.apply(r)));
+    }
+
+    /**
+     * 同 {@link #submit}，处理逻辑返回的 Future 可在认证线程之外完成（如等待落盘），等待期间不占用认证线程
+     * @param request HTTP请求
+     * @param handler 请求处理逻辑
+     * @return HTTP响应
+     */
+    public CompletableFuture<HttpResponse> submitAsync(HttpRequest request,
+                                                       Function<HttpRequest, CompletableFuture<HttpResponse>> handler) {
+        try {
+            return CompletableFuture.supplyAsync(() -> handler.apply(request), authExecutor)
+                    .thenCompose(Function.identity());
+        } catch (RejectedExecutionException e) {
+            Log.warn("UserSystem", "Auth queue full, rejecting " + request.getTarget());
+            HttpResponse response = ResponseBuilder.createErrorResponse(request.getVersion(), Status.SERVICE_UNAVAILABLE);
+            response.setHeader(Header.Retry_After, "1");
+            return CompletableFuture.completedFuture(response);
+        }
+    }
+
+    /**
+     * 会话存储，供管理端点读取会话数
+     */
+    SessionStore getSessions() {
+        return sessions;
+    }
+
+    /**
+     * 口令哈希线程池，供管理端点读取队列深度
+     */
+    ThreadPoolExecutor getAuthExecutor() {
+        return authExecutor;
+    }
+
+    /**
+     * 处理用户注册请求；注册记录落盘后响应才完成，由持久化写线程在组提交后完成，不阻塞调用线程
+     * @param request HTTP请求
+     * @return HTTP响应
+     */
+    public CompletableFuture<HttpResponse> register(HttpRequest request) {
         String query = request.getQuery();
         Map<String, String> params = parseQuery(query);
         String username = params.get("username");
@@ -44,20 +134,37 @@ public class UserSystem {
 
         // 验证输入
         if (username == null || password == null || username.isEmpty() || password.isEmpty()) {
-            return ResponseBuilder.createErrorResponse(request.getVersion(), Status.BAD_REQUEST);
+            return CompletableFuture.completedFuture(
+                    ResponseBuilder.createErrorResponse(request.getVersion(), Status.BAD_REQUEST));
         }
 
         // 检查用户名是否已存在
         if (users.containsKey(username)) {
-            return ResponseBuilder.createErrorResponse(request.getVersion(), Status.CONFLICT);
+            return CompletableFuture.completedFuture(
+                    ResponseBuilder.createErrorResponse(request.getVersion(), Status.CONFLICT));
         }
 
-        // 存储用户
-        users.put(username, password);
-
-        Log.info("UserSystem", "Register success.: " + username);
+        // 先占用用户名，落盘后再写入口令哈希
+        String hash = PasswordHasher.hash(password);
+        if (!pendingUsers.add(username)) {
+            return CompletableFuture.completedFuture(
+                    ResponseBuilder.createErrorResponse(request.getVersion(), Status.CONFLICT));
+        }
+        if (users.containsKey(username)) {
+            pendingUsers.remove(username);
+            return CompletableFuture.completedFuture(
+                    ResponseBuilder.createErrorResponse(request.getVersion(), Status.CONFLICT));
+        }
 
-        return ResponseBuilder.createSuccessResponse(request.getVersion(), "Register success.\n username: " + username);
+        // 注册需等待落盘；用户在写线程中、早于之后的快照写入 users
+        return persistAsync(registerRecord(username, hash), () -> users.put(username, hash)).thenApply(persisted -> {
+            pendingUsers.remove(username);
+            if (!persisted) {
+                return ResponseBuilder.createErrorResponse(request.getVersion(), Status.INTERNAL_SERVER_ERROR);
+            }
+            Log.info("UserSystem", "Register success.: " + username);
+            return ResponseBuilder.createSuccessResponse(request.getVersion(), "Register success.\n username: " + username);
+        });
     }
 
     /**
@@ -78,23 +185,36 @@ public class UserSystem {
             return ResponseBuilder.createErrorResponse(request.getVersion(), Status.BAD_REQUEST);
         }
 
-        // 检查用户是否存在
-        String storedPassword = users.get(username);
-        if (storedPassword == null) {
+        // 验证密码，用户不存在时同样耗费一次哈希计算
+        String storedHash = users.get(username);
+        if (!PasswordHasher.verify(password, storedHash)) {
+            ServerMetrics.LOGIN_FAILURE.inc();
             return ResponseBuilder.createErrorResponse(request.getVersion(), Status.UNAUTHORIZED);
         }
+        ServerMetrics.LOGIN_SUCCESS.inc();
 
-        // 验证密码
-        if (!storedPassword.equals(password)) {
-            return ResponseBuilder.createErrorResponse(request.getVersion(), Status.UNAUTHORIZED);
+        // 旧的明文记录或迭代次数过低时升级哈希
+        if (PasswordHasher.needsRehash(storedHash)) {
+            String hash = PasswordHasher.hash(password);
+            if (users.replace(username, storedHash, hash)) {
+                persist(registerRecord(username, hash));
+            }
         }
 
         Log.info("UserSystem", "Login : " + username);
 
-        // 生成会话ID
-        String sessionId = UUID.randomUUID().toString();
-        long expiryTime = System.currentTimeMillis() + Config.SESSION_EXPIRY_TIME * 1000L;
-        sessions.put(sessionId, new Session(username, expiryTime));
+        // 生成会话ID：令牌模式下直接签发令牌，不保存服务端状态
+        String sessionId;
+        if (tokens != null) {
+            sessionId = tokens.issue(username, System.currentTimeMillis() + Config.SESSION_EXPIRY_TIME * 1000L);
+        } else {
+            SessionStore.Session session = sessions.create(username);
+            persist(loginRecord(session));
+            sessionId = session.getId();
+        }
+        if (Events.ENABLED) {
+            Events.SINK.sessionCreated(username);
+        }
 
         // 构建成功响应，设置Cookie
         HttpResponse response = ResponseBuilder.createSuccessResponse(request.getVersion(), "Login success.\n username: " + username);
@@ -119,8 +239,12 @@ public class UserSystem {
             String[] keyValue = cookie.trim().split("=", 2);
             if (keyValue.length == 2 && "sessionId".equals(keyValue[0])) {
                 String sessionId = keyValue[1];
-                Session session = sessions.remove(sessionId);
-                if (session != null) {
+                if (tokens != null) {
+                    if (tokens.revoke(sessionId)) {
+                        Log.info("UserSystem", "Logout token revoked");
+                    }
+                } else if (sessions.remove(sessionId)) {
+                    persist(new JSONObject().put("op", "logout").put("session", sessionId));
                     Log.info("UserSystem", "Logout sessionId: " + sessionId);
                 }
                 found = true;
@@ -154,23 +278,52 @@ public class UserSystem {
         for (String cookie : cookies) {
             String[] keyValue = cookie.trim().split("=");
             if (keyValue.length == 2 && "sessionId".equals(keyValue[0])) {
-                String sessionId = keyValue[1];
-                Session session = sessions.get(sessionId);
-                if (session != null) {
-                    if (System.currentTimeMillis() <= session.getExpiryTime()) {
-                        return session.getUsername();
-                    } else {
-                        sessions.remove(sessionId);
-                        Log.info("UserSystem", "Session expired: " + sessionId);
-                        return null;
-                    }
+                String username = tokens != null ? tokens.verify(keyValue[1]) : sessions.get(keyValue[1]);
+                if (username != null) {
+                    ServerMetrics.SESSION_VALID.inc();
+                    return username;
                 }
             }
         }
 
+        ServerMetrics.SESSION_INVALID.inc();
         return null;
     }
 
+    /**
+     * 启用滑动过期时重新下发会话 Cookie，使客户端 Cookie 的有效期随服务端会话一起顺延；
+     * 令牌模式的有效期写在令牌中，不顺延
+     * @param request  已通过会话校验的请求
+     * @param response 该请求的响应
+     */
+    public void renewCookie(HttpRequest request, HttpResponse response) {
+        if (!Config.SESSION_SLIDING || tokens != null) {
+            return;
+        }
+        String cookieHeader = request.getHeaderVal(Header.Cookie);
+        if (cookieHeader == null) {
+            return;
+        }
+        for (String cookie : cookieHeader.split(";")) {
+            String[] keyValue = cookie.trim().split("=");
+            if (keyValue.length == 2 && "sessionId".equals(keyValue[0])) {
+                setCookie(response, keyValue[1], Config.SESSION_EXPIRY_TIME);
+                // 带 Set-Cookie 的响应不应被共享缓存保存
+                response.setHeader(Header.Cache_Control, "private");
+                return;
+            }
+        }
+    }
+
+    /**
+     * 取出表单中的用户名
+     * @param request HTTP请求
+     * @return 用户名，不存在时为 null
+     */
+    public String getUsername(HttpRequest request) {
+        return parseQuery(request.getQuery()).get("username");
+    }
+
     /**
      * 解析表单数据
      * @param query 表单数据
@@ -188,29 +341,98 @@ public class UserSystem {
         return params;
     }
 
-    private void setCookie(HttpResponse response, String sessionId, int expiryTime) {
-        String cookie = String.format(
-                "sessionId=%s; HttpOnly; Path=/; Max-Age=%d",
-                sessionId,
-               expiryTime
-        );
-        response.setHeader(Header.Set_Cookie, cookie);
+    // ================== 持久化 ==================
+
+    private DataStore openStore() {
+        DataStore dataStore = new DataStore(Paths.get(Searcher.BASE_DIR, Config.DATA_DIR),
+                Config.SNAPSHOT_THRESHOLD, Config.SNAPSHOT_INTERVAL * 1000L);
+        try {
+            dataStore.recover(this::apply);
+        } catch (IOException e) {
+            Log.error("UserSystem", "Failed to recover user data, persistence disabled", e);
+            return null;
+        }
+        dataStore.start(this::snapshot);
+        return dataStore;
+    }
+
+    /**
+     * 写入持久化日志，不等待落盘
+     * @param record 日志记录
+     */
+    private void persist(JSONObject record) {
+        if (store != null) {
+            store.append(record);
+        }
     }
 
     /**
-     * Session
+     * 写入持久化日志
+     * @param record   日志记录
+     * @param onCommit 落盘成功后执行；未启用持久化时立即执行
+     * @return 落盘后以是否写入成功完成的 Future，在持久化写线程中完成
      */
-    @Getter
-    private class Session {
-        private final String username;
-        private final long expiryTime;
+    private CompletableFuture<Boolean> persistAsync(JSONObject record, Runnable onCommit) {
+        if (store == null) {
+            onCommit.run();
+            return CompletableFuture.completedFuture(true);
+        }
+        return store.append(record, onCommit).handle((ignored, e) -> {
+            if (e != null) {
+                Log.error("UserSystem", "Failed to persist record: " + record.optString("op"), e);
+                return false;
+            }
+            return true;
+        });
+    }
 
-        public Session(String username, long expiryTime) {
-            this.username = username;
-            this.expiryTime = expiryTime;
+    /**
+     * 重放一条持久化记录
+     */
+    private void apply(JSONObject record) {
+        switch (record.getString("op")) {
+            case "register":
+                users.put(record.getString("username"), record.getString("password"));
+                break;
+            case "login":
+            case "renew":
+                sessions.restore(record.getString("session"), record.getString("username"), record.getLong("expiry"));
+                break;
+            case "logout":
+                sessions.remove(record.getString("session"));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown op: " + record.getString("op"));
         }
+    }
+
+    /**
+     * 以最少的记录输出当前全部状态
+     */
+    private void snapshot(Consumer<JSONObject> out) {
+        users.forEach((username, password) -> out.accept(registerRecord(username, password)));
+        sessions.forEach(session -> out.accept(loginRecord(session)));
+    }
+
+    private static JSONObject registerRecord(String username, String passwordHash) {
+        return new JSONObject().put("op", "register").put("username", username).put("password", passwordHash);
+    }
 
+    private static JSONObject loginRecord(SessionStore.Session session) {
+        return new JSONObject()
+                .put("op", "login")
+                .put("session", session.getId())
+                .put("username", session.getUsername())
+                .put("expiry", session.getExpiryTime());
     }
 
+    private void setCookie(HttpResponse response, String sessionId, int expiryTime) {
+        String cookie = String.format(
+                "sessionId=%s; HttpOnly; Path=/; Max-Age=%d",
+                sessionId,
+               expiryTime
+        );
+        response.setHeader(Header.Set_Cookie, cookie);
+    }
 
 }
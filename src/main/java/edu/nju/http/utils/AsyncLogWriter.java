@@ -0,0 +1,312 @@
+package edu.nju.http.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * AsyncLogWriter - 异步日志写入器
+ * <p>
+ * 调用线程只把记录放进有界环形缓冲区，格式化与写文件都由后台线程完成。缓冲区的记录对象预先分配并循环使用，
+ * 每个槽位带一个序号：生产者以 CAS 抢占位置（{@link #claim}）、填写记录后发布序号（{@link #publish}），
+ * 消费者按序号判断槽位是否可读，全程无锁。缓冲区已满时丢弃记录并计数，不阻塞调用线程。
+ * <p>
+ * 后台线程有数据时连续写出，追上生产者后再 flush；设置了刷新间隔时只在间隔到达或缓冲区过半时醒来，
+ * 以更大的批次写文件。文件写入目录下的 {@code <name>.log}，超过大小上限或时长时依次重命名为
+ * {@code <name>.1.log}、{@code <name>.2.log}……，超出保留个数的旧文件被删除。
+ *
+ * @param <T> 记录类型
+ */
+public abstract class AsyncLogWriter<T> {
+    private static final int MAX_BATCH = 256;
+    private static final long IDLE_PARK = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Object[] records;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+
+    private final Path dir;
+    private final String name;
+    private final long maxFileSize;
+    private final long rollInterval;
+    private final int maxFiles;
+    private final long flushInterval;
+    private final Thread writer;
+    private final LongAdder dropped = new LongAdder();
+    private final Metrics.Counter droppedMetric;
+    private long reportedDropped;
+    private volatile boolean sleeping;
+    private volatile boolean running = true;
+
+    private final StringBuilder line = new StringBuilder(256);
+    private byte[] encoded = new byte[1024];
+    private OutputStream out;
+    private long fileSize;
+    private long fileOpened;
+
+    /**
+     * @param dir           日志目录
+     * @param name          日志文件名（不含扩展名），也用作后台线程名与丢弃计数的标签
+     * @param maxFileSize   单个文件的大小上限（字节）
+     * @param rollInterval  单个文件的最长写入时长（毫秒），0 表示不按时间滚动
+     * @param maxFiles      保留的历史文件个数
+     * @param capacity      缓冲区槽位数，向上取整为 2 的幂
+     * @param flushInterval 刷新间隔（毫秒），0 表示有新记录时立即唤醒后台线程
+     * @param factory       创建记录对象
+     */
+    protected AsyncLogWriter(Path dir, String name, long maxFileSize, long rollInterval, int maxFiles,
+                             int capacity, long flushInterval, Supplier<T> factory) throws IOException {
+        int size = 2;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.records = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            records[i] = factory.get();
+            sequences.set(i, i);
+        }
+        this.dir = dir;
+        this.name = name;
+        this.maxFileSize = maxFileSize;
+        this.rollInterval = rollInterval;
+        this.maxFiles = maxFiles;
+        this.flushInterval = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+        this.droppedMetric = Metrics.counter("log_records_dropped_total",
+                "Log records dropped because the ring buffer was full.", "log=\"" + name + "\"");
+
+        Files.createDirectories(dir);
+        Path file = dir.resolve(name + ".log");
+        fileSize = Files.exists(file) ? Files.size(file) : 0;
+        out = open(file);
+        fileOpened = System.currentTimeMillis();
+
+        writer = new Thread(this::writeLoop, name + "-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * 把记录格式化为一行或多行文本，包括结尾的换行
+     */
+    protected abstract void format(T record, StringBuilder out);
+
+    /**
+     * 写出后清理记录中的引用，便于回收
+     */
+    protected void clear(T record) {
+    }
+
+    /**
+     * 格式化丢弃提示，默认不写入文件
+     * @param count 自上次提示以来丢弃的条数
+     */
+    protected void formatDropped(long count, StringBuilder out) {
+    }
+
+    /**
+     * 抢占一个槽位，之后须调用 {@link #get} 填写记录并调用 {@link #publish} 发布
+     * @return 位置，缓冲区已满时丢弃并返回 -1
+     */
+    public final long claim() {
+        while (true) {
+            long position = tail.get();
+            long diff = sequences.get((int) position & mask) - position;
+            if (diff < 0) {
+                // 消费者还没有读到这个槽位
+                dropped.increment();
+                droppedMetric.inc();
+                return -1;
+            }
+            if (diff == 0 && tail.compareAndSet(position, position + 1)) {
+                return position;
+            }
+        }
+    }
+
+    /**
+     * 取出已抢占位置上的记录对象
+     */
+    @SuppressWarnings("unchecked")
+    public final T get(long position) {
+        return (T) records[(int) position & mask];
+    }
+
+    /**
+     * 发布已填写的记录
+     */
+    public final void publish(long position) {
+        sequences.set((int) position & mask, position + 1);
+        if (sleeping && (flushInterval == 0 || (position & (mask >> 1)) == 0)) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * 写完缓冲区中的记录后停止后台线程
+     */
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            if (drain() > 0 && readable()) {
+                continue;
+            }
+            flush();
+            if (!running && !readable()) {
+                break;
+            }
+            sleeping = true;
+            // 置位后再检查一次，避免错过生产者在置位前发布的记录
+            if (running && !readable()) {
+                LockSupport.parkNanos(this, flushInterval > 0 ? flushInterval : IDLE_PARK);
+            }
+            sleeping = false;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            // 写日志失败时不能再通过 Log 报告
+            System.err.println("[Log]: Failed to close " + name + ".log: " + e.getMessage());
+        }
+    }
+
+    private boolean readable() {
+        return sequences.get((int) head & mask) == head + 1;
+    }
+
+    /**
+     * 读出一批记录写入文件
+     * @return 本批记录数
+     */
+    private int drain() {
+        if (rollInterval > 0 && fileSize > 0 && System.currentTimeMillis() - fileOpened >= rollInterval) {
+            try {
+                roll();
+            } catch (IOException e) {
+                System.err.println("[Log]: Failed to roll " + name + ".log: " + e.getMessage());
+            }
+        }
+        long total = dropped.sum();
+        if (total > reportedDropped) {
+            line.setLength(0);
+            formatDropped(total - reportedDropped, line);
+            write(line);
+            reportedDropped = total;
+        }
+        int count = 0;
+        while (count < MAX_BATCH && readable()) {
+            int index = (int) head & mask;
+            T record = get(head);
+            line.setLength(0);
+            try {
+                format(record, line);
+            } catch (RuntimeException e) {
+                line.setLength(0);
+                line.append("[Log]: Failed to format record: ").append(e).append('\n');
+            }
+            clear(record);
+            sequences.lazySet(index, head + records.length);
+            head++;
+            write(line);
+            count++;
+        }
+        return count;
+    }
+
+    private void write(CharSequence text) {
+        int length = text.length();
+        if (length == 0) {
+            return;
+        }
+        // 纯 ASCII 的行直接逐字节复制，避免为每行创建字符串与字节数组
+        byte[] bytes = encoded;
+        if (bytes.length < length) {
+            bytes = encoded = new byte[Math.max(length, bytes.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+                length = bytes.length;
+                break;
+            }
+            bytes[i] = (byte) c;
+        }
+        try {
+            if (fileSize > 0 && fileSize + length > maxFileSize) {
+                roll();
+            }
+            out.write(bytes, 0, length);
+            fileSize += length;
+        } catch (IOException e) {
+            System.err.println("[Log]: Failed to write " + name + ".log: " + e.getMessage());
+        }
+    }
+
+    private void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("[Log]: Failed to flush " + name + ".log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 滚动：name.log -> name.1.log -> name.2.log ...
+     */
+    private void roll() throws IOException {
+        out.close();
+        Path current = dir.resolve(name + ".log");
+        try {
+            Files.deleteIfExists(dir.resolve(name + "." + maxFiles + ".log"));
+            for (int i = maxFiles - 1; i >= 1; i--) {
+                Path from = dir.resolve(name + "." + i + ".log");
+                if (Files.exists(from)) {
+                    Files.move(from, dir.resolve(name + "." + (i + 1) + ".log"), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            if (maxFiles > 0) {
+                Files.move(current, dir.resolve(name + ".1.log"), StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.deleteIfExists(current);
+            }
+        } finally {
+            // 重命名失败时继续追加到当前文件
+            out = open(current);
+            fileSize = Files.size(current);
+            fileOpened = System.currentTimeMillis();
+        }
+    }
+
+    private static OutputStream open(Path file) throws IOException {
+        return new BufferedOutputStream(Files.newOutputStream(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND), 64 * 1024);
+    }
+}
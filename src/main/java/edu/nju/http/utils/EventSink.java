@@ -0,0 +1,64 @@
+package edu.nju.http.utils;
+
+/**
+ * EventSink - 领域事件的接收方
+ * <p>
+ * 服务端与客户端在关键位置发出事件，由 {@link Events} 通过 ServiceLoader 加载的实现接收，如写入 JFR。
+ * 所有方法默认不做任何事；实现只需覆盖关心的事件。方法在事件发生的线程上同步调用，不应阻塞。
+ * 时长参数的单位均为纳秒。
+ */
+public interface EventSink {
+
+    /**
+     * 服务端接受连接
+     */
+    default void connectionAccepted(String remote) {
+    }
+
+    /**
+     * 服务端连接关闭
+     * @param lifetime 连接存活时长
+     * @param requests 连接上处理的请求数
+     */
+    default void connectionClosed(String remote, long lifetime, int requests) {
+    }
+
+    /**
+     * 服务端写完一个响应
+     * @param route    路由分类
+     * @param bytes    写出的字节数
+     * @param duration 从读到完整请求到写完响应
+     * @param queue    交给处理线程后等待的时长，未经过该阶段时为 -1
+     * @param handler  处理请求的时长，未经过该阶段时为 -1
+     * @param write    从写出第一个字节到写完的时长
+     */
+    default void requestHandled(String method, String target, String route, int status, long bytes,
+                                long duration, long queue, long handler, long write) {
+    }
+
+    /**
+     * 服务端处理静态资源请求
+     * @param notModified 客户端缓存仍然有效、返回 304 时为 true；读取资源返回完整响应时为 false
+     */
+    default void staticResource(String path, boolean notModified) {
+    }
+
+    /**
+     * 服务端创建会话
+     */
+    default void sessionCreated(String username) {
+    }
+
+    /**
+     * 服务端会话过期
+     */
+    default void sessionExpired(String username) {
+    }
+
+    /**
+     * 客户端缓存条目经条件请求验证
+     * @param notModified 服务端返回 304、沿用缓存内容时为 true；返回新内容时为 false
+     */
+    default void cacheRevalidated(String key, boolean notModified) {
+    }
+}
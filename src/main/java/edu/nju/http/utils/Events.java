@@ -0,0 +1,38 @@
+package edu.nju.http.utils;
+
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Events - 领域事件的发出点
+ * <p>
+ * 启动时通过 ServiceLoader 查找 {@link EventSink} 的实现，找不到时使用不做任何事的默认实现，
+ * 此时 {@link #ENABLED} 为 false，调用方据此跳过事件参数的计算，几乎没有开销。
+ * JFR 实现只在 jfr 构建任务中编译（需要 JDK 11+），见 src/jfr/java。
+ */
+public final class Events {
+    public static final EventSink SINK = load();
+    public static final boolean ENABLED = !(SINK instanceof NoOp);
+
+    private Events() {
+    }
+
+    private static EventSink load() {
+        try {
+            Iterator<EventSink> sinks = ServiceLoader.load(EventSink.class).iterator();
+            if (sinks.hasNext()) {
+                EventSink sink = sinks.next();
+                Log.info("Events", "Using event sink " + sink.getClass().getName());
+                return sink;
+            }
+        } catch (ServiceConfigurationError | LinkageError e) {
+            // 在 JDK 8 上运行 jfr 构建时实现类无法加载
+            Log.warn("Events", "Failed to load event sink: " + e);
+        }
+        return new NoOp();
+    }
+
+    private static final class NoOp implements EventSink {
+    }
+}
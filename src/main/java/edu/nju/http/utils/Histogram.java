@@ -0,0 +1,200 @@
+package edu.nju.http.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram - 无锁的对数分桶直方图，用于统计延迟分布
+ * <p>
+ * 小于 2^precision 的值各占一个桶；更大的值按所在的 2 的幂区间再均分为 2^precision 个桶，
+ * 相对误差不超过 2^-precision（默认 precision 为 4，即 1/16）。
+ * 记录与查询可在多个线程中同时进行，查询结果是近似的快照。
+ * 指定 decayEvery 时每记录这么多个值就将所有计数减半，使统计结果偏向近期的值。
+ */
+public class Histogram {
+    private static final int DEFAULT_PRECISION = 4;
+
+    private final int subBits;
+    private final int subBuckets;
+    private final int buckets;
+    private final AtomicLongArray counts;
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    private final AtomicLong recorded = new AtomicLong();
+    private final long decayEvery;
+
+    public Histogram() {
+        this(0);
+    }
+
+    /**
+     * @param decayEvery 每记录多少个值将计数减半，0 表示不衰减
+     */
+    public Histogram(long decayEvery) {
+        this(DEFAULT_PRECISION, decayEvery);
+    }
+
+    /**
+     * @param precision  每个 2 的幂区间细分的位数（1 ~ 16），越大越精确，占用的内存也越多
+     * @param decayEvery 每记录多少个值将计数减半，0 表示不衰减
+     */
+    public Histogram(int precision, long decayEvery) {
+        if (precision < 1 || precision > 16) {
+            throw new IllegalArgumentException("Precision must be between 1 and 16: " + precision);
+        }
+        this.subBits = precision;
+        this.subBuckets = 1 << precision;
+        this.buckets = (64 - precision + 1) * subBuckets;
+        this.counts = new AtomicLongArray(buckets);
+        this.decayEvery = decayEvery;
+    }
+
+    /**
+     * 记录一个值，负数按 0 记录
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        counts.incrementAndGet(indexOf(value));
+        sum.addAndGet(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // 重试
+        }
+        if (decayEvery > 0 && recorded.incrementAndGet() % decayEvery == 0) {
+            decay();
+        }
+    }
+
+    /**
+     * 将另一个直方图的记录合并进来，如汇总各线程各自记录的直方图
+     * @param other 精度相同的直方图
+     */
+    public void add(Histogram other) {
+        if (other.subBits != subBits) {
+            throw new IllegalArgumentException("Histogram precision mismatch");
+        }
+        for (int i = 0; i < buckets; i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        sum.addAndGet(other.sum.get());
+        long otherMax = other.max.get();
+        long current;
+        while (otherMax > (current = max.get()) && !max.compareAndSet(current, otherMax)) {
+            // 重试
+        }
+    }
+
+    /**
+     * 第 p 百分位数的近似值（所在桶的上界）
+     * @param p 0 ~ 100
+     * @return 近似值；没有记录时返回 0
+     */
+    public long percentile(double p) {
+        long[] snapshot = new long[buckets];
+        long total = 0;
+        for (int i = 0; i < buckets; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, p)) / 100));
+        long seen = 0;
+        for (int i = 0; i < buckets; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * 当前计数之和（衰减后的）
+     */
+    public long getCount() {
+        long total = 0;
+        for (int i = 0; i < buckets; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * 平均值，衰减后为近似值
+     */
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) sum.get() / count;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * 记录值之和，衰减后为近似值
+     */
+    public long getSum() {
+        return sum.get();
+    }
+
+    /**
+     * 不大于 value 的记录数（按桶的上界判断，误差与桶宽相同）
+     */
+    public long countAtMost(long value) {
+        long total = 0;
+        for (int i = 0; i < buckets && upperBound(i) <= value; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * 所有计数减半
+     */
+    public void decay() {
+        for (int i = 0; i < buckets; i++) {
+            long current;
+            do {
+                current = counts.get(i);
+            } while (current != 0 && !counts.compareAndSet(i, current, current / 2));
+        }
+        long current;
+        do {
+            current = sum.get();
+        } while (!sum.compareAndSet(current, current / 2));
+    }
+
+    public void reset() {
+        for (int i = 0; i < buckets; i++) {
+            counts.set(i, 0);
+        }
+        sum.set(0);
+        max.set(0);
+        recorded.set(0);
+    }
+
+    private int indexOf(long value) {
+        if (value < subBuckets) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - subBits;
+        int sub = (int) (value >>> shift) - subBuckets;
+        return (shift + 1) * subBuckets + sub;
+    }
+
+    private long upperBound(int index) {
+        if (index < subBuckets) {
+            return index;
+        }
+        int shift = index / subBuckets - 1;
+        int sub = index % subBuckets;
+        long upper = ((long) (subBuckets + sub + 1) << shift) - 1;
+        return upper < 0 ? Long.MAX_VALUE : upper;
+    }
+}
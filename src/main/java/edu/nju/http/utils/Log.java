@@ -1,42 +1,255 @@
 package edu.nju.http.utils;
 
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.SocketAddress;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.function.Supplier;
+
+/**
+ * Log - 日志工具
+ * <p>
+ * 默认同步输出到控制台。调用 {@link #initFile} 后改为异步写入日志目录下的滚动文件，调用线程只把记录放入环形缓冲区。
+ * <p>
+ * 带参数的重载以 {@code {}} 作为占位符，消息在级别未启用时不会拼接；异步模式下拼接在后台线程完成。
+ * 需要计算的消息可以用 Supplier 重载，级别未启用时不会调用。
+ */
 public class Log {
 
-    private static int level = 0;
+    // 表示没有参数，与 null 参数区分
+    static final Object NONE = new Object();
+
+    private static volatile int level = 0;
+    private static volatile LogFileWriter writer;
 
     public static void init(int logLevel) {
         level = logLevel;
     }
 
+    /**
+     * 启用异步文件日志，失败时保持控制台输出
+     * @param dir         日志目录
+     * @param name        日志文件名（不含扩展名）
+     * @param maxFileSize 单个文件的大小上限（字节）
+     * @param maxFiles    保留的历史文件个数
+     * @param bufferSize  环形缓冲区容量（条）
+     */
+    public static synchronized void initFile(int logLevel, Path dir, String name, long maxFileSize, int maxFiles, int bufferSize) {
+        level = logLevel;
+        if (logLevel <= 0 || writer != null) {
+            return;
+        }
+        try {
+            LogFileWriter created = new LogFileWriter(dir, name, maxFileSize, maxFiles, bufferSize);
+            Runtime.getRuntime().addShutdownHook(new Thread(created::close, "log-shutdown"));
+            writer = created;
+        } catch (IOException e) {
+            System.err.printf("[Log]: Failed to open log directory %s, logging to console: %s%n", dir, e.getMessage());
+        }
+    }
+
+    /**
+     * 因缓冲区已满而丢弃的记录数
+     */
+    public static long getDropped() {
+        LogFileWriter current = writer;
+        return current == null ? 0 : current.getDropped();
+    }
+
+    public static boolean isInfoEnabled() {
+        return level > 0;
+    }
+
+    public static boolean isDebugEnabled() {
+        return level > 1;
+    }
+
     public static void info(String logger,String message) {
-        logger = logger == null ? "INFO" : logger;
         if (level > 0)
-            System.out.printf("[%s]: %s%n", logger, message);
+            log("INFO", logger, message, NONE, NONE, null);
+    }
+
+    public static void info(String logger, String format, Object arg) {
+        if (level > 0)
+            log("INFO", logger, format, arg, NONE, null);
+    }
+
+    public static void info(String logger, String format, Object arg1, Object arg2) {
+        if (level > 0)
+            log("INFO", logger, format, arg1, arg2, null);
     }
 
     public static void warn(String logger,String message) {
-        logger = logger == null ? "WARN" : logger;
         if (level > 0)
-            System.out.printf("[%s]: %s%n", logger, message);
+            log("WARN", logger, message, NONE, NONE, null);
+    }
+
+    public static void warn(String logger, String format, Object arg) {
+        if (level > 0)
+            log("WARN", logger, format, arg, NONE, null);
+    }
+
+    public static void warn(String logger, String format, Object arg1, Object arg2) {
+        if (level > 0)
+            log("WARN", logger, format, arg1, arg2, null);
     }
 
     public static void error(String logger,String message) {
-        logger = logger == null ? "ERROR" : logger;
         if (level > 0)
-            System.err.printf("[%s]: %s%n", logger, message);
+            log("ERROR", logger, message, NONE, NONE, null);
     }
 
     public static void error(String logger ,String message, Throwable e) {
-        logger = logger == null ? "ERROR" : logger;
-        if (level > 0) {
-            System.err.printf("[%s]: %s%n", logger, message);
-            e.printStackTrace();
-        }
+        if (level > 0)
+            log("ERROR", logger, message, NONE, NONE, e);
     }
 
     public static void debug(String logger,String message) {
-        logger = logger == null ? "DEBUG" : logger;
-        if(level > 1)
-            System.out.printf("[%s]: %s%n", logger, message);
+        if (level > 1)
+            log("DEBUG", logger, message, NONE, NONE, null);
+    }
+
+    public static void debug(String logger, String format, Object arg) {
+        if (level > 1)
+            log("DEBUG", logger, format, arg, NONE, null);
+    }
+
+    public static void debug(String logger, String format, Object arg1, Object arg2) {
+        if (level > 1)
+            log("DEBUG", logger, format, arg1, arg2, null);
+    }
+
+    public static void debug(String logger, Supplier<String> message) {
+        if (level > 1)
+            log("DEBUG", logger, message.get(), NONE, NONE, null);
+    }
+
+    private static void log(String levelName, String logger, String message, Object arg1, Object arg2, Throwable e) {
+        logger = logger == null ? levelName : logger;
+        LogFileWriter current = writer;
+        if (current != null) {
+            long position = current.claim();
+            if (position >= 0) {
+                Record record = current.get(position);
+                record.time = System.currentTimeMillis();
+                record.level = levelName;
+                record.logger = logger;
+                record.message = message;
+                record.arg1 = snapshot(arg1);
+                record.arg2 = snapshot(arg2);
+                record.error = e;
+                current.publish(position);
+            }
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append('[').append(logger).append("]: ");
+        substitute(sb, message, arg1, arg2);
+        if ("ERROR".equals(levelName)) {
+            System.err.println(sb);
+            if (e != null) {
+                e.printStackTrace();
+            }
+        } else {
+            System.out.println(sb);
+        }
+    }
+
+    /**
+     * 依次用参数替换消息中的 {} 占位符，多余的占位符原样保留
+     */
+    static void substitute(StringBuilder sb, String message, Object arg1, Object arg2) {
+        if (message == null) {
+            sb.append("null");
+            return;
+        }
+        if (arg1 == NONE) {
+            sb.append(message);
+            return;
+        }
+        int from = 0;
+        int used = 0;
+        int index;
+        while (used < (arg2 == NONE ? 1 : 2) && (index = message.indexOf("{}", from)) >= 0) {
+            sb.append(message, from, index).append(used == 0 ? arg1 : arg2);
+            from = index + 2;
+            used++;
+        }
+        sb.append(message, from, message.length());
+    }
+
+    /**
+     * 参数在后台线程格式化：不可变的值直接保存，其他对象在调用线程上先转成字符串，避免格式化时对象已被修改
+     */
+    private static Object snapshot(Object arg) {
+        if (arg == null || arg == NONE || arg instanceof String || arg instanceof Number || arg instanceof Boolean
+                || arg instanceof Character || arg instanceof Enum || arg instanceof SocketAddress) {
+            return arg;
+        }
+        return String.valueOf(arg);
+    }
+
+    /**
+     * 缓冲区中的一条日志记录，循环使用
+     */
+    private static class Record {
+        long time;
+        String level;
+        String logger;
+        String message;
+        Object arg1;
+        Object arg2;
+        Throwable error;
+    }
+
+    /**
+     * 日志文件：每条记录一行，格式为 时间 级别 [模块] 消息，异常附带堆栈
+     */
+    private static class LogFileWriter extends AsyncLogWriter<Record> {
+        private static final DateTimeFormatter TIME_FORMAT =
+                DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+        LogFileWriter(Path dir, String name, long maxFileSize, int maxFiles, int bufferSize) throws IOException {
+            super(dir, name, maxFileSize, 0, maxFiles, bufferSize, 0, Record::new);
+        }
+
+        @Override
+        protected void format(Record record, StringBuilder out) {
+            appendPrefix(out, record.time, record.level, record.logger);
+            substitute(out, record.message, record.arg1, record.arg2);
+            out.append('\n');
+            if (record.error != null) {
+                StringWriter trace = new StringWriter();
+                record.error.printStackTrace(new PrintWriter(trace));
+                out.append(trace);
+            }
+        }
+
+        @Override
+        protected void clear(Record record) {
+            record.logger = null;
+            record.message = null;
+            record.arg1 = null;
+            record.arg2 = null;
+            record.error = null;
+        }
+
+        @Override
+        protected void formatDropped(long count, StringBuilder out) {
+            appendPrefix(out, System.currentTimeMillis(), "WARN", "Log");
+            out.append(count).append(" log records dropped, buffer full\n");
+        }
+
+        private static void appendPrefix(StringBuilder out, long time, String level, String logger) {
+            out.append(TIME_FORMAT.format(Instant.ofEpochMilli(time))).append(' ').append(level).append(' ');
+            if (level.length() < 5) {
+                out.append(' ');
+            }
+            out.append('[').append(logger).append("] ");
+        }
     }
 }
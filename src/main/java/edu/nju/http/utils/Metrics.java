@@ -0,0 +1,207 @@
+package edu.nju.http.utils;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Metrics - 进程内的指标注册表，以 Prometheus 文本格式导出
+ * <p>
+ * 计数器基于 LongAdder，多线程同时递增时分散到不同的单元上；耗时记录在对数分桶的 Histogram 中。
+ * 注册（查找或创建）会分配内存，应在初始化时完成并保存返回的对象；之后的记录不分配内存，可在生产环境中常开。
+ * 同名指标的多个标签组合属于同一个指标族，标签以 Prometheus 格式的字符串给出，如 {@code result="hit"}。
+ */
+public final class Metrics {
+    // 导出耗时直方图时使用的桶边界（秒）
+    private static final double[] TIMER_BOUNDS = {
+            0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+    private static final String[] TIMER_LABELS = new String[TIMER_BOUNDS.length];
+
+    static {
+        for (int i = 0; i < TIMER_BOUNDS.length; i++) {
+            TIMER_LABELS[i] = "le=\"" + BigDecimal.valueOf(TIMER_BOUNDS[i]).stripTrailingZeros().toPlainString() + "\"";
+        }
+    }
+
+    private static final Map<String, Family> FAMILIES = new ConcurrentSkipListMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * 查找或注册没有标签的计数器
+     */
+    public static Counter counter(String name, String help) {
+        return counter(name, help, "");
+    }
+
+    /**
+     * 查找或注册计数器
+     * @param labels Prometheus 格式的标签，如 {@code result="hit"}；没有标签时为空字符串
+     */
+    public static Counter counter(String name, String help, String labels) {
+        return (Counter) family(name, help, "counter").series.computeIfAbsent(labels, l -> new Counter());
+    }
+
+    /**
+     * 注册由回调给出当前值的指标，如连接数；同名同标签重复注册时替换旧的回调
+     */
+    public static void gauge(String name, String help, String labels, LongSupplier value) {
+        family(name, help, "gauge").series.put(labels, new Gauge(value));
+    }
+
+    /**
+     * 查找或注册耗时直方图
+     */
+    public static Timer timer(String name, String help, String labels) {
+        return (Timer) family(name, help, "histogram").series.computeIfAbsent(labels, l -> new Timer());
+    }
+
+    /**
+     * 以 Prometheus 文本格式（0.0.4）导出所有指标
+     */
+    public static String scrape() {
+        StringBuilder sb = new StringBuilder(4096);
+        for (Family family : FAMILIES.values()) {
+            sb.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            sb.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Metric> e : family.series.entrySet()) {
+                e.getValue().write(sb, family.name, e.getKey());
+            }
+        }
+        return sb.toString();
+    }
+
+    private static Family family(String name, String help, String type) {
+        Family family = FAMILIES.computeIfAbsent(name, n -> new Family(n, help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as " + family.type);
+        }
+        return family;
+    }
+
+    private static void sample(StringBuilder sb, String name, String labels, String extra, String value) {
+        sb.append(name);
+        if (!labels.isEmpty() || !extra.isEmpty()) {
+            sb.append('{').append(labels);
+            if (!labels.isEmpty() && !extra.isEmpty()) {
+                sb.append(',');
+            }
+            sb.append(extra).append('}');
+        }
+        sb.append(' ').append(value).append('\n');
+    }
+
+    /**
+     * 指标族：同名、同类型的一组标签组合
+     */
+    private static class Family {
+        private final String name;
+        private final String help;
+        private final String type;
+        private final Map<String, Metric> series = new ConcurrentSkipListMap<>();
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private interface Metric {
+        void write(StringBuilder sb, String name, String labels);
+    }
+
+    /**
+     * 单调递增的计数器
+     */
+    public static final class Counter implements Metric {
+        private final LongAdder value = new LongAdder();
+
+        private Counter() {
+        }
+
+        public void inc() {
+            value.increment();
+        }
+
+        public void add(long n) {
+            value.add(n);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+
+        @Override
+        public void write(StringBuilder sb, String name, String labels) {
+            sample(sb, name, labels, "", String.valueOf(value.sum()));
+        }
+    }
+
+    private static final class Gauge implements Metric {
+        private final LongSupplier value;
+
+        Gauge(LongSupplier value) {
+            this.value = value;
+        }
+
+        @Override
+        public void write(StringBuilder sb, String name, String labels) {
+            sample(sb, name, labels, "", String.valueOf(value.getAsLong()));
+        }
+    }
+
+    /**
+     * 耗时直方图，记录纳秒，导出为秒
+     */
+    public static final class Timer implements Metric {
+        private final Histogram histogram = new Histogram();
+
+        private Timer() {
+        }
+
+        /**
+         * 记录一次耗时
+         * @param nanos 纳秒
+         */
+        public void record(long nanos) {
+            histogram.record(nanos);
+        }
+
+        /**
+         * 记录从 startNanos（System.nanoTime()）到现在的耗时
+         */
+        public void recordSince(long startNanos) {
+            histogram.record(System.nanoTime() - startNanos);
+        }
+
+        public long getCount() {
+            return histogram.getCount();
+        }
+
+        /**
+         * 第 p 百分位数的近似值（纳秒）
+         */
+        public long percentile(double p) {
+            return histogram.percentile(p);
+        }
+
+        @Override
+        public void write(StringBuilder sb, String name, String labels) {
+            String bucket = name + "_bucket";
+            for (int i = 0; i < TIMER_BOUNDS.length; i++) {
+                long count = histogram.countAtMost((long) (TIMER_BOUNDS[i] * TimeUnit.SECONDS.toNanos(1)));
+                sample(sb, bucket, labels, TIMER_LABELS[i], String.valueOf(count));
+            }
+            long count = histogram.getCount();
+            sample(sb, bucket, labels, "le=\"+Inf\"", String.valueOf(count));
+            sample(sb, name + "_sum", labels, "", String.valueOf(histogram.getSum() / 1e9));
+            sample(sb, name + "_count", labels, "", String.valueOf(count));
+        }
+    }
+}
@@ -27,13 +27,13 @@ public class Searcher {
      * @throws FileNotFoundException 如果资源未找到
      */
     public static Path getResource(String relativePath) throws IllegalAccessException, FileNotFoundException {
-        Log.debug("Searcher", "Attempting to get resource: " + relativePath);
+        Log.debug("Searcher", "Attempting to get resource: {}", relativePath);
 
         Path resourcePath = Paths.get(RESOURCES_DIR, relativePath).normalize();
 
         if (Files.exists(resourcePath)) {
             if (resourcePath.startsWith(RESOURCES_DIR)) {
-                Log.debug("Searcher", "Resource found: " + resourcePath);
+                Log.debug("Searcher", "Resource found: {}", resourcePath);
                 return resourcePath;
             } else {
                 throw new IllegalAccessException();
@@ -51,11 +51,11 @@ public class Searcher {
      * @return 路径或 null
      */
     public static Path pathOf(String relativePath) {
-        Log.debug("Searcher", "Finding file: " + relativePath);
+        Log.debug("Searcher", "Finding file: {}", relativePath);
 
         Path filePath = Paths.get(BASE_DIR, relativePath).normalize();
         if (Files.exists(filePath)) {
-            Log.debug("Searcher", "File found: " + filePath);
+            Log.debug("Searcher", "File found: {}", filePath);
             return filePath;
         }
 
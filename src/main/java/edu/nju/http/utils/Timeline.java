@@ -0,0 +1,119 @@
+package edu.nju.http.utils;
+
+import java.util.Arrays;
+
+/**
+ * Timeline - 单个请求在服务端各阶段的时间点
+ * <p>
+ * 每个阶段记录一次 System.nanoTime()，未经过的阶段不记录。对象随连接复用，每个请求开始时 {@link #reset}，
+ * 记录时只写数组，不分配内存。相邻两个已记录阶段的差值即为该阶段的耗时，
+ * 例如 DISPATCHED 到 HANDLER_START 是在线程池中排队的时间。
+ */
+public final class Timeline {
+    /**
+     * 请求处理的阶段，按先后顺序排列
+     */
+    public enum Phase {
+        READ,            // 读到完整请求
+        PARSED,          // 请求解析完成
+        DISPATCHED,      // 交给处理线程
+        HANDLER_START,   // 开始处理
+        SESSION_CHECKED, // 会话校验完成
+        RESOURCE_LOADED, // 资源读入响应
+        HANDLER_END,     // 处理完成
+        FIRST_BYTE,      // 写出第一个字节
+        LAST_BYTE;       // 写出最后一个字节
+
+        private final String label = name().toLowerCase();
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final long UNSET = Long.MIN_VALUE;
+
+    private final long[] stamps = new long[PHASES.length];
+
+    public Timeline() {
+        reset();
+    }
+
+    /**
+     * 清除所有阶段
+     */
+    public void reset() {
+        Arrays.fill(stamps, UNSET);
+    }
+
+    /**
+     * 记录阶段的当前时间
+     */
+    public void mark(Phase phase) {
+        stamps[phase.ordinal()] = System.nanoTime();
+    }
+
+    /**
+     * 记录阶段的指定时间
+     * @param nanos System.nanoTime() 时间
+     */
+    public void mark(Phase phase, long nanos) {
+        stamps[phase.ordinal()] = nanos;
+    }
+
+    public boolean has(Phase phase) {
+        return stamps[phase.ordinal()] != UNSET;
+    }
+
+    /**
+     * 阶段的时间点，未记录时返回 Long.MIN_VALUE
+     */
+    public long get(Phase phase) {
+        return stamps[phase.ordinal()];
+    }
+
+    /**
+     * 两个阶段之间的纳秒数，任一阶段未记录时返回 -1
+     */
+    public long between(Phase from, Phase to) {
+        return has(from) && has(to) ? get(to) - get(from) : -1;
+    }
+
+    /**
+     * 以 “阶段 +距上一阶段的耗时” 的形式列出已记录的阶段，如
+     * {@code parsed +12us, dispatched +3us, handler_start +2.10ms, ... (total 6.80ms)}
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(160);
+        long first = UNSET;
+        long previous = UNSET;
+        long last = UNSET;
+        for (Phase phase : PHASES) {
+            long stamp = stamps[phase.ordinal()];
+            if (stamp == UNSET) {
+                continue;
+            }
+            if (previous == UNSET) {
+                first = stamp;
+                sb.append(phase.label);
+            } else {
+                sb.append(", ").append(phase.label).append(" +");
+                appendDuration(sb, stamp - previous);
+            }
+            previous = stamp;
+            last = stamp;
+        }
+        if (first != UNSET) {
+            sb.append(" (total ");
+            appendDuration(sb, last - first);
+            sb.append(')');
+        }
+        return sb.toString();
+    }
+
+    private static void appendDuration(StringBuilder sb, long nanos) {
+        if (nanos >= 1_000_000) {
+            sb.append(String.format("%.2fms", nanos / 1e6));
+        } else {
+            sb.append(nanos / 1000).append("us");
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package edu.nju.http.client;
+
+import edu.nju.http.message.HttpResponse;
+import edu.nju.http.message.constant.Header;
+import edu.nju.http.message.constant.Version;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * BodyHandlers：内存中的消息体按到达的数据分配，写文件时按 pause 暂停并完整写入
+ */
+class BodyHandlersTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void byteArrayDoesNotTrustHugeContentLength() throws Exception {
+        HttpResponse response = response("2000000000");
+        BodyHandler.Subscriber subscriber = BodyHandlers.ofByteArray().apply(response);
+        subscriber.onData(ByteBuffer.wrap("partial".getBytes()));
+        subscriber.onComplete(response);
+        assertEquals("partial", new String(response.getBody()));
+    }
+
+    @Test
+    void byteArrayGrowsToDeclaredLength() throws Exception {
+        byte[] body = random(300_000);
+        HttpResponse response = response(String.valueOf(body.length));
+        BodyHandler.Subscriber subscriber = BodyHandlers.ofByteArray().apply(response);
+        for (int offset = 0; offset < body.length; offset += 7000) {
+            subscriber.onData(ByteBuffer.wrap(body, offset, Math.min(7000, body.length - offset)));
+        }
+        subscriber.onComplete(response);
+        assertArrayEquals(body, response.getBody());
+    }
+
+    @Test
+    void byteArrayRejectsMoreThanContentLength() throws Exception {
+        HttpResponse response = response("3");
+        BodyHandler.Subscriber subscriber = BodyHandlers.ofByteArray().apply(response);
+        assertThrows(IOException.class, () -> subscriber.onData(ByteBuffer.wrap("four".getBytes())));
+    }
+
+    @Test
+    void fileWritesEveryChunkWhileHonouringPause() throws Exception {
+        byte[] body = random(3_000_000);
+        Path path = dir.resolve("out/body.bin");
+        HttpResponse response = response(String.valueOf(body.length));
+        BodyHandler.Subscriber subscriber = BodyHandlers.ofFile(path).apply(response);
+
+        for (int offset = 0; offset < body.length; offset += 16 * 1024) {
+            subscriber.onData(ByteBuffer.wrap(body, offset, Math.min(16 * 1024, body.length - offset)));
+            // 与事件循环一样，被要求暂停时等写文件线程赶上
+            CompletableFuture<Void> resume = subscriber.pause();
+            if (resume != null) {
+                resume.get(5, TimeUnit.SECONDS);
+            }
+        }
+        subscriber.onComplete(response);
+        subscriber.completion().get(5, TimeUnit.SECONDS);
+
+        assertEquals(String.valueOf(body.length), response.getHeaderVal(Header.Content_Length));
+        assertTrue(Arrays.equals(body, Files.readAllBytes(path)));
+    }
+
+    @Test
+    void fileIsRemovedOnError() throws Exception {
+        Path path = dir.resolve("body.bin");
+        HttpResponse response = response("10");
+        BodyHandler.Subscriber subscriber = BodyHandlers.ofFile(path).apply(response);
+        subscriber.onData(ByteBuffer.wrap("hello".getBytes()));
+        subscriber.onError(new IOException("connection reset"));
+        subscriber.completion().get(5, TimeUnit.SECONDS);
+        assertFalse(Files.exists(path));
+    }
+
+    private static HttpResponse response(String contentLength) {
+        HttpResponse response = new HttpResponse(Version.HTTP_1_1, 200);
+        response.setHeader(Header.Content_Length, contentLength);
+        return response;
+    }
+
+    private static byte[] random(int length) {
+        byte[] bytes = new byte[length];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,130 @@
+package edu.nju.http.client;
+
+import edu.nju.http.message.HttpRequest;
+import edu.nju.http.message.HttpResponse;
+import edu.nju.http.message.constant.Header;
+import edu.nju.http.message.constant.Method;
+import edu.nju.http.message.constant.Version;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Cache 的有效期计算、写入时解压、只读共享的命中结果，以及经磁盘层载入后保留的存入时刻
+ */
+class CacheTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void computesFreshnessFromMaxAgeAndAge() {
+        Cache cache = new Cache(100, 1 << 20);
+        cache.put(request("/fresh"), response("max-age=60", "hello"));
+        HttpResponse stale = response("max-age=60", "hello");
+        stale.setHeader(Header.Age, "120");
+        cache.put(request("/aged"), stale);
+
+        assertTrue(cache.lookup(request("/fresh")).isFresh());
+        assertFalse(cache.lookup(request("/aged")).isFresh());
+        assertNull(cache.lookup(request("/missing")));
+    }
+
+    @Test
+    void doesNotStoreNoStoreResponses() {
+        Cache cache = new Cache(100, 1 << 20);
+        assertFalse(cache.put(request("/secret"), response("no-store", "hello")));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void noCacheAndMustRevalidateDisableStaleUse() {
+        Cache cache = new Cache(100, 1 << 20);
+        cache.put(request("/a"), response("no-cache, stale-while-revalidate=60", "a"));
+        cache.put(request("/b"), response("max-age=0, stale-while-revalidate=60, stale-if-error=60", "b"));
+
+        Cache.Entry noCache = cache.lookup(request("/a"));
+        assertFalse(noCache.isFresh());
+        assertFalse(noCache.isStaleUsable());
+        Cache.Entry swr = cache.lookup(request("/b"));
+        assertTrue(swr.isStaleUsable());
+        assertTrue(swr.isUsableOnError());
+    }
+
+    @Test
+    void decodesOnceAndSharesReadOnlyResponse() throws IOException {
+        Cache cache = new Cache(100, 1 << 20);
+        HttpResponse response = response("max-age=60", null);
+        byte[] compressed = gzip("hello hello hello");
+        response.setHeader(Header.Content_Encoding, "gzip");
+        response.setBody(compressed, "text/plain");
+        cache.put(request("/gzip"), response);
+
+        HttpResponse first = cache.lookup(request("/gzip")).toResponse();
+        HttpResponse second = cache.lookup(request("/gzip")).toResponse();
+        assertEquals("hello hello hello", first.getBodyAsString());
+        assertNull(first.getHeaderVal(Header.Content_Encoding));
+        assertSame(first.getBody(), second.getBody());
+        assertThrows(UnsupportedOperationException.class, () -> first.setHeader(Header.Date, "now"));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedOverByteLimit() {
+        // 16 个分片，每片 1 KB
+        Cache cache = new Cache(1000, 16 * 1024);
+        String body = new String(new char[600]).replace('\0', 'x');
+        for (int i = 0; i < 200; i++) {
+            cache.put(request("/" + i), response("max-age=60", body));
+        }
+        assertTrue(cache.getBytes() <= 16 * 1024);
+        assertEquals(200 - cache.size(), cache.getEvictedCount());
+    }
+
+    @Test
+    void diskEntryKeepsStoredTimeAcrossReopen() throws Exception {
+        DiskCache disk = DiskCache.open(dir, 1 << 20);
+        Cache cache = new Cache(100, 1 << 20, disk);
+        cache.put(request("/disk"), response("max-age=60", "hello"));
+        Cache.Entry stored = cache.lookup(request("/disk"));
+        Thread.sleep(20);
+        disk.close();
+
+        Cache reopened = new Cache(100, 1 << 20, DiskCache.open(dir, 1 << 20));
+        Cache.Entry loaded = reopened.lookup(request("/disk"));
+        assertNotNull(loaded);
+        assertEquals("hello", loaded.toResponse().getBodyAsString());
+        assertEquals(stored.getStoredTime(), loaded.getStoredTime());
+        assertEquals(stored.getExpiryTime(), loaded.getExpiryTime());
+    }
+
+    private static HttpRequest request(String path) {
+        HttpRequest request = new HttpRequest();
+        request.setMethod(Method.GET);
+        request.setTarget("http://example.com" + path);
+        return request;
+    }
+
+    private static HttpResponse response(String cacheControl, String body) {
+        HttpResponse response = new HttpResponse(Version.HTTP_1_1, 200);
+        response.setHeader(Header.Cache_Control, cacheControl);
+        if (body != null) {
+            response.setBody(body.getBytes(StandardCharsets.UTF_8), "text/plain");
+        }
+        return response;
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,123 @@
+package edu.nju.http.client;
+
+import edu.nju.http.message.HttpResponse;
+import edu.nju.http.message.constant.Header;
+import edu.nju.http.message.constant.Version;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ContentDecoder 对 gzip / deflate 的分段解压、完整性校验与解压后长度上限
+ */
+class ContentDecoderTest {
+    private static final byte[] TEXT = text();
+
+    @Test
+    void decodesGzipFedOneByteAtATime() throws IOException {
+        assertArrayEquals(TEXT, decode(gzip(TEXT), true, 1, Long.MAX_VALUE));
+    }
+
+    @Test
+    void decodesConcatenatedGzipMembers() throws IOException {
+        byte[] first = gzip(Arrays.copyOf(TEXT, 1000));
+        byte[] second = gzip(Arrays.copyOfRange(TEXT, 1000, TEXT.length));
+        byte[] joined = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, joined, first.length, second.length);
+        assertArrayEquals(TEXT, decode(joined, true, 777, Long.MAX_VALUE));
+    }
+
+    @Test
+    void decodesZlibAndRawDeflate() throws IOException {
+        assertArrayEquals(TEXT, decode(deflate(TEXT, false), false, 100, Long.MAX_VALUE));
+        assertArrayEquals(TEXT, decode(deflate(TEXT, true), false, 100, Long.MAX_VALUE));
+    }
+
+    @Test
+    void rejectsTruncatedAndCorruptBodies() throws IOException {
+        byte[] compressed = gzip(TEXT);
+        assertThrows(ZipException.class,
+                () -> decode(Arrays.copyOf(compressed, compressed.length - 4), true, 512, Long.MAX_VALUE));
+
+        byte[] corrupt = compressed.clone();
+        corrupt[corrupt.length - 6] ^= 1; // CRC32
+        assertThrows(ZipException.class, () -> decode(corrupt, true, 512, Long.MAX_VALUE));
+        assertThrows(ZipException.class, () -> decode(TEXT, true, 512, Long.MAX_VALUE));
+    }
+
+    @Test
+    void failsWhenDecodedBodyExceedsLimit() throws IOException {
+        // 10 MB 的零压缩后只有约 10 KB
+        byte[] bomb = gzip(new byte[10 * 1024 * 1024]);
+        assertTrue(bomb.length < 64 * 1024);
+        ZipException e = assertThrows(ZipException.class, () -> decode(bomb, true, 4096, 1024 * 1024));
+        assertTrue(e.getMessage().contains("exceeds"));
+    }
+
+    @Test
+    void decodesInMemoryResponse() throws IOException {
+        HttpResponse response = new HttpResponse(Version.HTTP_1_1, 200);
+        response.setHeader(Header.Content_Encoding, "x-gzip");
+        response.setBody(gzip(TEXT), "text/plain");
+
+        HttpResponse decoded = ContentDecoder.decode(response);
+        assertArrayEquals(TEXT, decoded.getBody());
+        assertNull(decoded.getHeaderVal(Header.Content_Encoding));
+        assertEquals(String.valueOf(TEXT.length), decoded.getHeaderVal(Header.Content_Length));
+        assertEquals("text/plain", decoded.getHeaderVal(Header.Content_Type));
+    }
+
+    private static byte[] decode(byte[] compressed, boolean gzip, int chunk, long limit) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ContentDecoder decoder = new ContentDecoder(new BodyHandler.Subscriber() {
+            @Override
+            public void onData(ByteBuffer data) {
+                out.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            }
+
+            @Override
+            public void onComplete(HttpResponse response) {
+            }
+        }, gzip, limit);
+        for (int offset = 0; offset < compressed.length; offset += chunk) {
+            decoder.onData(ByteBuffer.wrap(compressed, offset, Math.min(chunk, compressed.length - offset)));
+        }
+        decoder.onComplete(new HttpResponse(Version.HTTP_1_1, 200));
+        return out.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] data, boolean raw) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, raw))) {
+            deflate.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] text() {
+        StringBuilder text = new StringBuilder();
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            text.append("line ").append(i).append(' ').append(random.nextInt(100)).append('\n');
+        }
+        return text.toString().getBytes();
+    }
+}
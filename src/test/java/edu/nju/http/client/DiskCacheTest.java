@@ -0,0 +1,104 @@
+package edu.nju.http.client;
+
+import edu.nju.http.message.HttpResponse;
+import edu.nju.http.message.constant.Header;
+import edu.nju.http.message.constant.Version;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * DiskCache 的目录锁、按大小淘汰与删除文件、重新打开后的载入与清理
+ */
+class DiskCacheTest {
+
+    @TempDir
+    Path dir;
+
+    private DiskCache disk;
+
+    @AfterEach
+    void close() {
+        if (disk != null) {
+            disk.close();
+        }
+    }
+
+    @Test
+    void directoryIsUsedByOneInstanceAtATime() {
+        disk = DiskCache.open(dir, 1 << 20);
+        assertNotNull(disk);
+        assertNull(DiskCache.open(dir, 1 << 20));
+
+        disk.close();
+        disk = DiskCache.open(dir, 1 << 20);
+        assertNotNull(disk);
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedAndDeletesItsFile() throws Exception {
+        disk = DiskCache.open(dir, 250);
+        disk.put("a", entry(100));
+        disk.put("b", entry(100));
+        awaitSize(2);
+        assertNotNull(disk.get("a"));
+
+        disk.put("c", entry(100));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (disk.get("c") == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNotNull(disk.get("c"));
+        assertNull(disk.get("b"));
+        assertNotNull(disk.get("a"));
+        assertEquals(200, disk.getBytes());
+        assertEquals(2, bodyFiles());
+    }
+
+    @Test
+    void reloadsIndexAndDropsEntriesWithMissingFiles() throws Exception {
+        disk = DiskCache.open(dir, 1 << 20);
+        disk.put("a", entry(10));
+        disk.put("b", entry(20));
+        awaitSize(2);
+        disk.close();
+
+        try (Stream<Path> files = Files.list(dir)) {
+            Path victim = files.filter(f -> f.toString().endsWith(".body")).findFirst().get();
+            Files.delete(victim);
+        }
+        Files.write(dir.resolve("orphan.body"), new byte[5]);
+
+        disk = DiskCache.open(dir, 1 << 20);
+        assertEquals(1, disk.size());
+        assertEquals(1, bodyFiles());
+    }
+
+    private void awaitSize(int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (disk.size() != size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(size, disk.size());
+    }
+
+    private long bodyFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(f -> f.toString().endsWith(".body")).count();
+        }
+    }
+
+    private static Cache.Entry entry(int length) {
+        HttpResponse response = new HttpResponse(Version.HTTP_1_1, 200);
+        response.setHeader(Header.Cache_Control, "max-age=60");
+        response.setBody(new byte[length], "application/octet-stream");
+        return new Cache.Entry(response);
+    }
+}
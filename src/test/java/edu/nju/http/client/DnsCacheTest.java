@@ -0,0 +1,148 @@
+package edu.nju.http.client;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * DnsCache 的有效期、失败缓存与地址交替排列，使用桩 Resolver，不访问网络
+ */
+class DnsCacheTest {
+    private static final long TIMEOUT = 5;
+
+    @Test
+    void cachesResultUntilTtlExpires() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        DnsCache cache = new DnsCache(host -> {
+            calls.incrementAndGet();
+            return new InetAddress[]{v4(10, 0, 0, 1)};
+        }, 200, 200);
+
+        List<InetAddress> first = get(cache.resolve("example.test"));
+        List<InetAddress> second = get(cache.resolve("example.test"));
+        assertEquals(first, second);
+        assertEquals(1, calls.get());
+
+        Thread.sleep(300);
+        get(cache.resolve("example.test"));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void cachesFailureForNegativeTtl() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        DnsCache cache = new DnsCache(host -> {
+            calls.incrementAndGet();
+            throw new UnknownHostException(host);
+        }, 60_000, 200);
+
+        assertUnknownHost(cache.resolve("missing.test"));
+        assertUnknownHost(cache.resolve("missing.test"));
+        assertEquals(1, calls.get());
+
+        Thread.sleep(300);
+        assertUnknownHost(cache.resolve("missing.test"));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void treatsResolverRuntimeExceptionAsUnknownHost() throws Exception {
+        DnsCache cache = new DnsCache(host -> {
+            throw new IllegalStateException("resolver broken");
+        }, 60_000, 60_000);
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> cache.resolve("broken.test").get(TIMEOUT, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof UnknownHostException);
+        assertTrue(e.getCause().getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    void invalidateForcesNewLookup() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        DnsCache cache = new DnsCache(host -> {
+            calls.incrementAndGet();
+            return new InetAddress[]{v4(10, 0, 0, 1)};
+        }, 60_000, 60_000);
+
+        get(cache.resolve("example.test"));
+        cache.invalidate("example.test");
+        get(cache.resolve("example.test"));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void concurrentLookupsShareOneResolution() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        DnsCache cache = new DnsCache(host -> {
+            calls.incrementAndGet();
+            try {
+                release.await(TIMEOUT, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new InetAddress[]{v4(10, 0, 0, 1)};
+        }, 60_000, 60_000);
+
+        CompletableFuture<List<InetAddress>> first = cache.resolve("slow.test");
+        CompletableFuture<List<InetAddress>> second = cache.resolve("slow.test");
+        release.countDown();
+        assertEquals(get(first), get(second));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void literalAddressSkipsResolver() throws Exception {
+        DnsCache cache = new DnsCache(host -> {
+            throw new AssertionError("resolver should not be called for " + host);
+        }, 60_000, 60_000);
+
+        assertEquals(Arrays.asList(v4(127, 0, 0, 1)), get(cache.resolve("127.0.0.1")));
+        assertEquals(1, get(cache.resolve("::1")).size());
+    }
+
+    @Test
+    void interleavesAddressFamiliesStartingWithFirst() throws Exception {
+        InetAddress a6 = v6(1), b6 = v6(2), c6 = v6(3);
+        InetAddress a4 = v4(10, 0, 0, 1), b4 = v4(10, 0, 0, 2);
+
+        assertEquals(Arrays.asList(a6, a4, b6, b4, c6),
+                DnsCache.interleave(new InetAddress[]{a6, b6, c6, a4, b4}));
+        assertEquals(Arrays.asList(a4, a6, b4, b6, c6),
+                DnsCache.interleave(new InetAddress[]{a4, b4, a6, b6, c6}));
+        assertEquals(Arrays.asList(a4, b4),
+                DnsCache.interleave(new InetAddress[]{a4, b4}));
+    }
+
+    private static List<InetAddress> get(CompletableFuture<List<InetAddress>> future) throws Exception {
+        return future.get(TIMEOUT, TimeUnit.SECONDS);
+    }
+
+    private static void assertUnknownHost(CompletableFuture<List<InetAddress>> future) {
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(TIMEOUT, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof UnknownHostException);
+    }
+
+    private static InetAddress v4(int a, int b, int c, int d) throws UnknownHostException {
+        return InetAddress.getByAddress(new byte[]{(byte) a, (byte) b, (byte) c, (byte) d});
+    }
+
+    private static InetAddress v6(int last) throws UnknownHostException {
+        byte[] address = new byte[16];
+        address[0] = 0x20;
+        address[1] = 0x01;
+        address[15] = (byte) last;
+        return InetAddress.getByAddress(address);
+    }
+}
@@ -0,0 +1,139 @@
+package edu.nju.http.client;
+
+import edu.nju.http.message.HttpRequest;
+import edu.nju.http.message.HttpResponse;
+import edu.nju.http.message.constant.Method;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * EventLoop 在长连接被服务端关闭时重发请求的规则，使用本机上的简单服务端
+ */
+class EventLoopTest {
+    private ServerSocket server;
+    private final Map<String, AtomicInteger> received = new ConcurrentHashMap<>();
+    // 首次收到这些请求时读完请求后直接关闭连接，不返回响应
+    private final Map<String, Boolean> dropOnce = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void start() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread thread = new Thread(() -> {
+            while (!server.isClosed()) {
+                try {
+                    Socket socket = server.accept();
+                    Thread worker = new Thread(() -> serve(socket), "test-server-connection");
+                    worker.setDaemon(true);
+                    worker.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }, "test-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        server.close();
+    }
+
+    @Test
+    void doesNotReplayWrittenPostOnReusedConnection() {
+        HttpClient client = new HttpClient();
+        dropOnce.put("POST /drop", true);
+
+        assertEquals(200, client.send("127.0.0.1", server.getLocalPort(), request(Method.GET, "/warm")).getStatusCode());
+        assertNull(client.send("127.0.0.1", server.getLocalPort(), request(Method.POST, "/drop")));
+        assertEquals(1, count("POST /drop"));
+        client.stop();
+    }
+
+    @Test
+    void replaysGetOnReusedConnection() {
+        HttpClient client = new HttpClient();
+        dropOnce.put("GET /drop", true);
+
+        assertEquals(200, client.send("127.0.0.1", server.getLocalPort(), request(Method.GET, "/warm")).getStatusCode());
+        HttpResponse response = client.send("127.0.0.1", server.getLocalPort(), request(Method.GET, "/drop"));
+        assertNotNull(response);
+        assertEquals(200, response.getStatusCode());
+        assertEquals(2, count("GET /drop"));
+        client.stop();
+    }
+
+    private HttpRequest request(String method, String path) {
+        HttpRequest request = new HttpRequest();
+        request.setMethod(method);
+        request.setTarget("http://127.0.0.1:" + server.getLocalPort() + path);
+        request.setHeader("Connection", "keep-alive");
+        if (Method.POST.equals(method)) {
+            request.setBody("a=1");
+        }
+        return request;
+    }
+
+    private int count(String key) {
+        AtomicInteger counter = received.get(key);
+        return counter == null ? 0 : counter.get();
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket) {
+            InputStream in = s.getInputStream();
+            OutputStream out = s.getOutputStream();
+            String head;
+            while ((head = readHead(in)) != null) {
+                String[] start = head.substring(0, head.indexOf("\r\n")).split(" ");
+                int length = 0;
+                for (String line : head.split("\r\n")) {
+                    if (line.toLowerCase().startsWith("content-length:")) {
+                        length = Integer.parseInt(line.substring(15).trim());
+                    }
+                }
+                for (int i = 0; i < length; i++) {
+                    in.read();
+                }
+                String key = start[0] + " " + start[1];
+                received.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+                if (dropOnce.remove(key) != null) {
+                    return;
+                }
+                out.write(("HTTP/1.1 200 OK\r\nContent-Length: 2\r\nConnection: keep-alive\r\n\r\nok")
+                        .getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+            }
+        } catch (IOException ignored) {
+            // 客户端关闭连接
+        }
+    }
+
+    private static String readHead(InputStream in) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            head.write(b);
+            String s = head.toString("US-ASCII");
+            if (s.endsWith("\r\n\r\n")) {
+                return s;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,203 @@
+package edu.nju.http.client;
+
+import edu.nju.http.message.HttpRequest;
+import edu.nju.http.message.HttpResponse;
+import edu.nju.http.message.constant.Method;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * HttpClient 的请求合并、stale-while-revalidate 与 stale-if-error，使用本机上的简单服务端
+ */
+class HttpClientTest {
+    private ServerSocket server;
+    private HttpClient client;
+    private final Map<String, AtomicInteger> hits = new ConcurrentHashMap<>();
+    // 路径 -> 按第几次请求（从 1 开始）生成完整的响应报文
+    private final Map<String, IntFunction<String>> routes = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void start() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread thread = new Thread(() -> {
+            while (!server.isClosed()) {
+                try {
+                    Socket socket = server.accept();
+                    Thread worker = new Thread(() -> serve(socket), "test-server-connection");
+                    worker.setDaemon(true);
+                    worker.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }, "test-server");
+        thread.setDaemon(true);
+        thread.start();
+        client = new HttpClient();
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        client.stop();
+        server.close();
+    }
+
+    @Test
+    void coalescesConcurrentIdenticalGets() throws Exception {
+        routes.put("/slow", n -> {
+            sleep(300);
+            return response("Cache-Control: no-store\r\n", "body");
+        });
+
+        List<CompletableFuture<HttpResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(client.sendAsync("127.0.0.1", server.getLocalPort(), get("/slow")));
+        }
+        List<HttpResponse> responses = new ArrayList<>();
+        for (CompletableFuture<HttpResponse> future : futures) {
+            responses.add(future.get(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(1, hits("/slow"));
+        for (HttpResponse response : responses) {
+            assertEquals(200, response.getStatusCode());
+            assertEquals("body", response.getBodyAsString());
+        }
+        // 每个调用方的头部相互独立
+        responses.get(1).setHeader("X-Test", "1");
+        assertNull(responses.get(2).getHeaderVal("X-Test"));
+    }
+
+    @Test
+    void doesNotCoalesceAfterCompletion() {
+        routes.put("/plain", n -> response("Cache-Control: no-store\r\n", "v" + n));
+
+        assertEquals("v1", client.send("127.0.0.1", server.getLocalPort(), get("/plain")).getBodyAsString());
+        assertEquals("v2", client.send("127.0.0.1", server.getLocalPort(), get("/plain")).getBodyAsString());
+        assertEquals(2, hits("/plain"));
+    }
+
+    @Test
+    void servesStaleWhileRevalidatingInBackground() throws Exception {
+        routes.put("/swr", n -> response("Cache-Control: max-age=1, stale-while-revalidate=30\r\n", "v" + n));
+        int port = server.getLocalPort();
+
+        assertEquals("v1", client.send("127.0.0.1", port, get("/swr")).getBodyAsString());
+        assertEquals("v1", client.send("127.0.0.1", port, get("/swr")).getBodyAsString());
+        assertEquals(1, hits("/swr"));
+
+        Thread.sleep(1100);
+        // 过期后先返回旧内容，后台再取新内容
+        assertEquals("v1", client.send("127.0.0.1", port, get("/swr")).getBodyAsString());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (hits("/swr") < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        assertEquals("v2", client.send("127.0.0.1", port, get("/swr")).getBodyAsString());
+        assertEquals(2, hits("/swr"));
+    }
+
+    @Test
+    void servesStaleOnServerError() throws Exception {
+        routes.put("/sie", n -> n == 1
+                ? response("Cache-Control: max-age=1, stale-if-error=30\r\n", "cached")
+                : "HTTP/1.1 500 Internal Server Error\r\nContent-Length: 0\r\n\r\n");
+        int port = server.getLocalPort();
+
+        assertEquals("cached", client.send("127.0.0.1", port, get("/sie")).getBodyAsString());
+        Thread.sleep(1100);
+        HttpResponse response = client.send("127.0.0.1", port, get("/sie"));
+        assertEquals(200, response.getStatusCode());
+        assertEquals("cached", response.getBodyAsString());
+        assertEquals(2, hits("/sie"));
+    }
+
+    @Test
+    void mustRevalidateDisablesStaleUse() throws Exception {
+        routes.put("/strict", n -> response(
+                "Cache-Control: max-age=1, must-revalidate, stale-while-revalidate=30\r\n", "v" + n));
+        int port = server.getLocalPort();
+
+        assertEquals("v1", client.send("127.0.0.1", port, get("/strict")).getBodyAsString());
+        Thread.sleep(1100);
+        assertEquals("v2", client.send("127.0.0.1", port, get("/strict")).getBodyAsString());
+    }
+
+    private HttpRequest get(String path) {
+        HttpRequest request = new HttpRequest();
+        request.setMethod(Method.GET);
+        request.setTarget("http://127.0.0.1:" + server.getLocalPort() + path);
+        request.setHeader("Connection", "keep-alive");
+        return request;
+    }
+
+    private int hits(String path) {
+        AtomicInteger counter = hits.get(path);
+        return counter == null ? 0 : counter.get();
+    }
+
+    private static String response(String headers, String body) {
+        return "HTTP/1.1 200 OK\r\nContent-Length: " + body.length() + "\r\n" + headers + "\r\n" + body;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket) {
+            InputStream in = s.getInputStream();
+            OutputStream out = s.getOutputStream();
+            String head;
+            while ((head = readHead(in)) != null) {
+                String path = head.substring(0, head.indexOf("\r\n")).split(" ")[1];
+                int n = hits.computeIfAbsent(path, k -> new AtomicInteger()).incrementAndGet();
+                IntFunction<String> route = routes.get(path);
+                String response = route != null ? route.apply(n)
+                        : "HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\n\r\n";
+                out.write(response.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        } catch (IOException ignored) {
+            // 客户端关闭连接
+        }
+    }
+
+    private static String readHead(InputStream in) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            head.write(b);
+            String s = head.toString("US-ASCII");
+            if (s.endsWith("\r\n\r\n")) {
+                return s;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,56 @@
+package edu.nju.http.client;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RetryBudget 的令牌上限、按请求存入与按时间补充
+ */
+class RetryBudgetTest {
+
+    @Test
+    void startsFullAndStopsAtCapacity() {
+        // 容量为 0.5 * 100 = 50
+        RetryBudget budget = new RetryBudget(0.5, 0);
+        int allowed = 0;
+        while (budget.tryWithdraw()) {
+            allowed++;
+        }
+        assertEquals(50, allowed);
+    }
+
+    @Test
+    void depositsEarnRetriesAtConfiguredRatio() {
+        RetryBudget budget = new RetryBudget(0.1, 0);
+        while (budget.tryWithdraw()) {
+            // 耗尽初始令牌
+        }
+        for (int i = 0; i < 9; i++) {
+            budget.deposit();
+        }
+        assertFalse(budget.tryWithdraw());
+        budget.deposit();
+        assertTrue(budget.tryWithdraw());
+        assertFalse(budget.tryWithdraw());
+    }
+
+    @Test
+    void refillsOverTime() throws Exception {
+        RetryBudget budget = new RetryBudget(0, 20);
+        while (budget.tryWithdraw()) {
+            // 耗尽初始令牌
+        }
+        Thread.sleep(200);
+        assertTrue(budget.tryWithdraw());
+    }
+
+    @Test
+    void keepsAtLeastOneTokenOfCapacity() {
+        RetryBudget budget = new RetryBudget(0, 0);
+        assertTrue(budget.tryWithdraw());
+        assertFalse(budget.tryWithdraw());
+        budget.deposit();
+        assertFalse(budget.tryWithdraw());
+    }
+}
@@ -0,0 +1,54 @@
+package edu.nju.http.message;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CacheControl 对指令名大小写、带引号的值、重复与非法值的解析
+ */
+class CacheControlTest {
+
+    @Test
+    void parsesDirectivesCaseInsensitively() {
+        CacheControl cacheControl = CacheControl.parse("Public, MAX-AGE=60, s-maxage = 120, must-revalidate");
+        assertTrue(cacheControl.isPublic());
+        assertTrue(cacheControl.isMustRevalidate());
+        assertEquals(60, cacheControl.getMaxAge());
+        assertEquals(120, cacheControl.getSMaxAge());
+        assertFalse(cacheControl.isNoStore());
+    }
+
+    @Test
+    void parsesQuotedValuesContainingCommas() {
+        CacheControl cacheControl = CacheControl.parse("no-cache=\"Set-Cookie, X-Token\", max-age=\"30\", private");
+        assertTrue(cacheControl.isNoCache());
+        assertTrue(cacheControl.isPrivate());
+        assertEquals(30, cacheControl.getMaxAge());
+    }
+
+    @Test
+    void keepsFirstOfDuplicateDirectives() {
+        assertEquals(10, CacheControl.parse("max-age=10, max-age=20").getMaxAge());
+    }
+
+    @Test
+    void treatsInvalidSecondsAsAbsent() {
+        assertEquals(-1, CacheControl.parse("max-age=abc").getMaxAge());
+        assertEquals(-1, CacheControl.parse("max-age=-5").getMaxAge());
+        assertEquals(-1, CacheControl.parse("max-age").getMaxAge());
+        assertEquals(-1, CacheControl.parse("max-age=").getMaxAge());
+    }
+
+    @Test
+    void treatsOverflowingSecondsAsUnbounded() {
+        assertEquals(Long.MAX_VALUE / 1000, CacheControl.parse("max-age=99999999999999999999").getMaxAge());
+    }
+
+    @Test
+    void handlesEmptyAndNullValues() {
+        assertFalse(CacheControl.parse(null).isNoStore());
+        assertFalse(CacheControl.parse("  ").has("max-age"));
+        assertTrue(CacheControl.parse(",,no-store,,").isNoStore());
+    }
+}
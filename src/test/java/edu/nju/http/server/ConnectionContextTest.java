@@ -0,0 +1,78 @@
+package edu.nju.http.server;
+
+import edu.nju.http.message.HttpRequest;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ConnectionContext 按请求头与 Content-Length 切分请求
+ */
+class ConnectionContextTest {
+
+    @Test
+    void waitsForRestOfSplitRequest() throws Exception {
+        ConnectionContext context = context();
+        append(context, "POST /login HTTP/1.1\r\nHost: a\r\nContent-");
+        assertNull(context.nextRequest());
+        append(context, "Length: 7\r\n\r\nuser");
+        assertNull(context.nextRequest());
+        append(context, "=ab");
+
+        HttpRequest request = context.nextRequest();
+        assertNotNull(request);
+        assertEquals("POST", request.getMethod());
+        assertEquals("user=ab", request.getBodyAsString());
+        assertFalse(context.hasBuffered());
+    }
+
+    @Test
+    void splitsPipelinedRequestsInOrder() throws Exception {
+        ConnectionContext context = context();
+        append(context, "GET /a HTTP/1.1\r\nHost: a\r\n\r\n"
+                + "POST /b HTTP/1.1\r\nContent-Length: 2\r\n\r\nok"
+                + "GET /c HTTP/1.1\r\n");
+
+        assertEquals("/a", context.nextRequest().getUri());
+        HttpRequest second = context.nextRequest();
+        assertEquals("/b", second.getUri());
+        assertEquals("ok", second.getBodyAsString());
+        assertNull(context.nextRequest());
+        assertTrue(context.hasBuffered());
+
+        append(context, "\r\n");
+        assertEquals("/c", context.nextRequest().getUri());
+        assertFalse(context.hasBuffered());
+    }
+
+    @Test
+    void rejectsInvalidContentLength() {
+        ConnectionContext context = context();
+        append(context, "POST / HTTP/1.1\r\nContent-Length: -1\r\n\r\n");
+        assertThrows(IOException.class, context::nextRequest);
+    }
+
+    @Test
+    void rejectsOversizedHeader() {
+        ConnectionContext context = context();
+        StringBuilder header = new StringBuilder("GET / HTTP/1.1\r\n");
+        while (header.length() <= 64 * 1024) {
+            header.append("X-Filler: 0123456789abcdef0123456789abcdef\r\n");
+        }
+        append(context, header.toString());
+        assertThrows(IOException.class, context::nextRequest);
+    }
+
+    private static ConnectionContext context() {
+        return new ConnectionContext(new InetSocketAddress("127.0.0.1", 12345));
+    }
+
+    private static void append(ConnectionContext context, String data) {
+        context.append(ByteBuffer.wrap(data.getBytes(StandardCharsets.US_ASCII)));
+    }
+}
@@ -0,0 +1,123 @@
+package edu.nju.http.server;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * DataStore 的日志重放与关闭：末尾写了一半的记录被截掉，中间损坏的记录被跳过，关闭后的追加立即失败
+ */
+class DataStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void truncatesTornTail() throws Exception {
+        String complete = "{\"u\":\"a\"}\n{\"u\":\"b\"}\n";
+        write(complete + "{\"u\":\"c");
+
+        assertEquals(Arrays.asList("a", "b"), recover());
+        assertEquals(complete, read());
+    }
+
+    @Test
+    void truncatesUnparsableLastLine() throws Exception {
+        String complete = "{\"u\":\"a\"}\n";
+        write(complete + "{\"u\":\n");
+
+        assertEquals(Arrays.asList("a"), recover());
+        assertEquals(complete, read());
+    }
+
+    @Test
+    void skipsCorruptRecordInTheMiddle() throws Exception {
+        String wal = "{\"u\":\"a\"}\nnot json\n{\"u\":\"b\"}\n";
+        write(wal);
+
+        assertEquals(Arrays.asList("a", "b"), recover());
+        assertEquals(wal, read());
+    }
+
+    @Test
+    void appendsAfterRecoveredRecords() throws Exception {
+        write("{\"u\":\"a\"}\n{\"u\":\"b");
+
+        DataStore store = new DataStore(dir, 1000, TimeUnit.HOURS.toMillis(1));
+        store.recover(record -> { });
+        store.start(sink -> { });
+        store.append(new JSONObject().put("u", "c")).get(5, TimeUnit.SECONDS);
+        store.close();
+
+        assertEquals(Arrays.asList("a", "c"), recover());
+    }
+
+    @Test
+    void closeFlushesQueuedRecords() throws Exception {
+        DataStore store = new DataStore(dir, 1000, TimeUnit.HOURS.toMillis(1));
+        store.recover(record -> { });
+        store.start(sink -> { });
+        for (int i = 0; i < 100; i++) {
+            store.append(new JSONObject().put("u", "u" + i));
+        }
+        store.close();
+
+        assertEquals(100, recover().size());
+    }
+
+    @Test
+    void appendAfterCloseFailsInsteadOfHanging() throws Exception {
+        DataStore store = new DataStore(dir, 1000, TimeUnit.HOURS.toMillis(1));
+        store.recover(record -> { });
+        store.start(sink -> { });
+        store.close();
+
+        CompletableFuture<Void> future = store.append(new JSONObject().put("u", "late"));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IOException);
+    }
+
+    @Test
+    void runsCommitCallbackOnWriterBeforeCompletion() throws Exception {
+        DataStore store = new DataStore(dir, 1000, TimeUnit.HOURS.toMillis(1));
+        store.recover(record -> { });
+        store.start(sink -> { });
+        AtomicBoolean committed = new AtomicBoolean();
+        AtomicBoolean seenByFuture = new AtomicBoolean();
+
+        store.append(new JSONObject().put("u", "a"), () -> committed.set(true))
+                .thenRun(() -> seenByFuture.set(committed.get()))
+                .get(5, TimeUnit.SECONDS);
+        store.close();
+
+        assertTrue(seenByFuture.get());
+    }
+
+    private List<String> recover() throws Exception {
+        List<String> users = new ArrayList<>();
+        new DataStore(dir, 1000, TimeUnit.HOURS.toMillis(1)).recover(record -> users.add(record.getString("u")));
+        return users;
+    }
+
+    private void write(String wal) throws Exception {
+        Files.write(dir.resolve("wal.log"), wal.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String read() throws Exception {
+        return new String(Files.readAllBytes(dir.resolve("wal.log")), StandardCharsets.UTF_8);
+    }
+}
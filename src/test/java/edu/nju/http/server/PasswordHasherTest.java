@@ -0,0 +1,55 @@
+package edu.nju.http.server;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * PasswordHasher 的 PBKDF2 校验，以及旧明文记录与低迭代次数记录的升级判断
+ */
+class PasswordHasherTest {
+
+    @Test
+    void verifiesHashedPassword() {
+        String stored = PasswordHasher.hash("secret");
+        assertTrue(stored.startsWith("pbkdf2$" + Config.PBKDF2_ITERATIONS + "$"));
+        assertTrue(PasswordHasher.verify("secret", stored));
+        assertFalse(PasswordHasher.verify("Secret", stored));
+        assertFalse(PasswordHasher.needsRehash(stored));
+    }
+
+    @Test
+    void saltsEveryHash() {
+        assertNotEquals(PasswordHasher.hash("secret"), PasswordHasher.hash("secret"));
+    }
+
+    @Test
+    void rejectsMissingOrMalformedRecord() {
+        assertFalse(PasswordHasher.verify("secret", null));
+        assertFalse(PasswordHasher.verify("secret", "pbkdf2$1000$c2FsdA=="));
+    }
+
+    @Test
+    void acceptsLegacyPlaintextAndAsksForRehash() {
+        assertTrue(PasswordHasher.verify("secret", "secret"));
+        assertFalse(PasswordHasher.verify("other", "secret"));
+        assertTrue(PasswordHasher.needsRehash("secret"));
+    }
+
+    @Test
+    void asksForRehashBelowConfiguredIterations() throws Exception {
+        int iterations = Math.max(1, Config.PBKDF2_ITERATIONS / 10);
+        byte[] salt = new byte[16];
+        byte[] hash = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256")
+                .generateSecret(new PBEKeySpec("secret".toCharArray(), salt, iterations, 256)).getEncoded();
+        Base64.Encoder encoder = Base64.getEncoder();
+        String stored = "pbkdf2$" + iterations + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+
+        assertTrue(PasswordHasher.verify("secret", stored));
+        assertTrue(PasswordHasher.needsRehash(stored));
+    }
+}
@@ -0,0 +1,48 @@
+package edu.nju.http.server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RateLimiter 的突发容量、按键隔离与键数上限
+ */
+class RateLimiterTest {
+
+    @Test
+    void allowsBurstThenRejects() {
+        RateLimiter limiter = new RateLimiter(1, 5, 100);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.acquire("a"), "request " + i);
+        }
+        long wait = limiter.acquire("a");
+        assertTrue(wait > 0);
+        assertTrue(wait <= 1_000_000_000L);
+    }
+
+    @Test
+    void refillsAfterInterval() throws Exception {
+        RateLimiter limiter = new RateLimiter(20, 1, 100);
+        assertEquals(0, limiter.acquire("a"));
+        assertTrue(limiter.acquire("a") > 0);
+        Thread.sleep(100);
+        assertEquals(0, limiter.acquire("a"));
+    }
+
+    @Test
+    void keysAreIndependent() {
+        RateLimiter limiter = new RateLimiter(1, 1, 100);
+        assertEquals(0, limiter.acquire("a"));
+        assertTrue(limiter.acquire("a") > 0);
+        assertEquals(0, limiter.acquire("b"));
+    }
+
+    @Test
+    void boundsTrackedKeys() {
+        RateLimiter limiter = new RateLimiter(1, 1, 64);
+        for (int i = 0; i < 1000; i++) {
+            limiter.acquire("k" + i);
+        }
+        assertTrue(limiter.size() <= 64);
+    }
+}
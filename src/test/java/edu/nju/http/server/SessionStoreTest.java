@@ -0,0 +1,134 @@
+package edu.nju.http.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SessionStore 的查找、过期、容量淘汰，以及通知持久化的回调
+ */
+class SessionStoreTest {
+    private final List<String> renewed = new ArrayList<>();
+    private final List<String> evicted = new ArrayList<>();
+    private final SessionStore.Listener listener = new SessionStore.Listener() {
+        @Override
+        public synchronized void renewed(SessionStore.Session session) {
+            renewed.add(session.getId());
+        }
+
+        @Override
+        public synchronized void evicted(SessionStore.Session session) {
+            evicted.add(session.getId());
+        }
+    };
+
+    private SessionStore store;
+
+    @AfterEach
+    void shutdown() {
+        if (store != null) {
+            store.shutdown();
+        }
+    }
+
+    @Test
+    void findsAndRemovesSession() {
+        store = new SessionStore(60_000, 100, false);
+        SessionStore.Session session = store.create("alice");
+
+        assertEquals("alice", store.get(session.getId()));
+        assertEquals(1, store.size());
+        assertTrue(store.remove(session.getId()));
+        assertFalse(store.remove(session.getId()));
+        assertNull(store.get(session.getId()));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void expiresSessionOnLookup() throws Exception {
+        store = new SessionStore(100, 100, false);
+        SessionStore.Session session = store.create("alice");
+
+        Thread.sleep(200);
+        assertNull(store.get(session.getId()));
+        assertEquals(0, store.size());
+        assertEquals(1, store.getExpiredCount());
+    }
+
+    @Test
+    void slidingLookupExtendsExpiry() throws Exception {
+        store = new SessionStore(300, 100, true);
+        SessionStore.Session session = store.create("alice");
+
+        for (int i = 0; i < 5; i++) {
+            Thread.sleep(150);
+            assertEquals("alice", store.get(session.getId()));
+        }
+    }
+
+    @Test
+    void sweeperRemovesExpiredSessions() throws Exception {
+        store = new SessionStore(100, 100, false);
+        for (int i = 0; i < 10; i++) {
+            store.create("u" + i);
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (store.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        assertEquals(0, store.size());
+        assertEquals(10, store.getExpiredCount());
+    }
+
+    @Test
+    void notifiesEvictionOutsideCapacity() {
+        // 16 个分片，每片容量 1
+        store = new SessionStore(60_000, 16, false, listener);
+        for (int i = 0; i < 200; i++) {
+            store.create("u" + i);
+        }
+
+        assertTrue(store.size() <= 16);
+        assertEquals(200 - store.size(), evicted.size());
+        assertEquals(evicted.size(), store.getEvictedCount());
+        for (String id : evicted) {
+            assertNull(store.get(id));
+        }
+    }
+
+    @Test
+    void notifiesRenewalOnlyAfterExpiryMovesByAStep() throws Exception {
+        // 有效期 8 秒，顺延超过 1 秒才通知
+        store = new SessionStore(8_000, 100, true, listener);
+        SessionStore.Session session = store.create("alice");
+
+        assertEquals("alice", store.get(session.getId()));
+        assertTrue(renewed.isEmpty());
+
+        Thread.sleep(1100);
+        assertEquals("alice", store.get(session.getId()));
+        assertEquals(1, renewed.size());
+        assertEquals("alice", store.get(session.getId()));
+        assertEquals(1, renewed.size());
+    }
+
+    @Test
+    void restoreExtendsExistingSessionAndDropsExpired() {
+        store = new SessionStore(60_000, 100, false, listener);
+        long now = System.currentTimeMillis();
+
+        store.restore("s1", "alice", now - 1000);
+        assertNull(store.get("s1"));
+
+        // 重放时登录记录已过期，但之后的顺延记录仍有效
+        store.restore("s2", "bob", now + 500);
+        store.restore("s2", "bob", now + 60_000);
+        assertEquals("bob", store.get("s2"));
+        store.forEach(session -> assertEquals(now + 60_000, session.getExpiryTime()));
+    }
+}
@@ -0,0 +1,75 @@
+package edu.nju.http.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SessionToken 的签名校验、过期、篡改与撤销
+ */
+class SessionTokenTest {
+    private static final String SECRET = Base64.getEncoder().encodeToString(
+            "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.US_ASCII));
+
+    private final SessionToken tokens = new SessionToken(SECRET);
+
+    @Test
+    void verifiesIssuedToken() {
+        String token = tokens.issue("alice", future());
+        assertEquals("alice", tokens.verify(token));
+    }
+
+    @Test
+    void sharedSecretVerifiesAcrossInstances() {
+        String token = tokens.issue("alice", future());
+        assertEquals("alice", new SessionToken(SECRET).verify(token));
+        assertNull(new SessionToken("").verify(token));
+    }
+
+    @Test
+    void rejectsExpiredToken() {
+        assertNull(tokens.verify(tokens.issue("alice", System.currentTimeMillis() - 1)));
+    }
+
+    @Test
+    void rejectsTamperedToken() {
+        String token = tokens.issue("alice", future());
+        int first = token.indexOf('.');
+        int last = token.lastIndexOf('.');
+
+        String otherUser = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString("mallory".getBytes(StandardCharsets.UTF_8)) + token.substring(first);
+        String extended = token.substring(0, first + 1) + (future() + 1_000_000) + token.substring(last);
+        char c = token.charAt(token.length() - 1);
+        String badSignature = token.substring(0, token.length() - 1) + (c == 'A' ? 'B' : 'A');
+
+        assertNull(tokens.verify(otherUser));
+        assertNull(tokens.verify(extended));
+        assertNull(tokens.verify(badSignature));
+        assertNull(tokens.verify("no-dots"));
+        assertNull(tokens.verify(token.substring(0, last)));
+    }
+
+    @Test
+    void rejectsRevokedToken() {
+        String token = tokens.issue("alice", future());
+        assertTrue(tokens.revoke(token));
+        assertNull(tokens.verify(token));
+        assertFalse(tokens.revoke(token));
+    }
+
+    @Test
+    void fallsBackToRandomKeyOnMalformedSecret() {
+        SessionToken fallback = new SessionToken("not%base64!");
+        String token = fallback.issue("alice", future());
+        assertEquals("alice", fallback.verify(token));
+        assertNull(tokens.verify(token));
+    }
+
+    private static long future() {
+        return System.currentTimeMillis() + 60_000;
+    }
+}
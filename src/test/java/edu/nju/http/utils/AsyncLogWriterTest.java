@@ -0,0 +1,128 @@
+package edu.nju.http.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * AsyncLogWriter 的多线程写入、缓冲区满时丢弃与文件滚动
+ */
+class AsyncLogWriterTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void writesEveryRecordFromConcurrentProducers() throws Exception {
+        TextWriter writer = new TextWriter(dir, 1 << 20, 2, 1024);
+        Thread[] producers = new Thread[4];
+        for (int t = 0; t < producers.length; t++) {
+            int id = t;
+            producers[t] = new Thread(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    // 缓冲区满时稍后重试，本测试不允许丢弃
+                    while (!writer.append(id + "-" + i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            producers[t].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        writer.close();
+
+        List<String> lines = Files.readAllLines(dir.resolve("test.log"), StandardCharsets.UTF_8);
+        // 重试前被丢弃的记录只留下丢弃提示
+        lines.removeIf(line -> line.startsWith("dropped "));
+        assertEquals(8000, lines.size());
+        assertEquals(8000, new HashSet<>(lines).size());
+    }
+
+    @Test
+    void dropsWhenFullAndReportsCount() throws Exception {
+        TextWriter writer = new TextWriter(dir, 1 << 20, 2, 4);
+        // 抢占但不发布，后台线程读不到这些槽位
+        long[] positions = new long[4];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = writer.claim();
+            assertTrue(positions[i] >= 0);
+        }
+        assertFalse(writer.append("dropped"));
+        assertFalse(writer.append("dropped"));
+        assertEquals(2, writer.getDropped());
+
+        for (long position : positions) {
+            writer.get(position).append("kept 中文");
+            writer.publish(position);
+        }
+        writer.close();
+
+        List<String> lines = Files.readAllLines(dir.resolve("test.log"), StandardCharsets.UTF_8);
+        assertTrue(lines.contains("dropped 2"));
+        assertEquals(4, lines.stream().filter("kept 中文"::equals).count());
+    }
+
+    @Test
+    void rollsFilesAndKeepsConfiguredHistory() throws Exception {
+        TextWriter writer = new TextWriter(dir, 100, 2, 64);
+        for (int i = 0; i < 50; i++) {
+            while (!writer.append(String.format("line %04d", i))) {
+                Thread.yield();
+            }
+        }
+        writer.close();
+
+        assertTrue(Files.exists(dir.resolve("test.1.log")));
+        assertTrue(Files.exists(dir.resolve("test.2.log")));
+        assertFalse(Files.exists(dir.resolve("test.3.log")));
+        assertTrue(Files.size(dir.resolve("test.1.log")) <= 100);
+        Set<String> last = new HashSet<>(Files.readAllLines(dir.resolve("test.log")));
+        assertTrue(last.contains("line 0049"));
+    }
+
+    /**
+     * 每条记录是一行文本
+     */
+    private static class TextWriter extends AsyncLogWriter<StringBuilder> {
+
+        TextWriter(Path dir, long maxFileSize, int maxFiles, int capacity) throws IOException {
+            super(dir, "test", maxFileSize, 0, maxFiles, capacity, 0, StringBuilder::new);
+        }
+
+        boolean append(String text) {
+            long position = claim();
+            if (position < 0) {
+                return false;
+            }
+            get(position).append(text);
+            publish(position);
+            return true;
+        }
+
+        @Override
+        protected void format(StringBuilder record, StringBuilder out) {
+            out.append(record).append('\n');
+        }
+
+        @Override
+        protected void clear(StringBuilder record) {
+            record.setLength(0);
+        }
+
+        @Override
+        protected void formatDropped(long count, StringBuilder out) {
+            out.append("dropped ").append(count).append('\n');
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package edu.nju.http.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Histogram 的百分位误差、合并、衰减与边界值
+ */
+class HistogramTest {
+
+    @Test
+    void smallValuesAreExact() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 10; i++) {
+            histogram.record(i);
+        }
+        assertEquals(5, histogram.percentile(50));
+        assertEquals(9, histogram.percentile(90));
+        assertEquals(10, histogram.percentile(100));
+        assertEquals(1, histogram.percentile(0));
+        assertEquals(10, histogram.getCount());
+        assertEquals(5.5, histogram.getMean(), 1e-9);
+    }
+
+    @Test
+    void percentilesStayWithinRelativeError() {
+        Histogram histogram = new Histogram();
+        Random random = new Random(1);
+        long[] values = new long[100_000];
+        for (int i = 0; i < values.length; i++) {
+            // 对数均匀分布，覆盖微秒到秒
+            values[i] = (long) Math.exp(random.nextDouble() * Math.log(1e9));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double p : new double[]{50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(values.length * p / 100) - 1];
+            long approx = histogram.percentile(p);
+            assertTrue(approx >= exact, p + ": " + approx + " < " + exact);
+            assertTrue(approx <= exact + exact / 16 + 1, p + ": " + approx + " vs " + exact);
+        }
+        assertEquals(values[values.length - 1], histogram.percentile(100));
+        assertEquals(values[values.length - 1], histogram.getMax());
+    }
+
+    @Test
+    void handlesEmptyNegativeAndHugeValues() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.percentile(99));
+        assertEquals(0, histogram.getMean());
+
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(0, histogram.percentile(50));
+        assertEquals(Long.MAX_VALUE, histogram.percentile(100));
+        assertThrows(IllegalArgumentException.class, () -> new Histogram(0, 0));
+    }
+
+    @Test
+    void mergesHistogramsOfSamePrecision() {
+        Histogram a = new Histogram();
+        Histogram b = new Histogram();
+        for (int i = 0; i < 100; i++) {
+            a.record(10);
+            b.record(1000);
+        }
+        a.add(b);
+        assertEquals(200, a.getCount());
+        assertEquals(1000, a.getMax());
+        assertEquals(10, a.percentile(50));
+        assertTrue(a.percentile(51) >= 1000);
+        assertThrows(IllegalArgumentException.class, () -> a.add(new Histogram(8, 0)));
+    }
+
+    @Test
+    void decayFavoursRecentValues() {
+        Histogram histogram = new Histogram(100);
+        for (int i = 0; i < 100; i++) {
+            histogram.record(10);
+        }
+        assertEquals(50, histogram.getCount());
+        for (int i = 0; i < 99; i++) {
+            histogram.record(1000);
+        }
+        // 50 个旧值，99 个新值
+        assertTrue(histogram.percentile(50) >= 1000);
+    }
+
+    @Test
+    void countsValuesAtMostBound() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000L);
+        }
+        long atMost = histogram.countAtMost(50_000);
+        // 按桶的上界判断，误差不超过一个桶
+        assertTrue(atMost >= 47 && atMost <= 50, String.valueOf(atMost));
+        assertEquals(100, histogram.countAtMost(Long.MAX_VALUE));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+}
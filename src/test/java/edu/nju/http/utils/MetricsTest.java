@@ -0,0 +1,61 @@
+package edu.nju.http.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Metrics 的注册与 Prometheus 文本格式导出
+ */
+class MetricsTest {
+
+    @Test
+    void exportsCountersWithLabels() {
+        Metrics.counter("test_requests_total", "Test requests.", "code=\"200\"").add(3);
+        Metrics.counter("test_requests_total", "Test requests.", "code=\"404\"").inc();
+        Metrics.Counter same = Metrics.counter("test_requests_total", "Test requests.", "code=\"200\"");
+
+        assertEquals(3, same.get());
+        String text = Metrics.scrape();
+        assertTrue(text.contains("# HELP test_requests_total Test requests.\n# TYPE test_requests_total counter\n"));
+        assertTrue(text.contains("test_requests_total{code=\"200\"} 3\n"));
+        assertTrue(text.contains("test_requests_total{code=\"404\"} 1\n"));
+    }
+
+    @Test
+    void exportsUnlabelledCounterAndGauge() {
+        Metrics.counter("test_plain_total", "Plain.").inc();
+        Metrics.gauge("test_gauge", "Gauge.", "", () -> 1);
+        Metrics.gauge("test_gauge", "Gauge.", "", () -> 42);
+
+        String text = Metrics.scrape();
+        assertTrue(text.contains("test_plain_total 1\n"));
+        assertTrue(text.contains("# TYPE test_gauge gauge\ntest_gauge 42\n"));
+    }
+
+    @Test
+    void rejectsTypeConflict() {
+        Metrics.counter("test_conflict", "Conflict.");
+        assertThrows(IllegalArgumentException.class, () -> Metrics.timer("test_conflict", "Conflict.", ""));
+    }
+
+    @Test
+    void exportsTimerAsCumulativeSeconds() {
+        Metrics.Timer timer = Metrics.timer("test_latency_seconds", "Latency.", "path=\"/\"");
+        timer.record(TimeUnit.MICROSECONDS.toNanos(200));
+        timer.record(TimeUnit.MILLISECONDS.toNanos(20));
+        timer.record(TimeUnit.SECONDS.toNanos(20));
+
+        String text = Metrics.scrape();
+        assertTrue(text.contains("# TYPE test_latency_seconds histogram\n"));
+        assertTrue(text.contains("test_latency_seconds_bucket{path=\"/\",le=\"0.0005\"} 1\n"));
+        assertTrue(text.contains("test_latency_seconds_bucket{path=\"/\",le=\"0.025\"} 2\n"));
+        assertTrue(text.contains("test_latency_seconds_bucket{path=\"/\",le=\"10\"} 2\n"));
+        assertTrue(text.contains("test_latency_seconds_bucket{path=\"/\",le=\"+Inf\"} 3\n"));
+        assertTrue(text.contains("test_latency_seconds_count{path=\"/\"} 3\n"));
+        assertEquals(3, timer.getCount());
+        assertTrue(timer.percentile(50) >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+}